@@ -67,7 +67,7 @@ if __name__ == "__main__":
         print('Received message:', data, flush=True)
         variables: list[str] = data.split(",")
         if variables[0].lower() == "online":
-            res = online_service.service(variables[1], variables[2].strip())
+            res = online_service.service(variables[1], *[v.strip() for v in variables[2:]])
             reply = str(res) + "\n"
             client_socket.sendall(reply.encode('utf-8'))
             print('Reply:', reply, flush=True)
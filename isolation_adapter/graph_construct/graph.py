@@ -1,3 +1,12 @@
+import mmap
+
+import numpy as np
+
+# binary sample segments, see SampleSegmentWriter
+MAGIC_SEGMENT = 0x47535854
+MAGIC_RECORD = 0x52535854
+SEGMENT_HEADER_BYTES = 16
+RECORD_HEADER_INTS = 6
 
 
 class Graph:
@@ -10,10 +19,12 @@ class Graph:
     rw_cnt: int = 0
     ww_cnt: int = 0
 
-    def __init__(self, filepath: str, delim1: str = '#', delim2: str = ','):
+    def __init__(self, filepath: str = None, delim1: str = '#', delim2: str = ','):
         self.nodes = []
         self.edges = [[], []]
         self.edge_feature = []
+        if filepath is None:
+            return
         with open(filepath, 'r') as file:
             for line in file:
                 line = line.strip()
@@ -51,3 +62,57 @@ class Graph:
         self.edges[0].append(1)
         self.edges[1].append(2)
         self.edge_feature.append([0, 1])
+
+    @classmethod
+    def from_record(cls, buf, offset: int) -> tuple['Graph', int]:
+        """Decode the segment record at offset, return the graph and the offset of the next record.
+
+        The arrays equal those of the text loader: every node is [[reads + writes]], the edges of
+        a node are followed by the placeholder edge 1 -> 2 with feature [0, 1].
+        """
+        header = np.frombuffer(buf, dtype='<i4', count=RECORD_HEADER_INTS, offset=offset)
+        if header[0] != MAGIC_RECORD:
+            raise ValueError("no sample record at offset %d" % offset)
+        n, m = int(header[1]), int(header[2])
+        offset += 4 * RECORD_HEADER_INTS
+        counts = np.frombuffer(buf, dtype='<i4', count=2 * n, offset=offset).reshape(n, 2)
+        offset += 8 * n
+        edges = np.frombuffer(buf, dtype='<i4', count=4 * m, offset=offset).reshape(m, 4)
+        offset += 16 * m
+
+        g = cls()
+        g.read_cnts = int(counts[:, 0].sum())
+        g.write_cnts = int(counts[:, 1].sum())
+        g.nodes = (counts[:, 0] + counts[:, 1]).reshape(n, 1, 1).tolist()
+        g.rw_cnt = int(np.count_nonzero(edges[:, 2] == 2))
+        g.ww_cnt = int(np.count_nonzero(edges[:, 2] == 4))
+        # edges are ordered by source, the placeholder goes after the last edge of every node
+        ends = np.searchsorted(edges[:, 0], np.arange(n), side='right')
+        placeholder = np.array([1, 2, 0, 1], dtype=np.int32)
+        rows = np.insert(edges, ends, placeholder, axis=0)
+        g.edges = [rows[:, 0].tolist(), rows[:, 1].tolist()]
+        g.edge_feature = rows[:, 2:4].tolist()
+        return g, offset
+
+    @classmethod
+    def from_segment(cls, filepath: str, offset: int) -> 'Graph':
+        """Load one record of a binary sample segment, as sent by the server with its offset."""
+        with open(filepath, 'rb') as file:
+            with mmap.mmap(file.fileno(), 0, access=mmap.ACCESS_READ) as buf:
+                return cls.from_record(buf, offset)[0]
+
+
+def read_segment(filepath: str) -> list[Graph]:
+    """Load every record of a binary sample segment in the order they were written."""
+    graphs = []
+    with open(filepath, 'rb') as file:
+        with mmap.mmap(file.fileno(), 0, access=mmap.ACCESS_READ) as buf:
+            if np.frombuffer(buf, dtype='<i4', count=1)[0] != MAGIC_SEGMENT:
+                raise ValueError(filepath + " is not a sample segment")
+            offset = SEGMENT_HEADER_BYTES
+            while offset + 4 <= len(buf):
+                if np.frombuffer(buf, dtype='<i4', count=1, offset=offset)[0] != MAGIC_RECORD:
+                    break
+                g, offset = Graph.from_record(buf, offset)
+                graphs.append(g)
+    return graphs
@@ -0,0 +1,76 @@
+import struct
+import sys
+
+import torch
+import torch.nn.functional as F
+from torch_geometric.data import Data
+
+from isolation_adapter.graph_construct.graph import Graph, read_segment
+
+# tensor files read by the server, see GnnPredictor: all little-endian
+#   MAGIC, VERSION, tensor count, then per tensor
+#   name length, utf-8 name, rank, dims, float32 values in row-major order
+MAGIC = 0x4E475854
+VERSION = 1
+
+
+def write_tensors(path: str, tensors: dict) -> None:
+    with open(path, 'wb') as file:
+        file.write(struct.pack('<3i', MAGIC, VERSION, len(tensors)))
+        for name, tensor in tensors.items():
+            data = tensor.detach().cpu().float().contiguous()
+            encoded = name.encode('utf-8')
+            file.write(struct.pack('<i', len(encoded)) + encoded)
+            file.write(struct.pack('<i', data.dim()))
+            file.write(struct.pack('<%di' % data.dim(), *data.shape))
+            file.write(data.numpy().astype('<f4').tobytes())
+
+
+def export_model(model: torch.nn.Module, path: str) -> None:
+    """Write the weights of a GraphClassificationModel for the server side GNN predictor."""
+    tensors = {}
+    for name, value in model.state_dict().items():
+        # the edge networks are registered twice, the server reads them through their conv
+        if name.startswith('edge_network'):
+            continue
+        if name.endswith('.root'):
+            # root weight of older torch_geometric, [in, out] instead of a Linear's [out, in]
+            name, value = name[:-len('root')] + 'lin.weight', value.t()
+        tensors[name] = value
+    write_tensors(path, tensors)
+
+
+def graph_data(g: Graph) -> Data:
+    # as the online service: one feature per node, features normalized per node and per edge
+    x = torch.tensor(g.nodes, dtype=torch.float).view(len(g.nodes), -1)
+    edge_index = torch.tensor(g.edges, dtype=torch.long)
+    edge_attr = torch.tensor(g.edge_feature, dtype=torch.float)
+    return Data(x=F.normalize(x, p=2, dim=1), edge_index=edge_index,
+                edge_attr=F.normalize(edge_attr, p=2, dim=1))
+
+
+def export_reference(model: torch.nn.Module, g: Graph, path: str) -> None:
+    """Write a sample graph with the log-probabilities of the model, see GnnPredictorTest."""
+    model = model.cpu().eval()
+    with torch.no_grad():
+        out = model(graph_data(g))
+    write_tensors(path, {
+        'x': torch.tensor(g.nodes, dtype=torch.float).view(len(g.nodes), -1),
+        'edge_index': torch.tensor(g.edges, dtype=torch.float),
+        'edge_attr': torch.tensor(g.edge_feature, dtype=torch.float),
+        'out': out,
+    })
+
+
+if __name__ == '__main__':
+    # python3 -m isolation_adapter.graph_training.export models/ycsb.pt <sample file or segment>
+    if len(sys.argv) < 2:
+        print("usage: export.py <model.pt> [sample]")
+        sys.exit(1)
+    prefix = sys.argv[1][:-len('.pt')] if sys.argv[1].endswith('.pt') else sys.argv[1]
+    trained = torch.load(sys.argv[1], map_location='cpu')
+    export_model(trained, prefix + '.gnn')
+    if len(sys.argv) > 2:
+        sample = sys.argv[2]
+        graph = read_segment(sample)[0] if sample.endswith('.seg') else Graph(sample)
+        export_reference(trained, graph, prefix + '.gnn.ref')
@@ -16,7 +16,8 @@ from torch_geometric.loader import DataLoader
 import random
 import joblib
 
-from isolation_adapter.graph_construct.graph import Graph
+from isolation_adapter.graph_construct.graph import Graph, read_segment
+from isolation_adapter.graph_training.export import export_model, export_reference
 from isolation_adapter.graph_training.train import GraphClassificationModel
 from torch.cuda.amp import GradScaler, autocast
 
@@ -84,11 +85,14 @@ class OfflineService:
             if not flag:
                 continue
             self.__gs.append([])
-            for sub_entry in os.scandir(entry.path):
+            # samples in the order they were written, text files one graph each, segments many
+            for sub_entry in sorted(os.scandir(entry.path), key=lambda e: e.name):
                 if not sub_entry.is_file():
                     continue
                 if 'label' in sub_entry.name:
                     self.__g_labels.append(self.__read_label_file(sub_entry.path))
+                elif sub_entry.name.endswith('.seg'):
+                    self.__gs[-1].extend(read_segment(sub_entry.path))
                 else:
                     self.__gs[-1].append(Graph(sub_entry.path))
 
@@ -132,6 +136,10 @@ class OfflineService:
             print(f'Epoch: {epoch:03d}, Train Acc: {train_acc:.4f}')
         
         torch.save(self.model, self.__model_prefix + self.workload + self.__model_postfix)
+        # the weights for the server side predictor, and a training sample with its outputs that
+        # can replace the fixture of GnnPredictorTest (src/test/resources/gnn)
+        export_model(self.model, self.__model_prefix + self.workload + ".gnn")
+        export_reference(self.model, self.__gs[0][0], self.__model_prefix + self.workload + ".gnn.ref")
 
     def train_bayse(self):
         X, y = [], []
@@ -159,6 +167,12 @@ class OfflineService:
         # evaluation
         model_path = self.__model_prefix + "ycsb.pkl"
         joblib.dump(gnb, model_path)
+        # the parameters for the server side predictor, see NaiveBayesPredictor
+        with open(self.__model_prefix + self.workload + ".nb", 'w') as file:
+            file.write("# label,prior,mean_0..mean_3,var_0..var_3\n")
+            for c, label in enumerate(gnb.classes_):
+                row = [int(label), gnb.class_prior_[c], *gnb.theta_[c], *gnb.var_[c]]
+                file.write(",".join(str(v) for v in row) + "\n")
 
     '''latex
         \text{Snapshot Isolation}, & \text{if } wr < 0.2 \\
@@ -8,7 +8,7 @@ import torch.nn
 import torch.nn.functional as F
 from torch_geometric.data import Data
 
-from tristar_adapter.graph_construct.graph import Graph
+from isolation_adapter.graph_construct.graph import Graph
 
 
 class OnlineService:
@@ -38,17 +38,19 @@ class OnlineService:
     def service(self, service_name: str, *args: Any, **kwargs: Any) -> Any:
         if service_name.lower() == "predict":
             print(args[0])
+            # a binary sample comes with the offset of its record in the segment
+            offset = int(args[1]) if len(args) > 1 else None
             if self._model_name == "bayes":
-                return self.predict_bayes(args[0])
+                return self.predict_bayes(args[0], offset)
             elif self._model_name == "rule":
-                return self.predict_rule(args[0])
-            return self.predict(args[0])
+                return self.predict_rule(args[0], offset)
+            return self.predict(args[0], offset)
         if service_name.lower() == "ok":
             return "ok"
 
-    def predict(self, filepath: str) -> int:
+    def predict(self, filepath: str, offset: int = None) -> int:
         start_load_time = time.time_ns()
-        g = Graph(filepath)
+        g = self.load_graph(filepath, offset)
         assert self._model is not None
         print("Data Loaded. time consuming: " + str((time.time_ns() - start_load_time) / 1000000.0) + "ms")
         x = torch.tensor(g.nodes, dtype=torch.float).to(self.device)
@@ -65,20 +67,26 @@ class OnlineService:
         print("load + predict time consuming: " + str((time.time_ns() - start_load_time) / 1000000.0) + "ms")
         return res
 
-    def predict_bayes(self, filepath: str) -> int:
+    def predict_bayes(self, filepath: str, offset: int = None) -> int:
         start_load_time = time.time_ns()
-        g = Graph(filepath)
+        g = self.load_graph(filepath, offset)
         feature_g = [[g.read_cnts, g.write_cnts, g.rw_cnt, g.ww_cnt]]
         assert self._model is not None
         y_pred = self._model.predict(feature_g)
         return y_pred[0]
 
-    def predict_rule(self, filepath: str) -> int:
+    def predict_rule(self, filepath: str, offset: int = None) -> int:
         start_load_time = time.time_ns()
-        g = Graph(filepath)
+        g = self.load_graph(filepath, offset)
         res = self.my_rule(g.write_cnts, g.read_cnts)
         return res
 
+    @staticmethod
+    def load_graph(filepath: str, offset: int = None) -> Graph:
+        if offset is None:
+            return Graph(filepath)
+        return Graph.from_segment(filepath, offset)
+
     def my_rule(self, w: int, r: int) -> int:
         wr = w / (w + r)
         if wr < 0.2:
@@ -0,0 +1,113 @@
+#!/usr/bin/python3
+"""Session scalability benchmark for the text protocol.
+
+Opens N concurrent client sessions against a running server, every session runs single-statement
+YCSB read transactions (execute + commit) for a fixed time, and reports throughput and latency per
+session count. Compare the execution modes by running it once against a server started with
+<virtualThreads>false</virtualThreads> and once with <virtualThreads>true</virtualThreads>:
+
+    python3 bench_sessions.py --label platform > platform.csv
+    python3 bench_sessions.py --label virtual > virtual.csv
+
+With the socket front end and platform threads only 128 sessions are served at a time, the others
+wait until a served session closes, which shows up as a throughput plateau and a p99 that grows
+with N. Restart the server between the modes, the template is registered by every run.
+"""
+import argparse
+import asyncio
+import random
+import time
+
+TEMPLATE = "BenchRead"
+READ_SQL = "SELECT FIELD1 FROM usertable WHERE YCSB_KEY = ?"
+
+
+async def request(reader, writer, line):
+    writer.write((line + "\n").encode())
+    await writer.drain()
+    response = await reader.readline()
+    if not response:
+        raise ConnectionError("server closed the session")
+    return response.decode().strip()
+
+
+async def register(host, port):
+    reader, writer = await asyncio.open_connection(host, port)
+    try:
+        response = await request(reader, writer, "register#%s#0#usertable#%s" % (TEMPLATE, READ_SQL))
+        if not response.startswith("OK"):
+            raise RuntimeError("register failed: " + response)
+        await request(reader, writer, "analysis")
+    finally:
+        writer.close()
+
+
+async def session(host, port, keys, window, latencies, errors, connected):
+    reader, writer = await asyncio.open_connection(host, port)
+    connected.release()
+    await window["start"].wait()
+    try:
+        while time.perf_counter() < window["deadline"]:
+            key = random.randrange(keys)
+            start = time.perf_counter()
+            response = await request(reader, writer, "execute#%s#0#%d" % (TEMPLATE, key))
+            if response.startswith("OK"):
+                response = await request(reader, writer, "commit")
+            if response.startswith("OK"):
+                latencies.append(time.perf_counter() - start)
+            else:
+                errors[0] += 1
+                await request(reader, writer, "rollback")
+    finally:
+        writer.close()
+
+
+def percentile(values, p):
+    if not values:
+        return 0.0
+    return values[min(len(values) - 1, int(len(values) * p))]
+
+
+async def run(host, port, sessions, duration, keys):
+    latencies = []
+    errors = [0]
+    window = {"start": asyncio.Event(), "deadline": 0.0}
+    connected = asyncio.Semaphore(0)
+    tasks = [
+        asyncio.ensure_future(session(host, port, keys, window, latencies, errors, connected))
+        for _ in range(sessions)
+    ]
+    # the measured window opens once every session is connected
+    for _ in range(sessions):
+        await connected.acquire()
+    start = time.perf_counter()
+    window["deadline"] = start + duration
+    window["start"].set()
+    await asyncio.gather(*tasks)
+    elapsed = time.perf_counter() - start
+    latencies.sort()
+    return len(latencies) / elapsed, percentile(latencies, 0.5), percentile(latencies, 0.99), errors[0]
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--host", default="127.0.0.1")
+    parser.add_argument("--port", type=int, default=9876)
+    parser.add_argument("--sessions", default="128,512,2048", help="comma separated session counts")
+    parser.add_argument("--duration", type=float, default=30, help="seconds measured per session count")
+    parser.add_argument("--keys", type=int, default=1000000, help="number of usertable rows")
+    parser.add_argument("--label", default="", help="execution mode, copied into every output row")
+    parser.add_argument("--skip-register", action="store_true",
+                        help="the template is registered already, e.g. by an earlier run")
+    args = parser.parse_args()
+
+    if not args.skip_register:
+        asyncio.run(register(args.host, args.port))
+    print("mode,sessions,throughput,p50_ms,p99_ms,errors")
+    for sessions in (int(n) for n in args.sessions.split(",")):
+        tps, p50, p99, errors = asyncio.run(run(args.host, args.port, sessions, args.duration, args.keys))
+        print("%s,%d,%.1f,%.3f,%.3f,%d" % (args.label, sessions, tps, p50 * 1000, p99 * 1000, errors), flush=True)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,76 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opt-in binary wire protocol of the netty front end. A client selects it by sending {@link #MAGIC}
+ * as the first bytes of the connection; the server answers with {@link #MAGIC}[0] followed by the
+ * protocol version. After that every request and response is a frame prefixed by its length as a
+ * 4 byte int.
+ *
+ * <p>Request frames start with an opcode:
+ *
+ * <ul>
+ *   <li>EXECUTE: int template id, short sql index, short param count, then per param one type byte
+ *       followed by its value (INT int, LONG long, FLOAT float, DOUBLE double, BOOL byte, STRING
+ *       string, NULL nothing)
+ *   <li>COMMIT, ROLLBACK: no body
+ *   <li>RESOLVE: string template name, answered with the int template id (-1 if unknown)
+ *   <li>TEXT: string text command (register, analysis, close...), answered with the text response
+ *   <li>BATCH: flag byte (bit 0: commit afterwards), short statement count, then that many EXECUTE
+ *       bodies; answered with the short count and every EXECUTE result, an ERROR is followed by the
+ *       int index of the failing statement
+ * </ul>
+ *
+ * Response frames start with a status byte. EXECUTE answers OK with the int row count, then per
+ * row a short column count and per column the int length (-1 for null) followed by its bytes.
+ * ERROR is followed by the reason, the sql state and the int error code. Strings are always an
+ * int byte length followed by UTF-8 bytes.
+ */
+final class BinaryProtocol {
+  static final byte[] MAGIC = {(byte) 0xB1, 'T', 'S', 1};
+  static final byte VERSION = 1;
+  static final int MAX_FRAME_LENGTH = 1 << 20;
+
+  static final byte OP_EXECUTE = 0x01;
+  static final byte OP_COMMIT = 0x02;
+  static final byte OP_ROLLBACK = 0x03;
+  static final byte OP_RESOLVE = 0x04;
+  static final byte OP_TEXT = 0x05;
+  static final byte OP_BATCH = 0x06;
+
+  static final byte BATCH_COMMIT = 0x01;
+
+  static final byte TYPE_NULL = 0;
+  static final byte TYPE_INT = 1;
+  static final byte TYPE_LONG = 2;
+  static final byte TYPE_FLOAT = 3;
+  static final byte TYPE_DOUBLE = 4;
+  static final byte TYPE_BOOL = 5;
+  static final byte TYPE_STRING = 6;
+
+  static final byte STATUS_OK = 0;
+  static final byte STATUS_ERROR = 1;
+
+  private BinaryProtocol() {}
+
+  static String readString(ByteBuf in) {
+    int length = in.readInt();
+    return in.readCharSequence(length, StandardCharsets.UTF_8).toString();
+  }
+
+  static void writeString(ByteBuf out, String value) {
+    int lengthIdx = out.writerIndex();
+    out.writeInt(0);
+    out.setInt(lengthIdx, ByteBufUtil.writeUtf8(out, value));
+  }
+
+  static void writeError(ByteBuf out, String reason, String sqlState, int code) {
+    out.writeByte(STATUS_ERROR);
+    writeString(out, reason == null ? "" : reason);
+    writeString(out, sqlState == null ? "" : sqlState);
+    out.writeInt(code);
+  }
+}
@@ -0,0 +1,98 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import java.sql.SQLException;
+import org.dbiir.txnsails.execution.utils.StatementParams;
+
+/**
+ * Typed parameters decoded from an EXECUTE frame. Numeric values are kept as raw longs and only
+ * strings are materialized; the arrays are reused by the session across statements.
+ */
+class BinaryStatementParams implements StatementParams {
+  private byte[] types = new byte[16];
+  private long[] values = new long[16];
+  private String[] strings = new String[16];
+  private int size;
+
+  void decode(ByteBuf in, int count) throws SQLException {
+    if (types.length < count) {
+      types = new byte[count];
+      values = new long[count];
+      strings = new String[count];
+    }
+    size = count;
+    for (int i = 0; i < count; i++) {
+      byte type = in.readByte();
+      types[i] = type;
+      strings[i] = null;
+      switch (type) {
+        case BinaryProtocol.TYPE_NULL -> values[i] = 0;
+        case BinaryProtocol.TYPE_INT -> values[i] = in.readInt();
+        case BinaryProtocol.TYPE_LONG -> values[i] = in.readLong();
+        case BinaryProtocol.TYPE_FLOAT -> values[i] = Double.doubleToRawLongBits(in.readFloat());
+        case BinaryProtocol.TYPE_DOUBLE -> values[i] = Double.doubleToRawLongBits(in.readDouble());
+        case BinaryProtocol.TYPE_BOOL -> values[i] = in.readByte();
+        case BinaryProtocol.TYPE_STRING -> strings[i] = BinaryProtocol.readString(in);
+        default -> throw new SQLException("Unknown parameter type: " + type, "08P01", 0);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isNull(int idx) {
+    return types[idx] == BinaryProtocol.TYPE_NULL;
+  }
+
+  @Override
+  public int getInt(int idx) {
+    return (int) getLong(idx);
+  }
+
+  @Override
+  public long getLong(int idx) {
+    return switch (types[idx]) {
+      case BinaryProtocol.TYPE_FLOAT, BinaryProtocol.TYPE_DOUBLE -> (long) getDouble(idx);
+      case BinaryProtocol.TYPE_STRING -> Long.parseLong(strings[idx]);
+      default -> values[idx];
+    };
+  }
+
+  @Override
+  public float getFloat(int idx) {
+    return (float) getDouble(idx);
+  }
+
+  @Override
+  public double getDouble(int idx) {
+    return switch (types[idx]) {
+      case BinaryProtocol.TYPE_FLOAT, BinaryProtocol.TYPE_DOUBLE ->
+          Double.longBitsToDouble(values[idx]);
+      case BinaryProtocol.TYPE_STRING -> Double.parseDouble(strings[idx]);
+      default -> values[idx];
+    };
+  }
+
+  @Override
+  public boolean getBoolean(int idx) {
+    if (types[idx] == BinaryProtocol.TYPE_STRING) {
+      return Boolean.parseBoolean(strings[idx]);
+    }
+    return values[idx] != 0;
+  }
+
+  @Override
+  public String getString(int idx) {
+    return switch (types[idx]) {
+      case BinaryProtocol.TYPE_NULL -> null;
+      case BinaryProtocol.TYPE_STRING -> strings[idx];
+      case BinaryProtocol.TYPE_FLOAT, BinaryProtocol.TYPE_DOUBLE -> String.valueOf(getDouble(idx));
+      case BinaryProtocol.TYPE_BOOL -> String.valueOf(getBoolean(idx));
+      default -> String.valueOf(values[idx]);
+    };
+  }
+}
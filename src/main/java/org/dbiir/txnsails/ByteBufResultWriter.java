@@ -0,0 +1,44 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.dbiir.txnsails.execution.utils.ResultWriter;
+
+/**
+ * Writes result rows straight into the (pooled) response buffer of the binary protocol. The row
+ * count and the column lengths are back-patched once known, so no intermediate strings are built.
+ */
+class ByteBufResultWriter implements ResultWriter {
+  private ByteBuf out;
+  private int rowCountIdx;
+  private int rows;
+
+  void begin(ByteBuf out) {
+    this.out = out;
+    this.rowCountIdx = out.writerIndex();
+    this.rows = 0;
+    out.writeInt(0);
+  }
+
+  void finish() {
+    out.setInt(rowCountIdx, rows);
+    out = null;
+  }
+
+  @Override
+  public void beginRow(int columns) {
+    rows++;
+    out.writeShort(columns);
+  }
+
+  @Override
+  public void addColumn(String value) {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    int lengthIdx = out.writerIndex();
+    out.writeInt(0);
+    out.setInt(lengthIdx, ByteBufUtil.writeUtf8(out, value));
+  }
+}
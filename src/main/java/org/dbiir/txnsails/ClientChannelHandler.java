@@ -0,0 +1,149 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import java.text.MessageFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.worker.MetaWorker;
+
+/**
+ * Per-connection handler of the netty front end. Decoded command lines (text protocol) or frames
+ * (binary protocol) are queued on the event loop and drained on the execution pool, so blocking
+ * JDBC work never runs on an I/O thread. At most one drain task per connection is in flight, which
+ * keeps the commands of a session ordered and its {@link ClientSession} single-threaded.
+ */
+class ClientChannelHandler extends ChannelInboundHandlerAdapter {
+  // SQLSTATE 53300: too_many_connections
+  private static final String BUSY_RESPONSE =
+      MessageFormat.format(MetaWorker.ERROR_FORMATTER, "server is busy", "53300", 0);
+
+  private final WorkloadConfiguration configuration;
+  private final int id;
+  private final Executor executionPool;
+  private final boolean binary;
+  private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private volatile boolean inactive = false;
+  // only accessed by the drain task, which is never run concurrently for one connection
+  private ClientSession session;
+  private boolean closed = false;
+
+  ClientChannelHandler(
+      WorkloadConfiguration configuration, int id, Executor executionPool, boolean binary) {
+    this.configuration = configuration;
+    this.id = id;
+    this.executionPool = executionPool;
+    this.binary = binary;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object message) {
+    // binary frames are released by the drain task once handled
+    pending.add(message);
+    schedule(ctx);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    inactive = true;
+    schedule(ctx);
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    Log.warn("client error", "session", id, cause);
+    ctx.close();
+  }
+
+  private void schedule(ChannelHandlerContext ctx) {
+    if (!scheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executionPool.execute(() -> drain(ctx));
+    } catch (RejectedExecutionException ex) {
+      scheduled.set(false);
+      if (inactive) {
+        // the session still has to be released, run it on the event loop as a last resort
+        ctx.executor().execute(() -> drain(ctx));
+        return;
+      }
+      Object message;
+      while ((message = pending.poll()) != null) {
+        ReferenceCountUtil.release(message);
+        ctx.writeAndFlush(busyResponse(ctx));
+      }
+    }
+  }
+
+  private void drain(ChannelHandlerContext ctx) {
+    try {
+      Object message;
+      while (!closed && (message = pending.poll()) != null) {
+        if (session == null) {
+          session = new ClientSession(configuration, id);
+        }
+        Object response;
+        if (binary) {
+          ByteBuf frame = (ByteBuf) message;
+          try {
+            response = session.handleBinary(frame, ctx.alloc());
+          } finally {
+            frame.release();
+          }
+        } else {
+          response = session.handle((String) message);
+        }
+        if (session.isClosing()) {
+          closed = true;
+          discardPending();
+          ctx.close();
+          break;
+        }
+        if (response != null) {
+          ctx.writeAndFlush(response);
+        }
+      }
+      if (inactive && session != null) {
+        session.close();
+        session = null;
+        closed = true;
+        Log.debug("client disconnected", "session", id);
+      }
+    } catch (Exception e) {
+      Log.warn("session failed", "session", id, e);
+      discardPending();
+      ctx.close();
+    } finally {
+      scheduled.set(false);
+      if ((!closed && !pending.isEmpty()) || (inactive && session != null)) {
+        schedule(ctx);
+      }
+    }
+  }
+
+  private void discardPending() {
+    Object message;
+    while ((message = pending.poll()) != null) {
+      ReferenceCountUtil.release(message);
+    }
+  }
+
+  private Object busyResponse(ChannelHandlerContext ctx) {
+    if (!binary) {
+      return BUSY_RESPONSE;
+    }
+    ByteBuf out = ctx.alloc().buffer();
+    BinaryProtocol.writeError(out, "server is busy", "53300", 0);
+    return out;
+  }
+}
@@ -0,0 +1,310 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.worker.MetaWorker;
+import org.dbiir.txnsails.worker.OfflineWorker;
+import org.dbiir.txnsails.worker.OnlineWorker;
+
+/**
+ * The state of one client connection, independent of how the bytes reach the server. Both the
+ * blocking {@link ClientHandler} and the netty {@link ClientChannelHandler} feed decoded text
+ * commands into {@link #handle(String)}; binary clients of the netty front end use {@link
+ * #handleBinary(ByteBuf, ByteBufAllocator)}. Either must be called by one thread at a time.
+ */
+class ClientSession {
+  // statements of one text batch, as many as the short count of a binary batch allows
+  static final int MAX_BATCH = Short.MAX_VALUE;
+
+  private final int id;
+  private final OnlineWorker worker;
+  private final BinaryStatementParams binaryParams = new BinaryStatementParams();
+  private final ByteBufResultWriter binaryResults = new ByteBufResultWriter();
+  // execute lines of the batch being received, null when no batch is open
+  private String[][] batch;
+  private int batchSize;
+  private boolean batchCommit;
+  private boolean closing;
+
+  ClientSession(WorkloadConfiguration configuration, int id) {
+    this.id = id;
+    this.worker = new OnlineWorker(configuration, id);
+  }
+
+  /**
+   * Execute one text command.
+   *
+   * @return the response line, or null if there is none because the line was buffered by an open
+   *     batch or the client asked to close the server, see {@link #isClosing()}
+   */
+  String handle(String message) throws IOException {
+    if (batch != null) {
+      batch[batchSize++] = parseArgs(message.trim());
+      if (batchSize < batch.length) {
+        return null;
+      }
+      return executeBatch();
+    }
+    boolean traced = Log.sampleTrace();
+    boolean debug = Log.isDebugEnabled();
+    long start = traced || debug ? System.nanoTime() : 0;
+    if (debug) {
+      Log.debug("received", "session", id, "message", message);
+    }
+    String[] args = parseArgs(message.trim());
+    String functionName = args[0].toLowerCase();
+    String response;
+    try {
+      switch (functionName) {
+        case "execute" -> {
+          if (args.length < 2) {
+            throw new SQLException("Invalid number of arguments for execute command.");
+          }
+          response = worker.execute(args, 3);
+          response = "OK#" + response;
+        }
+        case "commit" -> {
+          worker.commit();
+          response = "OK";
+        }
+        case "rollback" -> {
+          worker.rollback();
+          response = "OK";
+        }
+        case "register" -> {
+          if (args.length < 5) {
+            response = "FAILED";
+            break;
+          }
+          int idx = OfflineWorker.getINSTANCE().register(args);
+          if (idx < 0) {
+            response = "FAILED";
+          } else {
+            response = "OK#" + idx; // response with the unique sql index in server-side
+          }
+        }
+        case "batch" -> {
+          // batch#N[#commit] followed by N execute lines, answered once the last one arrives
+          int n;
+          try {
+            n = Integer.parseInt(args[1]);
+          } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            throw new SQLException("Invalid number of statements for batch command.");
+          }
+          if (n <= 0 || n > MAX_BATCH) {
+            throw new SQLException(
+                "Invalid number of statements for batch command, expected 1.." + MAX_BATCH,
+                "22023",
+                0);
+          }
+          batch = new String[n][];
+          batchSize = 0;
+          batchCommit = args.length > 2 && args[2].equalsIgnoreCase("commit");
+          return null;
+        }
+        case "analysis" -> {
+          response = "OK";
+          OfflineWorker.getINSTANCE().register_end(args);
+        }
+        case "trace" -> {
+          // trace#rate samples that share of the requests of all sessions, 0 turns tracing off
+          try {
+            Log.setTraceRate(Double.parseDouble(args[1]));
+          } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new SQLException("Invalid trace rate, expected trace#<0..1>", "22023", 0);
+          }
+          response = "OK";
+        }
+        case "loglevel" -> {
+          try {
+            Log.setLevel(args[1]);
+          } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new SQLException("Invalid log level: " + String.join("#", args), "22023", 0);
+          }
+          response = "OK";
+        }
+        case "close" -> {
+          closing = true;
+          TxnSailsServer.closeServer();
+          return null;
+        }
+        default -> {
+          response = "Unknown function: " + functionName;
+        }
+      }
+    } catch (SQLException ex) {
+      response =
+          MessageFormat.format(
+              MetaWorker.ERROR_FORMATTER,
+              ex.getMessage().split("\n")[0],
+              ex.getSQLState(),
+              ex.getErrorCode());
+    }
+
+    if (traced || debug) {
+      long micros = (System.nanoTime() - start) / 1000;
+      if (traced) {
+        Log.trace("request", "session", id, "command", functionName, "micros", micros, "response", response);
+      } else {
+        Log.debug("executed", "session", id, "micros", micros, "response", response);
+      }
+    }
+    return response;
+  }
+
+  /**
+   * Execute one binary request frame, see {@link BinaryProtocol}.
+   *
+   * @return the response frame, or null if the client asked to close the server
+   */
+  ByteBuf handleBinary(ByteBuf in, ByteBufAllocator alloc) throws IOException {
+    ByteBuf out = alloc.buffer();
+    boolean traced = Log.sampleTrace();
+    long start = traced ? System.nanoTime() : 0;
+    byte opcode = 0;
+    try {
+      opcode = in.readByte();
+      switch (opcode) {
+        case BinaryProtocol.OP_EXECUTE -> {
+          out.writeByte(BinaryProtocol.STATUS_OK);
+          executeBinary(in, out);
+        }
+        case BinaryProtocol.OP_BATCH -> executeBinaryBatch(in, out);
+        case BinaryProtocol.OP_COMMIT -> {
+          worker.commit();
+          out.writeByte(BinaryProtocol.STATUS_OK);
+        }
+        case BinaryProtocol.OP_ROLLBACK -> {
+          worker.rollback();
+          out.writeByte(BinaryProtocol.STATUS_OK);
+        }
+        case BinaryProtocol.OP_RESOLVE -> {
+          out.writeByte(BinaryProtocol.STATUS_OK);
+          out.writeInt(MetaWorker.getINSTANCE().getTemplateId(BinaryProtocol.readString(in)));
+        }
+        case BinaryProtocol.OP_TEXT -> {
+          String response = handle(BinaryProtocol.readString(in));
+          if (closing) {
+            out.release();
+            return null;
+          }
+          out.writeByte(BinaryProtocol.STATUS_OK);
+          BinaryProtocol.writeString(out, response == null ? "" : response);
+        }
+        default -> throw new SQLException("Unknown opcode: " + opcode, "08P01", 0);
+      }
+    } catch (SQLException ex) {
+      out.clear();
+      BinaryProtocol.writeError(
+          out, ex.getMessage().split("\n")[0], ex.getSQLState(), ex.getErrorCode());
+    } catch (IndexOutOfBoundsException ex) {
+      out.clear();
+      BinaryProtocol.writeError(out, "malformed frame", "08P01", 0);
+    } catch (RuntimeException | IOException ex) {
+      out.release();
+      throw ex;
+    }
+    if (traced) {
+      long micros = (System.nanoTime() - start) / 1000;
+      Log.trace(
+          "request", "session", id, "opcode", opcode, "micros", micros, "status", out.getByte(0));
+    }
+    return out;
+  }
+
+  /**
+   * Run the buffered batch in order, stopping at the first error. The response is OK#count#
+   * followed by every statement result prefixed with its length as 8 hex digits; an error is
+   * reported like any other and suffixed with the index of the failing statement, the trailing
+   * commit counting as index N.
+   */
+  private String executeBatch() {
+    String[][] statements = batch;
+    boolean commit = batchCommit;
+    batch = null;
+    batchSize = 0;
+    StringBuilder sb = new StringBuilder(64);
+    sb.append("OK#").append(statements.length).append('#');
+    int idx = 0;
+    try {
+      for (; idx < statements.length; idx++) {
+        String[] args = statements[idx];
+        if (args.length < 2 || !args[0].equalsIgnoreCase("execute")) {
+          throw new SQLException("Invalid statement in batch: " + String.join("#", args));
+        }
+        String result = worker.execute(args, 3);
+        String length = Integer.toHexString(result.length());
+        sb.append("00000000", length.length(), 8).append(length).append(result);
+      }
+      if (commit) {
+        worker.commit();
+      }
+    } catch (SQLException ex) {
+      return MessageFormat.format(
+              MetaWorker.ERROR_FORMATTER,
+              ex.getMessage().split("\n")[0],
+              ex.getSQLState(),
+              ex.getErrorCode())
+          + "#"
+          + idx;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Binary counterpart of the text batch: a flag byte (bit 0: commit), a short statement count and
+   * that many EXECUTE bodies. Answered with the short count and each EXECUTE result, or an ERROR
+   * followed by the int index of the failing statement.
+   */
+  private void executeBinaryBatch(ByteBuf in, ByteBuf out) throws SQLException {
+    boolean commit = (in.readByte() & BinaryProtocol.BATCH_COMMIT) != 0;
+    int n = in.readShort();
+    out.writeByte(BinaryProtocol.STATUS_OK);
+    out.writeShort(n);
+    int idx = 0;
+    try {
+      for (; idx < n; idx++) {
+        executeBinary(in, out);
+      }
+      if (commit) {
+        worker.commit();
+      }
+    } catch (SQLException ex) {
+      out.clear();
+      BinaryProtocol.writeError(
+          out, ex.getMessage().split("\n")[0], ex.getSQLState(), ex.getErrorCode());
+      out.writeInt(idx);
+    }
+  }
+
+  private void executeBinary(ByteBuf in, ByteBuf out) throws SQLException {
+    int templateId = in.readInt();
+    int sqlIdx = in.readShort();
+    binaryParams.decode(in, in.readShort());
+    binaryResults.begin(out);
+    worker.execute(templateId, sqlIdx, binaryParams, binaryResults);
+    binaryResults.finish();
+  }
+
+  /** @return whether the client asked to close the server, the session answers nothing more */
+  boolean isClosing() {
+    return closing;
+  }
+
+  void close() {
+    worker.closeWorker();
+  }
+
+  private String[] parseArgs(String message) {
+    String[] parts = message.split("#");
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = parts[i].trim();
+    }
+    return parts;
+  }
+}
@@ -0,0 +1,95 @@
+package org.dbiir.txnsails;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+import org.dbiir.txnsails.execution.utils.Log;
+
+/**
+ * Event-loop front end. A few I/O threads multiplex all client sockets and split the byte stream
+ * into command lines or binary frames; the commands themselves run on a bounded execution pool because every
+ * OnlineWorker call blocks on JDBC. With virtual threads every drain task gets its own thread
+ * instead, and a session blocked on JDBC only holds a carrier while it runs.
+ */
+class NettyServer {
+  // every connection has at most one drain task queued, so this bounds the number of sessions
+  // waiting for an execution thread
+  private static final int MAX_PENDING_TASKS = 8192;
+
+  private final WorkloadConfiguration configuration;
+  private final AtomicInteger genWorkerId;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup ioGroup;
+  private final ExecutorService executionPool;
+  private Channel serverChannel;
+
+  NettyServer(WorkloadConfiguration configuration, AtomicInteger genWorkerId) {
+    this.configuration = configuration;
+    this.genWorkerId = genWorkerId;
+    this.bossGroup = new NioEventLoopGroup(1);
+    this.ioGroup = new NioEventLoopGroup(configuration.getIoThreads());
+    if (configuration.isVirtualThreads()) {
+      this.executionPool = Executors.newVirtualThreadPerTaskExecutor();
+    } else {
+      int executionThreads = configuration.getExecutorThreads();
+      this.executionPool =
+          new ThreadPoolExecutor(
+              executionThreads,
+              executionThreads,
+              60,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(MAX_PENDING_TASKS));
+    }
+  }
+
+  void start() throws InterruptedException {
+    ServerBootstrap bootstrap =
+        new ServerBootstrap()
+            .group(bossGroup, ioGroup)
+            .channel(NioServerSocketChannel.class)
+            .option(ChannelOption.SO_BACKLOG, 1024)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childHandler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(SocketChannel ch) {
+                    // the text or binary codec is installed once the first bytes arrive
+                    ch.pipeline()
+                        .addLast(
+                            "negotiator",
+                            new ProtocolNegotiator(
+                                configuration, genWorkerId.addAndGet(1), executionPool));
+                  }
+                });
+    serverChannel = bootstrap.bind(configuration.getPort()).sync().channel();
+    Log.info("listening", "port", configuration.getPort());
+  }
+
+  void awaitClose() throws InterruptedException {
+    serverChannel.closeFuture().sync();
+  }
+
+  void close() {
+    if (serverChannel != null) {
+      serverChannel.close();
+    }
+  }
+
+  void shutdown() {
+    bossGroup.shutdownGracefully();
+    ioGroup.shutdownGracefully();
+    executionPool.shutdown();
+  }
+}
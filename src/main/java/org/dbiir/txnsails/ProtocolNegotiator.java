@@ -0,0 +1,81 @@
+package org.dbiir.txnsails;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.LineEncoder;
+import io.netty.handler.codec.string.LineSeparator;
+import io.netty.handler.codec.string.StringDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+
+/**
+ * Picks the protocol of a new connection from its first bytes. Clients that open with {@link
+ * BinaryProtocol#MAGIC} get the length-prefixed binary pipeline, everyone else the line based text
+ * pipeline. The negotiator removes itself afterwards and hands the buffered bytes on.
+ */
+class ProtocolNegotiator extends ByteToMessageDecoder {
+  private static final int MAX_LINE_LENGTH = 1 << 20;
+
+  private final WorkloadConfiguration configuration;
+  private final int id;
+  private final Executor executionPool;
+
+  ProtocolNegotiator(WorkloadConfiguration configuration, int id, Executor executionPool) {
+    this.configuration = configuration;
+    this.id = id;
+    this.executionPool = executionPool;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+    if (!in.isReadable()) {
+      return;
+    }
+    int start = in.readerIndex();
+    byte[] magic = BinaryProtocol.MAGIC;
+    for (int i = 0; i < magic.length; i++) {
+      if (start + i >= in.writerIndex()) {
+        return; // wait for the rest of the magic
+      }
+      if (in.getByte(start + i) != magic[i]) {
+        installTextPipeline(ctx);
+        return;
+      }
+    }
+    in.skipBytes(magic.length);
+    ctx.writeAndFlush(ctx.alloc().buffer(2).writeByte(magic[0]).writeByte(BinaryProtocol.VERSION));
+    installBinaryPipeline(ctx);
+  }
+
+  private void installTextPipeline(ChannelHandlerContext ctx) {
+    ChannelPipeline pipeline = ctx.pipeline();
+    String name = ctx.name();
+    pipeline.addAfter(name, "frameDecoder", new LineBasedFrameDecoder(MAX_LINE_LENGTH));
+    pipeline.addAfter("frameDecoder", "stringDecoder", new StringDecoder(StandardCharsets.UTF_8));
+    pipeline.addAfter(
+        "stringDecoder", "lineEncoder", new LineEncoder(LineSeparator.UNIX, StandardCharsets.UTF_8));
+    pipeline.addAfter(
+        "lineEncoder", "handler", new ClientChannelHandler(configuration, id, executionPool, false));
+    pipeline.remove(this);
+  }
+
+  private void installBinaryPipeline(ChannelHandlerContext ctx) {
+    ChannelPipeline pipeline = ctx.pipeline();
+    String name = ctx.name();
+    pipeline.addAfter(
+        name,
+        "frameDecoder",
+        new LengthFieldBasedFrameDecoder(BinaryProtocol.MAX_FRAME_LENGTH, 0, 4, 0, 4));
+    pipeline.addAfter("frameDecoder", "framePrepender", new LengthFieldPrepender(4));
+    pipeline.addAfter(
+        "framePrepender", "handler", new ClientChannelHandler(configuration, id, executionPool, true));
+    pipeline.remove(this);
+  }
+}
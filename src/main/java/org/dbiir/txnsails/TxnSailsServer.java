@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -23,17 +24,24 @@ import org.dbiir.txnsails.analysis.SchemaInfo;
 import org.dbiir.txnsails.common.JacksonXmlConfiguration;
 import org.dbiir.txnsails.common.types.CCType;
 import org.dbiir.txnsails.common.types.DatabaseType;
+import org.dbiir.txnsails.execution.PreparedStatementCache;
 import org.dbiir.txnsails.execution.WorkloadConfiguration;
 import org.dbiir.txnsails.execution.utils.FileUtil;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.execution.pool.TransactionConnectionPool;
+import org.dbiir.txnsails.execution.sample.SamplingController;
+import org.dbiir.txnsails.execution.validation.TransactionCollector;
 import org.dbiir.txnsails.execution.validation.ValidationMetaTable;
 import org.dbiir.txnsails.worker.Flusher;
 import org.dbiir.txnsails.worker.MetaWorker;
+import org.dbiir.txnsails.worker.OnlineWorker;
 
 public class TxnSailsServer {
   private static int DEFAULT_AUXILIARY_THREAD_NUM = 16; // used for
   private static Thread flushThread;
   private static ServerSocket serverSocket;
   private static ExecutorService threadPool;
+  private static NettyServer nettyServer;
   static boolean running = true;
 
   public static void main(String[] args)
@@ -60,32 +68,96 @@ public class TxnSailsServer {
 
     AtomicInteger genWorkerId = new AtomicInteger(0);
     WorkloadConfiguration workloadConfiguration = loadConfiguration(xmlConfig);
+    Log.setLevel(workloadConfiguration.getLogLevel());
+    Log.setTraceRate(workloadConfiguration.getTraceRate());
+    restoreAnalysis(workloadConfiguration, schemaFile);
     List<Connection> auxiliaryConnectionList = makeAuxiliaryConnections(workloadConfiguration);
     ValidationMetaTable.getInstance()
-            .initHotspot(workloadConfiguration.getBenchmarkName(), auxiliaryConnectionList);
+            .initHotspot(
+                    workloadConfiguration.getBenchmarkName(),
+                    auxiliaryConnectionList,
+                    workloadConfiguration.getHotspotWarmup());
+    TransactionCollector.init(
+            new TransactionCollector(
+                    workloadConfiguration.getSampleBatchSize(),
+                    new SamplingController(
+                            workloadConfiguration.getSampleRate(),
+                            workloadConfiguration.isAdaptiveSampling(),
+                            workloadConfiguration.getSampleBudget(),
+                            workloadConfiguration.getSampleBatchMin() > 0
+                                    ? workloadConfiguration.getSampleBatchMin()
+                                    : workloadConfiguration.getSampleBatchSize(),
+                            workloadConfiguration.getSampleBatchSize())));
+    if (workloadConfiguration.getPoolSize() > 0) {
+      TransactionConnectionPool.init(
+              new TransactionConnectionPool(
+                      workloadConfiguration,
+                      OnlineWorker.QUERY_TIMEOUT,
+                      MetaWorker.getINSTANCE()::getTemplates));
+    }
 
-    threadPool = Executors.newFixedThreadPool(128);
     try {
       createFlushThread(
               argsLine,
               workloadConfiguration.getBenchmarkName(),
-              workloadConfiguration.getConcurrencyControlType());
+              workloadConfiguration.getConcurrencyControlType(),
+              workloadConfiguration.getSampleFormat(),
+              workloadConfiguration.getPredictor());
       System.out.println("Create Flush Thread");
-      serverSocket = new ServerSocket(9876);
-      while (running) {
-        try {
-          Socket clientSocket = serverSocket.accept();
-          threadPool.submit(new ClientHandler(clientSocket, workloadConfiguration, genWorkerId.addAndGet(1)));
-        } catch (IOException e) {
-          if (running) {
-            System.out.println(List.of(e.getStackTrace()));
-          }
-        }
+      if (workloadConfiguration.getFrontend().equalsIgnoreCase("socket")) {
+        serveBlockingSockets(workloadConfiguration, genWorkerId);
+      } else {
+        serveNetty(workloadConfiguration, genWorkerId);
       }
     } finally {
       finishFlushThread();
-      threadPool.shutdown();
-      System.out.println("Server stopped.");
+      if (threadPool != null) {
+        threadPool.shutdown();
+      }
+      if (nettyServer != null) {
+        nettyServer.shutdown();
+      }
+      Log.info("server stopped", "droppedLogs", Log.getDropped());
+      Log.flush(1000);
+    }
+  }
+
+  // a restarted server serves the templates of its last analysis without parsing them again
+  private static void restoreAnalysis(WorkloadConfiguration workloadConfiguration, String schemaFile) {
+    String snapshot = workloadConfiguration.getAnalysisSnapshot();
+    if (snapshot.equalsIgnoreCase("off")) {
+      return;
+    }
+    if (snapshot.isEmpty()) {
+      snapshot = "metas/analysis_" + workloadConfiguration.getBenchmarkName() + ".json";
+    }
+    MetaWorker.getINSTANCE().restoreAnalysisResult(Path.of(snapshot), Path.of(schemaFile));
+  }
+
+  private static void serveNetty(WorkloadConfiguration workloadConfiguration, AtomicInteger genWorkerId)
+          throws InterruptedException {
+    nettyServer = new NettyServer(workloadConfiguration, genWorkerId);
+    nettyServer.start();
+    nettyServer.awaitClose();
+  }
+
+  private static void serveBlockingSockets(
+          WorkloadConfiguration workloadConfiguration, AtomicInteger genWorkerId) throws IOException {
+    // a virtual thread per session lifts the bound of the platform pool on concurrent sessions
+    threadPool =
+            workloadConfiguration.isVirtualThreads()
+                    ? Executors.newVirtualThreadPerTaskExecutor()
+                    : Executors.newFixedThreadPool(128);
+    serverSocket = new ServerSocket(workloadConfiguration.getPort());
+    while (running) {
+      try {
+        Socket clientSocket = serverSocket.accept();
+        threadPool.submit(new ClientHandler(clientSocket, workloadConfiguration, genWorkerId.addAndGet(1)));
+      } catch (IOException e) {
+        if (running) {
+          Log.error("accepting client failed", e);
+        }
+      }
     }
   }
 
@@ -128,6 +200,25 @@ public class TxnSailsServer {
     String type = xmlConfig.getConcurrencyControlType();
     wrkld.setConcurrencyControlType(type);
 
+    wrkld.setFrontend(xmlConfig.getFrontend());
+    wrkld.setPort(xmlConfig.getPort());
+    wrkld.setExecutorThreads(xmlConfig.getExecutorThreads());
+    wrkld.setIoThreads(xmlConfig.getIoThreads());
+    wrkld.setStatementCacheSize(xmlConfig.getStatementCacheSize());
+    wrkld.setHotspotWarmup(xmlConfig.getHotspotWarmup());
+    wrkld.setPoolSize(xmlConfig.getPoolSize());
+    wrkld.setVirtualThreads(xmlConfig.isVirtualThreads());
+    wrkld.setLogLevel(xmlConfig.getLogLevel());
+    wrkld.setTraceRate(xmlConfig.getTraceRate());
+    wrkld.setSampleBatchSize(xmlConfig.getSampleBatchSize());
+    wrkld.setSampleFormat(xmlConfig.getSampleFormat());
+    wrkld.setPredictor(xmlConfig.getPredictor());
+    wrkld.setSampleRate(xmlConfig.getSampleRate());
+    wrkld.setAdaptiveSampling(xmlConfig.isAdaptiveSampling());
+    wrkld.setSampleBudget(xmlConfig.getSampleBudget());
+    wrkld.setSampleBatchMin(xmlConfig.getSampleBatchMin());
+    wrkld.setAnalysisSnapshot(xmlConfig.getAnalysisSnapshot());
+
     return wrkld;
   }
 
@@ -146,7 +237,12 @@ public class TxnSailsServer {
     return connectionList;
   }
 
-  private static void createFlushThread(CommandLine argsLine, String benchmark, CCType ccType) {
+  private static void createFlushThread(
+          CommandLine argsLine,
+          String benchmark,
+          CCType ccType,
+          String sampleFormat,
+          String predictor) {
     String metaDirectory = "metas";
     boolean onlinePredict = false;
     if (argsLine.hasOption("d")) {
@@ -169,7 +265,10 @@ public class TxnSailsServer {
     }
 
     FileUtil.makeDirIfNotExists(metaDirectory);
-    flushThread = new Thread(new Flusher(benchmark, metaDirectory, ccType, onlinePredict));
+    flushThread =
+            new Thread(
+                    new Flusher(
+                            benchmark, metaDirectory, ccType, onlinePredict, sampleFormat, predictor));
     flushThread.start();
   }
 
@@ -179,8 +278,17 @@ public class TxnSailsServer {
 
   public static void closeServer() throws IOException {
     running = false;
+    Log.info("prepared statement caches", "stats", PreparedStatementCache.getGlobalStats());
+    TransactionConnectionPool pool = TransactionConnectionPool.getInstance();
+    if (pool != null) {
+      Log.info("transaction connection pool", "stats", pool.getStats());
+      pool.shutdown();
+    }
     if (serverSocket != null && !serverSocket.isClosed()) {
       serverSocket.close();
     }
+    if (nettyServer != null) {
+      nettyServer.close();
+    }
   }
 }
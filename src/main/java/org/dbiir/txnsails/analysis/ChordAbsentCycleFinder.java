@@ -1,96 +1,402 @@
 package org.dbiir.txnsails.analysis;
 
 import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.dbiir.txnsails.common.StaticDependencyCycle;
 import org.dbiir.txnsails.common.StaticDependencyGraphEdge;
 import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.common.types.DependencyType;
 
+/**
+ * Finds the chord-absent cycles of the static dependency graph. A cycle is a closed path through
+ * distinct templates that uses every dependency (edge name, shared by both directions) at most
+ * once; a dependency connects a single pair of templates, as StaticDependencyGraph names them. A
+ * chord is an edge between two templates of the cycle whose dependency the cycle does not use; the
+ * cycle is reported starting at every template if it has no chord, starting right after the
+ * template all its chords leave from if they leave from one template, and not at all otherwise.
+ * Cycles of one or two templates are always reported.
+ *
+ * <p>The graph is split into strongly connected components first. Johnson's algorithm then
+ * enumerates the elementary cycles of every component once, from their smallest template, and the
+ * searches from different templates run in parallel. The chords are counted while the path grows,
+ * so a path whose chords already leave from two templates is not extended.
+ */
 public class ChordAbsentCycleFinder {
   private final Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph;
 
+  // the graph by index, edges by id
+  private TransactionTemplate[] nodes;
+  private int[][] outEdges;
+  private int[][] inEdges;
+  private int[] from;
+  private int[] to;
+  private int[] name; // dependency of the edge, the same for both directions
+  private boolean[] rw;
+  private StaticDependencyGraphEdge[] edgeOf;
+  private int[] component;
+
   public ChordAbsentCycleFinder(Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph) {
     this.graph = graph;
   }
 
   public Set<StaticDependencyCycle> findAllCycles() {
-    Set<StaticDependencyCycle> cycles = new HashSet<>();
-    Set<TransactionTemplate> visited = new HashSet<>();
-    Set<TransactionTemplate> stack = new HashSet<>();
+    return find(false);
+  }
+
+  /** The cycles of {@link #findAllCycles} with a read-write edge, others are not searched for. */
+  public Set<StaticDependencyCycle> findCyclesWithReadWrite() {
+    return find(true);
+  }
+
+  private Set<StaticDependencyCycle> find(boolean requireReadWrite) {
+    index();
+    component = new Tarjan(i -> true).components();
+    return IntStream.range(0, nodes.length)
+        .parallel()
+        .mapToObj(s -> new Search(s, requireReadWrite).run())
+        .flatMap(List::stream)
+        .collect(Collectors.toSet());
+  }
 
-    for (TransactionTemplate node : graph.keySet()) {
-      dfs(node, visited, stack, new ArrayList<>(), new ArrayList<>(), cycles, new HashSet<>());
+  private void index() {
+    Map<TransactionTemplate, Integer> ids = new IdentityHashMap<>();
+    List<TransactionTemplate> nodeList = new ArrayList<>();
+    List<StaticDependencyGraphEdge> edges = new ArrayList<>();
+    for (Map.Entry<TransactionTemplate, List<StaticDependencyGraphEdge>> entry :
+        graph.entrySet()) {
+      id(entry.getKey(), ids, nodeList);
+      for (StaticDependencyGraphEdge edge : entry.getValue()) {
+        id(edge.getTo(), ids, nodeList);
+        edges.add(edge);
+      }
+    }
+    nodes = nodeList.toArray(new TransactionTemplate[0]);
+    int m = edges.size();
+    from = new int[m];
+    to = new int[m];
+    name = new int[m];
+    rw = new boolean[m];
+    edgeOf = edges.toArray(new StaticDependencyGraphEdge[0]);
+    Map<String, Integer> names = new HashMap<>();
+    List<Integer> nameEdge = new ArrayList<>(); // an edge of every dependency
+    int[] outDegree = new int[nodes.length];
+    int[] inDegree = new int[nodes.length];
+    for (int e = 0; e < m; e++) {
+      from[e] = ids.get(edgeOf[e].getFrom());
+      to[e] = ids.get(edgeOf[e].getTo());
+      name[e] = names.computeIfAbsent(edgeOf[e].getEdgeName(), k -> names.size());
+      if (name[e] == nameEdge.size()) {
+        nameEdge.add(e);
+      } else if (!samePair(e, nameEdge.get(name[e]))) {
+        throw new IllegalArgumentException(
+            "dependency " + edgeOf[e].getEdgeName() + " connects more than one pair of templates");
+      }
+      rw[e] = edgeOf[e].getType() == DependencyType.READ_WRITE;
+      outDegree[from[e]]++;
+      inDegree[to[e]]++;
+    }
+    outEdges = new int[nodes.length][];
+    inEdges = new int[nodes.length][];
+    for (int v = 0; v < nodes.length; v++) {
+      outEdges[v] = new int[outDegree[v]];
+      inEdges[v] = new int[inDegree[v]];
+      outDegree[v] = 0;
+      inDegree[v] = 0;
     }
+    // in the order of the adjacency lists
+    for (int e = 0; e < m; e++) {
+      outEdges[from[e]][outDegree[from[e]]++] = e;
+      inEdges[to[e]][inDegree[to[e]]++] = e;
+    }
+  }
 
-    return cycles;
+  private boolean samePair(int e, int f) {
+    return (from[e] == from[f] && to[e] == to[f]) || (from[e] == to[f] && to[e] == from[f]);
+  }
+
+  private static void id(
+      TransactionTemplate node, Map<TransactionTemplate, Integer> ids, List<TransactionTemplate> list) {
+    if (!ids.containsKey(node)) {
+      ids.put(node, list.size());
+      list.add(node);
+    }
   }
 
-  private void dfs(
-      TransactionTemplate node,
-      Set<TransactionTemplate> visited,
-      Set<TransactionTemplate> stack,
-      List<TransactionTemplate> path,
-      List<StaticDependencyGraphEdge> edges,
-      Set<StaticDependencyCycle> cycles,
-      Set<String> edgeNames) {
-    visited.add(node);
-    stack.add(node);
-    path.add(node);
-
-    for (StaticDependencyGraphEdge edge : graph.getOrDefault(node, Collections.emptyList())) {
-      TransactionTemplate neighbor = edge.getTo();
-      String edgeName = edge.getEdgeName();
-      edges.add(edge);
-
-      if (!visited.contains(neighbor)) {
-        edgeNames.add(edgeName); // add the edge name
-        dfs(neighbor, visited, stack, path, edges, cycles, edgeNames);
-        edgeNames.remove(edgeName); // remove the edge name when backtracking
-      } else if (stack.contains(neighbor) && !edgeNames.contains(edgeName)) {
-        // find a cycle without nodes with the same edgeName
-        int index = path.indexOf(neighbor);
-        path.add(neighbor);
-        List<TransactionTemplate> cycleNodes = new ArrayList<>(path);
-        List<StaticDependencyGraphEdge> cycleEdges = new ArrayList<>(edges);
-
-        edgeNames.add(edgeName);
-        if (isSimpleCycle(cycleNodes, edgeNames)) {
-          // print the cycle
-          cycles.add(new StaticDependencyCycle(cycleNodes, cycleEdges));
+  /** Strongly connected components of the subgraph of the allowed nodes. */
+  private final class Tarjan {
+    private final IntPredicate allowed;
+    private final int[] order = new int[nodes.length];
+    private final int[] low = new int[nodes.length];
+    private final int[] comp = new int[nodes.length];
+    private final boolean[] onStack = new boolean[nodes.length];
+    private final int[] stack = new int[nodes.length];
+    private int top = 0;
+    private int counter = 0;
+    private int components = 0;
+
+    Tarjan(IntPredicate allowed) {
+      this.allowed = allowed;
+      Arrays.fill(comp, -1);
+    }
+
+    /** @return the component of every node, -1 for the nodes not allowed */
+    int[] components() {
+      for (int v = 0; v < nodes.length; v++) {
+        if (allowed.test(v) && order[v] == 0) {
+          visit(v);
         }
-        edgeNames.remove(edgeName);
-        path.remove(path.size() - 1);
       }
+      return comp;
+    }
 
-      edges.remove(edges.size() - 1);
+    /** @return the component of v, the nodes that are not in it are -1 or another component */
+    int[] componentOf(int v) {
+      visit(v);
+      return comp;
     }
 
-    visited.remove(node);
-    stack.remove(node);
-    path.remove(path.size() - 1);
+    private void visit(int v) {
+      order[v] = low[v] = ++counter;
+      stack[top++] = v;
+      onStack[v] = true;
+      for (int e : outEdges[v]) {
+        int w = to[e];
+        if (!allowed.test(w)) {
+          continue;
+        }
+        if (order[w] == 0) {
+          visit(w);
+          low[v] = Math.min(low[v], low[w]);
+        } else if (onStack[w]) {
+          low[v] = Math.min(low[v], order[w]);
+        }
+      }
+      if (low[v] == order[v]) {
+        int w;
+        do {
+          w = stack[--top];
+          onStack[w] = false;
+          comp[w] = components;
+        } while (w != v);
+        components++;
+      }
+    }
   }
 
-  private boolean isSimpleCycle(List<TransactionTemplate> cycle, Set<String> edgeNames) {
-    TransactionTemplate head = cycle.get(0);
-    TransactionTemplate tail = cycle.get(cycle.size() - 1);
-    if (!head.getName().equals(tail.getName())) return false;
-    // check the chord
-    Set<TransactionTemplate> cycleSet = new HashSet<>(cycle);
-    if (cycleSet.size() == 2) return true;
-    for (TransactionTemplate node : cycle.subList(0, cycle.size() - 2)) {
-      for (StaticDependencyGraphEdge edge : graph.getOrDefault(node, Collections.emptyList())) {
-        String edgeName = edge.getEdgeName();
-        if (cycleSet.contains(edge.getTo()) && !edgeNames.contains(edgeName)) {
-          //                    System.out.println("Chord found: " + edge.getFrom().getName() + " ->
-          // " + edge.getTo().getName() + " (" + edge.getEdgeName() + ")");
-          return false;
+  /** Johnson's circuit search for the cycles whose smallest node is s. */
+  private final class Search {
+    private final int s;
+    private final boolean requireReadWrite;
+    private final boolean[] allowed = new boolean[nodes.length];
+    private final boolean[] blocked = new boolean[nodes.length];
+    private final BitSet[] blockedBy = new BitSet[nodes.length];
+    private final boolean[] onPath = new boolean[nodes.length];
+    private final int[] chords = new int[nodes.length]; // chords leaving each node of the path
+    private int chordSources = 0;
+    private final int[] pathNodes = new int[nodes.length];
+    private final int[] pathEdges = new int[nodes.length];
+    private int depth = 0; // edges on the path
+    private int readWrites = 0;
+    private final List<StaticDependencyCycle> cycles = new ArrayList<>();
+
+    Search(int s, boolean requireReadWrite) {
+      this.s = s;
+      this.requireReadWrite = requireReadWrite;
+    }
+
+    List<StaticDependencyCycle> run() {
+      // a dependency of s on itself is a cycle of its own and a chord of every longer one
+      pathNodes[0] = s;
+      onPath[s] = true;
+      for (int e : outEdges[s]) {
+        if (to[e] == s) {
+          if (!requireReadWrite || rw[e]) {
+            emit(e, -1);
+          }
+          addChord(s, 1);
+        }
+      }
+      int c = component[s];
+      int[] sub = new Tarjan(v -> v >= s && component[v] == c).componentOf(s);
+      int size = 0;
+      boolean hasReadWrite = false;
+      for (int v = s; v < nodes.length; v++) {
+        allowed[v] = component[v] == c && sub[v] == sub[s];
+        size += allowed[v] ? 1 : 0;
+      }
+      for (int v = s; v < nodes.length && !hasReadWrite; v++) {
+        if (allowed[v]) {
+          for (int e : outEdges[v]) {
+            hasReadWrite |= rw[e] && allowed[to[e]];
+          }
+        }
+      }
+      if (size < 2 || (requireReadWrite && !hasReadWrite)) {
+        return cycles; // no cycle through s among the larger nodes
+      }
+      circuit(s);
+      return cycles;
+    }
+
+    private boolean circuit(int v) {
+      boolean found = false;
+      blocked[v] = true;
+      // the chords of the path stay chords of every longer cycle
+      boolean extend = chordSources < 2;
+      for (int e : outEdges[v]) {
+        int w = to[e];
+        if (!allowed[w]) {
+          continue;
+        }
+        if (w == s) {
+          if (depth == 0) {
+            continue; // reported by run
+          }
+          found = true;
+          // back over the dependency of the first edge is no cycle
+          if (depth != 1 || name[e] != name[pathEdges[0]]) {
+            close(e);
+          }
+        } else if (!blocked[w]) {
+          if (!extend) {
+            found = true; // not searched, nothing may stay blocked for it
+            continue;
+          }
+          push(e, w);
+          found |= circuit(w);
+          pop(e, w);
+        }
+      }
+      if (found) {
+        unblock(v);
+      } else {
+        for (int e : outEdges[v]) {
+          if (allowed[to[e]]) {
+            blockedBy(to[e]).set(v);
+          }
+        }
+      }
+      return found;
+    }
+
+    private BitSet blockedBy(int w) {
+      if (blockedBy[w] == null) {
+        blockedBy[w] = new BitSet(nodes.length);
+      }
+      return blockedBy[w];
+    }
+
+    private void unblock(int u) {
+      blocked[u] = false;
+      BitSet waiting = blockedBy[u];
+      if (waiting == null) {
+        return;
+      }
+      for (int w = waiting.nextSetBit(0); w >= 0; w = waiting.nextSetBit(w + 1)) {
+        waiting.clear(w);
+        if (blocked[w]) {
+          unblock(w);
+        }
+      }
+    }
+
+    private void push(int e, int w) {
+      pathEdges[depth++] = e;
+      pathNodes[depth] = w;
+      onPath[w] = true;
+      readWrites += rw[e] ? 1 : 0;
+      countChords(w, name[e], 1);
+    }
+
+    private void pop(int e, int w) {
+      countChords(w, name[e], -1);
+      readWrites -= rw[e] ? 1 : 0;
+      onPath[w] = false;
+      depth--;
+    }
+
+    // the edges between w and the path, except those of the dependency w was reached by: the
+    // other dependencies of the path connect other pairs, the closing one is left to close
+    private void countChords(int w, int via, int delta) {
+      for (int f : outEdges[w]) {
+        if (onPath[to[f]] && name[f] != via) {
+          addChord(w, delta);
+        }
+      }
+      for (int f : inEdges[w]) {
+        if (onPath[from[f]] && from[f] != w && name[f] != via) {
+          addChord(from[f], delta);
         }
       }
     }
-    //        System.out.print("Head: " + head.getName() + "; Tail: " + tail.getName() + " { ");
-    //        for (TransactionTemplate node : cycle) {
-    //            System.out.print(" -> " + node.getName());
-    //        }
-    //        System.out.println(" }");
-    return true;
+
+    private void addChord(int v, int delta) {
+      if (chords[v] == 0) {
+        chordSources++;
+      }
+      chords[v] += delta;
+      if (chords[v] == 0) {
+        chordSources--;
+      }
+    }
+
+    private void close(int e) {
+      if (requireReadWrite && readWrites == 0 && !rw[e]) {
+        return;
+      }
+      int k = depth + 1; // nodes of the cycle
+      int v = pathNodes[depth];
+      if (k == 2) {
+        emit(e, -1);
+        return;
+      }
+      // the closing dependency was counted as a chord between v and s while v was the tail
+      int closing = name[e];
+      int source = -1;
+      for (int i = 0; i < k; i++) {
+        int x = pathNodes[i];
+        int count = chords[x];
+        if (x == v || x == s) {
+          for (int f : outEdges[x]) {
+            if (to[f] == (x == v ? s : v) && name[f] == closing) {
+              count--;
+            }
+          }
+        }
+        if (count > 0) {
+          if (source >= 0) {
+            return; // chords leave from two templates
+          }
+          source = i;
+        }
+      }
+      emit(e, source);
+    }
+
+    /** @param source the position of the template all chords leave from, -1 without chords */
+    private void emit(int closing, int source) {
+      int k = depth + 1;
+      pathEdges[depth] = closing;
+      if (source < 0) {
+        for (int r = 0; r < k; r++) {
+          cycles.add(rotation(r, k));
+        }
+      } else {
+        cycles.add(rotation((source + 1) % k, k));
+      }
+    }
+
+    private StaticDependencyCycle rotation(int r, int k) {
+      List<TransactionTemplate> cycleNodes = new ArrayList<>(k + 1);
+      List<StaticDependencyGraphEdge> cycleEdges = new ArrayList<>(k);
+      for (int i = 0; i < k; i++) {
+        cycleNodes.add(nodes[pathNodes[(r + i) % k]]);
+        cycleEdges.add(edgeOf[pathEdges[(r + i) % k]]);
+      }
+      cycleNodes.add(nodes[pathNodes[r]]);
+      return new StaticDependencyCycle(cycleNodes, cycleEdges);
+    }
   }
 }
@@ -56,6 +56,77 @@ public class JacksonXmlConfiguration {
   @JacksonXmlProperty(localName = "scalefactor")
   private double scalefactor;
 
+  // netty: event-loop front end, socket: one thread per client socket
+  @JacksonXmlProperty(localName = "frontend")
+  private String frontend;
+
+  @JacksonXmlProperty(localName = "port")
+  private int port;
+
+  // threads running the blocking JDBC work of the netty front end
+  @JacksonXmlProperty(localName = "executorThreads")
+  private int executorThreads;
+
+  // 0 lets netty choose the number of I/O threads
+  @JacksonXmlProperty(localName = "ioThreads")
+  private int ioThreads;
+
+  // prepared statements cached per connection, 0 prepares every execution again
+  @JacksonXmlProperty(localName = "statementCacheSize")
+  private int statementCacheSize;
+
+  // eager loads the hot versions before serving, lazy fetches them on the first validation
+  @JacksonXmlProperty(localName = "hotspotWarmup")
+  private String hotspotWarmup;
+
+  // connections shared by all sessions per isolation level, 0 gives every session its own
+  @JacksonXmlProperty(localName = "poolSize")
+  private int poolSize;
+
+  // run every client session on a virtual thread instead of a bounded platform pool
+  @JacksonXmlProperty(localName = "virtualThreads")
+  private boolean virtualThreads;
+
+  // trace, debug, info, warn, error or off; debug logs every client message
+  @JacksonXmlProperty(localName = "logLevel")
+  private String logLevel;
+
+  // share of the requests traced from the start, changed at runtime with trace#rate
+  @JacksonXmlProperty(localName = "traceRate")
+  private double traceRate;
+
+  // sampled transactions per runtime dependency graph handed to the predictor
+  @JacksonXmlProperty(localName = "sampleBatchSize")
+  private int sampleBatchSize;
+
+  // binary: memory-mapped sample segments, text: a sample file per batch
+  @JacksonXmlProperty(localName = "sampleFormat")
+  private String sampleFormat;
+
+  // rule / bayes / gnn: predict the isolation level in the server, python: ask the adapter
+  @JacksonXmlProperty(localName = "predictor")
+  private String predictor;
+
+  // probability to sample a transaction, the starting point if adaptiveSampling
+  @JacksonXmlProperty(localName = "sampleRate")
+  private double sampleRate;
+
+  // adapt the sample probability and batch size to the throughput and workload drift
+  @JacksonXmlProperty(localName = "adaptiveSampling")
+  private boolean adaptiveSampling;
+
+  // the most sampled transactions per second when adaptiveSampling
+  @JacksonXmlProperty(localName = "sampleBudget")
+  private int sampleBudget;
+
+  // smallest batch while the workload shifts, 0 keeps sampleBatchSize
+  @JacksonXmlProperty(localName = "sampleBatchMin")
+  private int sampleBatchMin;
+
+  // analysis result restored at startup, empty for metas/analysis_<benchmark>.json, off for none
+  @JacksonXmlProperty(localName = "analysisSnapshot")
+  private String analysisSnapshot;
+
   // Initialize values
   public JacksonXmlConfiguration() {
     this.type = "postgresql";
@@ -73,5 +144,23 @@ public class JacksonXmlConfiguration {
     this.randomSeed = 1;
     this.maxRetries = 3;
     this.scalefactor = 1.0;
+    this.frontend = "netty";
+    this.port = 9876;
+    this.executorThreads = 128;
+    this.ioThreads = 0;
+    this.statementCacheSize = 256;
+    this.hotspotWarmup = "eager";
+    this.poolSize = 0;
+    this.virtualThreads = false;
+    this.logLevel = "info";
+    this.traceRate = 0;
+    this.sampleBatchSize = 128;
+    this.sampleFormat = "binary";
+    this.predictor = "rule";
+    this.sampleRate = 0.01;
+    this.adaptiveSampling = true;
+    this.sampleBudget = 2000;
+    this.sampleBatchMin = 0;
+    this.analysisSnapshot = "";
   }
 }
@@ -93,7 +93,9 @@ public class StaticDependencyGraph {
         if (t2.shouldSkipIndex(j)) {
           continue;
         }
-        if (t1.getRelationByIndex(i).equals(t2.getRelationByIndex(j))) {
+        // same relation, common columns and rows the literals of the predicates do not separate
+        if (t1.getRelationByIndex(i).equals(t2.getRelationByIndex(j))
+            && t1.getSQLTemplateByIndex(i).mayConflictWith(t2.getSQLTemplateByIndex(j))) {
           // 0 represents read, 1 represents write
           if (t1.getOperationByIndex(i) == 0 && t2.getOperationByIndex(j) == 1) {
             String edge_name = t1.getName() + "-" + t2.getName() + "-" + i + "-" + j;
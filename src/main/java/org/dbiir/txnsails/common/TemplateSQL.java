@@ -1,51 +1,60 @@
 package org.dbiir.txnsails.common;
 
-import java.io.StringReader;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.dbiir.txnsails.analysis.ColumnInfo;
 import org.dbiir.txnsails.analysis.ConditionInfo;
+import org.dbiir.txnsails.analysis.SchemaInfo;
 import org.dbiir.txnsails.common.constants.YCSBConstants;
-import org.dbiir.txnsails.parse.PostgreSQLLexer;
+import org.dbiir.txnsails.common.types.ColumnType;
+import org.dbiir.txnsails.execution.utils.ParameterBinder;
 import org.dbiir.txnsails.parse.PostgreSQLParser;
 import org.dbiir.txnsails.parse.PostgreSQLParserBaseListener;
+import org.dbiir.txnsails.parse.ReusablePostgreSQLParser;
 import org.dbiir.txnsails.worker.MetaWorker;
 
 import lombok.Getter;
 import lombok.Setter;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.DoubleValue;
 import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
 import net.sf.jsqlparser.expression.JdbcParameter;
 import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
 import net.sf.jsqlparser.expression.StringValue;
 import net.sf.jsqlparser.expression.operators.arithmetic.Addition;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
 import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.ComparisonOperator;
 import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
 import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
 import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
 import net.sf.jsqlparser.expression.operators.relational.MinorThan;
 import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
-import net.sf.jsqlparser.parser.CCJSqlParserManager;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.GroupByElement;
+import net.sf.jsqlparser.statement.select.OrderByElement;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.select.SelectExpressionItem;
 import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.SubSelect;
 import net.sf.jsqlparser.statement.update.Update;
 import net.sf.jsqlparser.statement.update.UpdateSet;
 
@@ -63,11 +72,19 @@ public class TemplateSQL implements Cloneable {
   @Setter @Getter private List<Column> columnList;
   @Getter private List<ConditionInfo> wherePlaceholders;
   @Getter private List<ConditionInfo> allPlaceholders;
+  // typed setter per placeholder, in the order of allPlaceholders
+  @Getter private ParameterBinder[] binders;
   private boolean selectAllAttr;
   private boolean rangeOnPrimaryKey;
   private boolean complexSQL;
   @Getter
   private final HashMap<String, List<ConditionInfo>> ranges = new HashMap<>(4);
+  // upper case columns read (select list, WHERE, GROUP BY, HAVING and ORDER BY) and written (SET),
+  // null for all columns
+  private Set<String> readColumns;
+  private Set<String> writeColumns;
+  // the column = literal conjuncts of the WHERE clause, upper case column to normalized literal
+  private final Map<String, String> literalPredicates = new HashMap<>(2);
 
   // in this prototype, we only support sql visits only one table, which covers most OLTP workloads.
   public TemplateSQL(int op, String table, String sql) {
@@ -84,12 +101,179 @@ public class TemplateSQL implements Cloneable {
     this.allPlaceholders = new ArrayList<>();
     this.selectAllAttr = false;
 
+    // one parse shared by the analyses below, they only read it
+    Statement statement = parse();
     // find the placeholders in the clause
-    findJdbcParameters();
+    findJdbcParameters(statement);
+    // resolve the setter of each placeholder from the schema
+    buildBinders();
     // fill the column list
-    fillColumnList();
+    fillColumnList(statement);
     // handle complex SQL
     handleComplexSQL();
+    // the columns and rows the statement accesses, for the static dependencies
+    fillAccessColumns(statement);
+  }
+
+  private Statement parse() {
+    try {
+      return CCJSqlParserUtil.parse(originSQL);
+    } catch (JSQLParserException e) {
+      System.out.println("originSQL: " + originSQL);
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /** The analysis result of a statement, restored without parsing the statement again. */
+  public record Snapshot(
+      int op,
+      String originSQL,
+      String rewriteSQL,
+      String table,
+      boolean skip,
+      boolean needRewriteUnderSI,
+      boolean needRewriteUnderRC,
+      List<Integer> uniqueKeyIndexList,
+      int uniqueKeyNumber,
+      List<ColumnName> columnList,
+      List<Placeholder> wherePlaceholders,
+      List<Placeholder> allPlaceholders,
+      boolean selectAllAttr,
+      boolean rangeOnPrimaryKey,
+      boolean complexSQL,
+      Map<String, List<Integer>> ranges, // positions in wherePlaceholders
+      Set<String> readColumns,
+      Set<String> writeColumns,
+      Map<String, String> literalPredicates) {}
+
+  /** @param table the table or alias the column is qualified with, null if it is not */
+  public record ColumnName(String table, String name) {
+    static ColumnName of(Column column) {
+      return new ColumnName(
+          column.getTable() == null ? null : column.getTable().getFullyQualifiedName(),
+          column.getColumnName());
+    }
+
+    Column toColumn() {
+      return new Column(table == null ? null : new Table(table), name);
+    }
+  }
+
+  /** @param comparison the operator of the condition, null for the placeholders of a SET */
+  public record Placeholder(ColumnName column, int index, String comparison) {}
+
+  private TemplateSQL(Snapshot snapshot) {
+    this.op = snapshot.op();
+    this.originSQL = snapshot.originSQL();
+    this.rewriteSQL = snapshot.rewriteSQL();
+    this.table = snapshot.table();
+    this.skip = snapshot.skip();
+    this.needRewriteUnderSI = snapshot.needRewriteUnderSI();
+    this.needRewriteUnderRC = snapshot.needRewriteUnderRC();
+    this.uniqueKeyIndexList = new ArrayList<>(snapshot.uniqueKeyIndexList());
+    this.uniqueKeyNumber = snapshot.uniqueKeyNumber();
+    this.columnList = new ArrayList<>(snapshot.columnList().size());
+    for (ColumnName column : snapshot.columnList()) {
+      columnList.add(column.toColumn());
+    }
+    this.wherePlaceholders = toConditions(snapshot.wherePlaceholders());
+    this.allPlaceholders = toConditions(snapshot.allPlaceholders());
+    this.selectAllAttr = snapshot.selectAllAttr();
+    this.rangeOnPrimaryKey = snapshot.rangeOnPrimaryKey();
+    this.complexSQL = snapshot.complexSQL();
+    for (Map.Entry<String, List<Integer>> range : snapshot.ranges().entrySet()) {
+      List<ConditionInfo> conditions = new ArrayList<>();
+      for (int position : range.getValue()) {
+        conditions.add(wherePlaceholders.get(position));
+      }
+      ranges.put(range.getKey(), conditions);
+    }
+    this.readColumns = snapshot.readColumns();
+    this.writeColumns = snapshot.writeColumns();
+    this.literalPredicates.putAll(snapshot.literalPredicates());
+    buildBinders();
+  }
+
+  public static TemplateSQL restore(Snapshot snapshot) {
+    return new TemplateSQL(snapshot);
+  }
+
+  public Snapshot toSnapshot() {
+    List<ColumnName> columns = new ArrayList<>(columnList.size());
+    for (Column column : columnList) {
+      columns.add(ColumnName.of(column));
+    }
+    Map<String, List<Integer>> rangePositions = new HashMap<>();
+    for (Map.Entry<String, List<ConditionInfo>> range : ranges.entrySet()) {
+      List<Integer> positions = new ArrayList<>();
+      for (ConditionInfo condition : range.getValue()) {
+        positions.add(wherePlaceholders.indexOf(condition));
+      }
+      rangePositions.put(range.getKey(), positions);
+    }
+    return new Snapshot(
+        op,
+        originSQL,
+        rewriteSQL,
+        table,
+        skip,
+        needRewriteUnderSI,
+        needRewriteUnderRC,
+        uniqueKeyIndexList,
+        uniqueKeyNumber,
+        columns,
+        toPlaceholders(wherePlaceholders),
+        toPlaceholders(allPlaceholders),
+        selectAllAttr,
+        rangeOnPrimaryKey,
+        complexSQL,
+        rangePositions,
+        readColumns,
+        writeColumns,
+        literalPredicates);
+  }
+
+  private static List<Placeholder> toPlaceholders(List<ConditionInfo> conditions) {
+    List<Placeholder> placeholders = new ArrayList<>(conditions.size());
+    for (ConditionInfo condition : conditions) {
+      placeholders.add(
+          new Placeholder(
+              ColumnName.of(condition.getColumn()),
+              condition.getPlaceholderIndex() + 1,
+              condition.getExpression() instanceof BinaryExpression binary
+                  ? binary.getStringExpression()
+                  : null));
+    }
+    return placeholders;
+  }
+
+  private static List<ConditionInfo> toConditions(List<Placeholder> placeholders) {
+    List<ConditionInfo> conditions = new ArrayList<>(placeholders.size());
+    for (Placeholder placeholder : placeholders) {
+      Column column = placeholder.column().toColumn();
+      JdbcParameter parameter = new JdbcParameter(placeholder.index(), false);
+      // the validation only tells the comparisons apart, other operators keep no expression
+      ComparisonOperator expression =
+          placeholder.comparison() == null
+              ? null
+              : switch (placeholder.comparison()) {
+                case "=" -> new EqualsTo();
+                case ">" -> new GreaterThan();
+                case ">=" -> new GreaterThanEquals();
+                case "<" -> new MinorThan();
+                case "<=" -> new MinorThanEquals();
+                default -> null;
+              };
+      if (expression == null) {
+        conditions.add(new ConditionInfo(column, parameter));
+      } else {
+        expression.setLeftExpression(column);
+        expression.setRightExpression(parameter);
+        conditions.add(new ConditionInfo(column, parameter, expression));
+      }
+    }
+    return conditions;
   }
 
   public void addUniqueKeyIndex(int idx) {
@@ -109,11 +293,13 @@ public class TemplateSQL implements Cloneable {
 
   private void rewrite() {
     if (!rewriteSQL.isEmpty()) return;
-    if (identifySQLType(originSQL) == 1) {
-      this.rewriteSQL = modifyUpdateQuery();
+    // the rewrite changes the statement, so it gets a parse of its own
+    Statement statement = parse();
+    if (statement instanceof Update update) {
+      this.rewriteSQL = modifyUpdateQuery(update);
       System.out.println("1 rewriteSQL: " + rewriteSQL);
-    } else if (identifySQLType(originSQL) == 0) {
-      this.rewriteSQL = modifySelectQuery();
+    } else if (statement instanceof Select select) {
+      this.rewriteSQL = modifySelectQuery(select);
       System.out.println("2 rewriteSQL: " + rewriteSQL);
     } else {
       this.rewriteSQL = "";
@@ -149,17 +335,19 @@ public class TemplateSQL implements Cloneable {
     }
   }
 
-  private void fillColumnList() {
-    CCJSqlParserManager parserManager = new CCJSqlParserManager();
+  private void fillColumnList(Statement statement) {
+    if (statement == null) {
+      return;
+    }
     try {
       if (op == 0) {
         // read
-        Select selectStatement = (Select) parserManager.parse(new StringReader(originSQL));
+        Select selectStatement = (Select) statement;
         PlainSelect plainSelect = (PlainSelect) selectStatement.getSelectBody();
         parseSelectItems(plainSelect.getSelectItems());
       } else {
         // write, parse the returning clause
-        Update updateStatement = (Update) parserManager.parse(new StringReader(originSQL));
+        Update updateStatement = (Update) statement;
         parseSelectItems(updateStatement.getReturningExpressionList());
       }
     } catch (Exception e) {
@@ -192,12 +380,8 @@ public class TemplateSQL implements Cloneable {
   }
 
   // Method: Add the field "vid" to the SELECT statement and ensure it is added at the end
-  private String modifySelectQuery() {
+  private String modifySelectQuery(Select selectStatement) {
     try {
-      // Parse the original SELECT statement
-      CCJSqlParserManager parserManager = new CCJSqlParserManager();
-      Select selectStatement = (Select) parserManager.parse(new StringReader(originSQL));
-
       // Get the SELECT body, which is the part containing the fields
       PlainSelect plainSelect = (PlainSelect) selectStatement.getSelectBody();
 
@@ -230,12 +414,8 @@ public class TemplateSQL implements Cloneable {
   }
 
   // Method: Modify the SQL statement to add the "vid" field and return it
-  private String modifyUpdateQuery() {
+  private String modifyUpdateQuery(Update updateStatement) {
     try {
-      // Parse the SQL statement
-      CCJSqlParserManager parserManager = new CCJSqlParserManager();
-      Update updateStatement = (Update) parserManager.parse(new StringReader(originSQL));
-
       // Create the expression "vid = vid + 1"
       Column vidLeftColumn = new Column("vid");
       LongValue oneValue = new LongValue(1); // Represents the constant 1
@@ -284,31 +464,6 @@ public class TemplateSQL implements Cloneable {
     }
   }
 
-  // Method: Identify the type of SQL statement (SELECT, UPDATE, etc.)
-  // 0 for SELECT, 1 for UPDATE
-  private int identifySQLType(String sql) {
-    try {
-      // Create the SQL parser
-      CCJSqlParserManager parserManager = new CCJSqlParserManager();
-
-      // Parse the SQL statement
-      Statement statement = parserManager.parse(new StringReader(sql));
-
-      // Check the type of SQL statement
-      if (statement instanceof Select) {
-        return 0;
-      } else if (statement instanceof Update) {
-        return 1;
-      } else {
-        return -1;
-      }
-
-    } catch (Exception e) {
-      e.printStackTrace();
-      return -1;
-    }
-  }
-
   private void findWherePlaceholders() {
     try {
       Statement statement = CCJSqlParserUtil.parse(originSQL);
@@ -364,9 +519,11 @@ public class TemplateSQL implements Cloneable {
     }
   }
 
-  private void findJdbcParameters() {
+  private void findJdbcParameters(Statement statement) {
+    if (statement == null) {
+      return;
+    }
     try {
-      Statement statement = CCJSqlParserUtil.parse(originSQL);
       analyseTemplate();
 
       if (statement instanceof Select select) {
@@ -452,6 +609,18 @@ public class TemplateSQL implements Cloneable {
     }
   }
 
+  private void buildBinders() {
+    SchemaInfo schema = MetaWorker.getINSTANCE().getSchema();
+    this.binders = new ParameterBinder[allPlaceholders.size()];
+    for (int i = 0; i < binders.length; i++) {
+      ColumnType type =
+          schema == null
+              ? null
+              : schema.getColumnTypeByName(table, allPlaceholders.get(i).getColumnName());
+      binders[i] = ParameterBinder.of(type);
+    }
+  }
+
   private void handleComplexSQL() {
     // Check if the SQL is complex, i.e., it has multiple tables or joins
     if (originSQL.contains("JOIN") || originSQL.contains("UNION") || originSQL.contains("INTERSECT") ||
@@ -507,15 +676,7 @@ public class TemplateSQL implements Cloneable {
   }
 
   private boolean containsSubquery() {
-    CharStream input = CharStreams.fromString(this.originSQL);
-
-    PostgreSQLLexer lexer = new PostgreSQLLexer(input);
-
-    CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-    PostgreSQLParser parser = new PostgreSQLParser(tokens);
-
-    ParseTree tree = parser.root();
+    ParseTree tree = ReusablePostgreSQLParser.parse(this.originSQL);
 
     ParseTreeWalker walker = new ParseTreeWalker();
     SubqueryListener listener = new SubqueryListener();
@@ -534,6 +695,156 @@ public class TemplateSQL implements Cloneable {
     return false; // No conditions on non-primary key columns found
   }
 
+  /**
+   * Whether this statement and other may access a common row while one of them writes a column
+   * the other reads. Two writes of a common row always conflict, the row is locked whatever
+   * columns they set.
+   */
+  public boolean mayConflictWith(TemplateSQL other) {
+    if (!table.equals(other.table) || !mayShareRow(other) || !other.mayShareRow(this)) {
+      return false;
+    }
+    if (op == 1 && other.op == 1) {
+      return true;
+    }
+    if (op == 1) {
+      return intersects(other.readColumns, writeColumns);
+    }
+    return other.op == 1 && intersects(readColumns, other.writeColumns);
+  }
+
+  // rows of different literals of a column are disjoint, unless a statement moves rows by writing it
+  private boolean mayShareRow(TemplateSQL other) {
+    for (Map.Entry<String, String> predicate : literalPredicates.entrySet()) {
+      String literal = other.literalPredicates.get(predicate.getKey());
+      if (literal != null
+          && !literal.equals(predicate.getValue())
+          && !writes(predicate.getKey())
+          && !other.writes(predicate.getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean writes(String column) {
+    return op == 1 && (writeColumns == null || writeColumns.contains(column));
+  }
+
+  private static boolean intersects(Set<String> a, Set<String> b) {
+    if (a == null || b == null) {
+      return true;
+    }
+    for (String column : a) {
+      if (b.contains(column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void fillAccessColumns(Statement statement) {
+    if (statement instanceof Select select && select.getSelectBody() instanceof PlainSelect plainSelect
+        && plainSelect.getJoins() == null) {
+      Set<String> columns = new HashSet<>();
+      boolean known = true;
+      for (SelectItem item : plainSelect.getSelectItems()) {
+        known &= item instanceof SelectExpressionItem expressionItem
+            && collectColumns(expressionItem.getExpression(), columns);
+      }
+      known &= collectColumns(plainSelect.getWhere(), columns);
+      // the rows a grouped, filtered or ordered and limited select returns depend on these too
+      if (plainSelect.getGroupBy() != null) {
+        GroupByElement groupBy = plainSelect.getGroupBy();
+        known &= groupBy.getGroupingSets() == null || groupBy.getGroupingSets().isEmpty();
+        if (groupBy.getGroupByExpressionList() != null) {
+          for (Expression expression : groupBy.getGroupByExpressionList().getExpressions()) {
+            known &= collectColumns(expression, columns);
+          }
+        }
+      }
+      known &= collectColumns(plainSelect.getHaving(), columns);
+      if (plainSelect.getOrderByElements() != null) {
+        for (OrderByElement orderBy : plainSelect.getOrderByElements()) {
+          known &= collectColumns(orderBy.getExpression(), columns);
+        }
+      }
+      this.readColumns = known ? columns : null;
+      findLiteralPredicates(plainSelect.getWhere());
+    } else if (statement instanceof Update update && update.getJoins() == null) {
+      Set<String> columns = new HashSet<>();
+      for (UpdateSet updateSet : update.getUpdateSets()) {
+        for (Column column : updateSet.getColumns()) {
+          columns.add(column.getColumnName().toUpperCase());
+        }
+      }
+      this.writeColumns = columns;
+      findLiteralPredicates(update.getWhere());
+    }
+    // other statements, inserts and deletes among them, access all columns of unknown rows
+  }
+
+  /** @return false if the expression may read columns that are not collected, a subquery */
+  private static boolean collectColumns(Expression expression, Set<String> columns) {
+    if (expression == null) {
+      return true;
+    }
+    boolean[] known = {true};
+    expression.accept(
+        new ExpressionVisitorAdapter() {
+          @Override
+          public void visit(Column column) {
+            columns.add(column.getColumnName().toUpperCase());
+          }
+
+          @Override
+          public void visit(SubSelect subSelect) {
+            known[0] = false;
+          }
+        });
+    return known[0];
+  }
+
+  private void findLiteralPredicates(Expression where) {
+    if (where instanceof Parenthesis parenthesis) {
+      findLiteralPredicates(parenthesis.getExpression());
+    } else if (where instanceof AndExpression and) {
+      findLiteralPredicates(and.getLeftExpression());
+      findLiteralPredicates(and.getRightExpression());
+    } else if (where instanceof EqualsTo equalsTo) {
+      Expression left = equalsTo.getLeftExpression();
+      Expression right = equalsTo.getRightExpression();
+      if (right instanceof Column && isLiteral(left)) {
+        Expression swap = left;
+        left = right;
+        right = swap;
+      }
+      if (left instanceof Column column && isLiteral(right)) {
+        literalPredicates.putIfAbsent(column.getColumnName().toUpperCase(), normalizeLiteral(right));
+      }
+    }
+  }
+
+  /**
+   * The value of a literal, numbers in one form whether written as 1, 1.0 or '1': PostgreSQL casts
+   * the literal to the column type, so literals of equal value must not look like distinct rows.
+   */
+  private static String normalizeLiteral(Expression literal) {
+    String value =
+        literal instanceof StringValue string ? string.getValue() : literal.toString();
+    try {
+      return new BigDecimal(value.trim()).stripTrailingZeros().toPlainString();
+    } catch (NumberFormatException e) {
+      return value;
+    }
+  }
+
+  private static boolean isLiteral(Expression expression) {
+    return expression instanceof LongValue
+        || expression instanceof StringValue
+        || expression instanceof DoubleValue;
+  }
+
   @Override
   public TemplateSQL clone() {
     try {
@@ -1,6 +1,7 @@
 package org.dbiir.txnsails.common;
 
 import lombok.Getter;
+import lombok.Setter;
 import org.dbiir.txnsails.common.types.CCType;
 
 public class TransactionTemplate implements Cloneable {
@@ -9,6 +10,7 @@ public class TransactionTemplate implements Cloneable {
   private final TemplateSQL[] sqls = new TemplateSQL[15];
   private int sql_idx_in_template;
   @Getter private int type; // one-hot encode
+  @Getter @Setter private int id = -1; // dense index in registration order, used by binary clients
 
   public TransactionTemplate(String name) {
     this.name = name;
@@ -28,6 +30,13 @@ public class TransactionTemplate implements Cloneable {
     return sql_idx_in_template - 1;
   }
 
+  // add a sql restored with its analysis result
+  public int addTemplateSQL(TemplateSQL sql) {
+    this.sqls[sql_idx_in_template] = sql;
+    sql_idx_in_template++;
+    return sql_idx_in_template - 1;
+  }
+
   // return the rewrite sql
   public String getSQLByIndex(int idx, CCType ccType) {
     if (idx >= sql_idx_in_template) {
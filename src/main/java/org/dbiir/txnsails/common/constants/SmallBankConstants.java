@@ -111,6 +111,24 @@ public abstract class SmallBankConstants {
     return res;
   }
 
+  // key columns of the tables whose versions are validated, null if the version is not cached
+  public static String[] getKeyColumns(String tableName) {
+    return switch (tableName) {
+      case TABLENAME_CHECKING, TABLENAME_SAVINGS -> new String[] {"CUSTID"};
+      default -> null;
+    };
+  }
+
+  // validation id of the key columns in the order of getKeyColumns, -1 if there is none
+  public static int encodeValidationId(String tableName, int[] keys) {
+    return keys[0];
+  }
+
+  // inverse of calculateUniqueId, in the order of getKeyColumns
+  public static int[] decodeValidationId(String tableName, int validationId) {
+    return new int[] {validationId};
+  }
+
   public static String getLatestVersion(String tableName, int validationId) {
     int latestVersion = -1;
     String finalSQL = "";
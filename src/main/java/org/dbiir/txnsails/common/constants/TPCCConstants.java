@@ -125,6 +125,66 @@ public abstract class TPCCConstants {
     return res;
   }
 
+  // key columns of the tables whose versions are validated, null if the version is not cached
+  public static String[] getKeyColumns(String tableName) {
+    return switch (tableName) {
+      case TABLENAME_WAREHOUSE -> new String[] {"W_ID"};
+      case TABLENAME_DISTRICT -> new String[] {"D_W_ID", "D_ID"};
+      case TABLENAME_CUSTOMER -> new String[] {"C_W_ID", "C_D_ID", "C_ID"};
+      case TABLENAME_STOCK -> new String[] {"S_W_ID", "S_I_ID"};
+      case TABLENAME_OPENORDER -> new String[] {"O_W_ID", "O_D_ID", "O_ID"};
+      case TABLENAME_ORDERLINE -> new String[] {"OL_W_ID", "OL_D_ID", "OL_O_ID"};
+      default -> null;
+    };
+  }
+
+  // validation id of the key columns in the order of getKeyColumns, -1 if there is none, e.g. for
+  // orders beyond the initial ones
+  public static int encodeValidationId(String tableName, int[] keys) {
+    int w = keys[0] - 1;
+    if (w < 0 || w >= configWhseCount) {
+      return -1;
+    }
+    return switch (tableName) {
+      case TABLENAME_WAREHOUSE -> w;
+      case TABLENAME_DISTRICT -> {
+        int d = keys[1] - 1;
+        yield d < 0 || d >= configDistPerWhse ? -1 : w * configDistPerWhse + d;
+      }
+      case TABLENAME_CUSTOMER, TABLENAME_OPENORDER, TABLENAME_ORDERLINE -> {
+        int d = keys[1] - 1;
+        int c = keys[2] - 1;
+        if (d < 0 || d >= configDistPerWhse || c < 0 || c >= configCustPerDist) {
+          yield -1;
+        }
+        yield (w * configDistPerWhse + d) * configCustPerDist + c;
+      }
+      case TABLENAME_STOCK -> {
+        int i = keys[1] - 1;
+        yield i < 0 || i >= configItemCount ? -1 : w * configItemCount + i;
+      }
+      default -> -1;
+    };
+  }
+
+  // inverse of calculateUniqueId, in the order of getKeyColumns
+  public static int[] decodeValidationId(String tableName, int validationId) {
+    return switch (tableName) {
+      case TABLENAME_WAREHOUSE -> new int[] {validationId + 1};
+      case TABLENAME_DISTRICT ->
+          new int[] {validationId / configDistPerWhse + 1, validationId % configDistPerWhse + 1};
+      case TABLENAME_CUSTOMER, TABLENAME_OPENORDER, TABLENAME_ORDERLINE ->
+          new int[] {
+            validationId / (configDistPerWhse * configCustPerDist) + 1,
+            (validationId / configCustPerDist) % configDistPerWhse + 1,
+            validationId % configCustPerDist + 1
+          };
+      case TABLENAME_STOCK ->
+          new int[] {validationId / configItemCount + 1, validationId % configItemCount + 1};
+      default -> null;
+    };
+  }
+
   // return the index of the table
   public static String getLatestVersion(String tableName, int validationId) {
     int latestVersion = -1;
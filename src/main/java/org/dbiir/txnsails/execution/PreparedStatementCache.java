@@ -0,0 +1,144 @@
+package org.dbiir.txnsails.execution;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import org.dbiir.txnsails.common.TemplateSQL;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.execution.utils.Log;
+
+/**
+ * PreparedStatements of one connection, keyed by their SQL text and evicted in LRU order. Reusing
+ * the same statement object lets the driver switch to a server-side prepared plan instead of
+ * re-parsing and re-planning every execution. Not thread-safe: a cache belongs to the worker that
+ * owns the connection.
+ */
+public class PreparedStatementCache {
+  // totals over all caches of the server
+  private static final LongAdder totalHits = new LongAdder();
+  private static final LongAdder totalMisses = new LongAdder();
+  private static final LongAdder totalEvictions = new LongAdder();
+
+  private final Connection conn;
+  private final int capacity;
+  private final int queryTimeout;
+  private final LinkedHashMap<String, PreparedStatement> statements;
+  @Getter private long hits = 0;
+  @Getter private long misses = 0;
+  @Getter private long evictions = 0;
+
+  /**
+   * @param capacity max number of statements kept open, 0 disables caching
+   * @param queryTimeout query timeout in seconds, set once per prepared statement
+   */
+  public PreparedStatementCache(Connection conn, int capacity, int queryTimeout) {
+    this.conn = conn;
+    this.capacity = Math.max(capacity, 0);
+    this.queryTimeout = queryTimeout;
+    this.statements =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= PreparedStatementCache.this.capacity) {
+              return false;
+            }
+            evictions++;
+            totalEvictions.increment();
+            closeQuietly(eldest.getValue());
+            return true;
+          }
+        };
+  }
+
+  /**
+   * Return the statement of the sql, preparing it on a miss. It must be handed back through {@link
+   * #release(PreparedStatement)} instead of being closed.
+   */
+  public PreparedStatement prepare(String sql) throws SQLException {
+    PreparedStatement stmt = statements.get(sql);
+    if (stmt != null) {
+      hits++;
+      totalHits.increment();
+      return stmt;
+    }
+    misses++;
+    totalMisses.increment();
+    stmt = conn.prepareStatement(sql);
+    try {
+      stmt.setQueryTimeout(queryTimeout);
+    } catch (SQLException ex) {
+      closeQuietly(stmt);
+      throw ex;
+    }
+    if (capacity > 0) {
+      statements.put(sql, stmt);
+    }
+    return stmt;
+  }
+
+  public void release(PreparedStatement stmt) throws SQLException {
+    if (capacity == 0) {
+      stmt.close();
+    }
+  }
+
+  /** Prepare the origin and rewritten sql of all templates, as long as the capacity allows. */
+  public void prepareAll(Collection<TransactionTemplate> templates) throws SQLException {
+    for (TransactionTemplate template : templates) {
+      for (int i = 0; i < template.totalSQLs(); i++) {
+        TemplateSQL templateSQL = template.getSQLTemplateByIndex(i);
+        warm(templateSQL.getOriginSQL());
+        warm(templateSQL.getRewriteSQL());
+      }
+    }
+  }
+
+  private void warm(String sql) throws SQLException {
+    if (sql == null || sql.isEmpty() || statements.size() >= capacity) {
+      return;
+    }
+    if (!statements.containsKey(sql)) {
+      PreparedStatement stmt = conn.prepareStatement(sql);
+      stmt.setQueryTimeout(queryTimeout);
+      statements.put(sql, stmt);
+    }
+  }
+
+  /** Close every cached statement, e.g. after the isolation level of the connection changed. */
+  public void invalidateAll() {
+    for (PreparedStatement stmt : statements.values()) {
+      closeQuietly(stmt);
+    }
+    statements.clear();
+  }
+
+  public int size() {
+    return statements.size();
+  }
+
+  private static void closeQuietly(PreparedStatement stmt) {
+    try {
+      stmt.close();
+    } catch (SQLException ex) {
+      Log.warn("closing prepared statement failed", ex);
+    }
+  }
+
+  public static String getGlobalStats() {
+    return String.format(
+        "hits: %d, misses: %d, evictions: %d",
+        totalHits.sum(), totalMisses.sum(), totalEvictions.sum());
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "PreparedStatementCache{size: %d/%d, hits: %d, misses: %d, evictions: %d}",
+        statements.size(), capacity, hits, misses, evictions);
+  }
+}
@@ -0,0 +1,250 @@
+package org.dbiir.txnsails.execution;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.dbiir.txnsails.common.TransactionTemplate;
+
+/**
+ * Finds the template sql a raw sql is an instance of, for clients that send sql instead of the
+ * template and index. Both are reduced to a fingerprint: keywords and identifiers in lower case,
+ * whitespace and comments collapsed, and every number, string literal and ? replaced by ?. A raw
+ * sql matches a template sql of the same fingerprint whose literals it repeats; its literals at
+ * the ? of the template become the parameters, so the prepared statement of the template is
+ * reused whatever the values.
+ *
+ * <p>Built once the analysis has finished and only read afterwards, all workers share it. The
+ * workers keep their own copies of the templates, so a match names the template and the index of
+ * the sql instead of the sql itself.
+ */
+public class TemplateFingerprintIndex {
+  private static final String OPERATOR_CHARS = "<>=!|:+-*/%^~&";
+
+  private final Map<String, List<Entry>> entries;
+
+  /** A sql of a template: its literals by ? of the fingerprint, null where it has a ? itself. */
+  private record Entry(String template, int index, String[] literals) {}
+
+  /** @param params the literals of the raw sql at the ? of the template sql, in order */
+  public record Match(String template, int index, String[] params) {}
+
+  private TemplateFingerprintIndex(Map<String, List<Entry>> entries) {
+    this.entries = entries;
+  }
+
+  public static TemplateFingerprintIndex build(Collection<TransactionTemplate> templates) {
+    List<TransactionTemplate> ordered = new ArrayList<>(templates);
+    ordered.sort(Comparator.comparingInt(TransactionTemplate::getId));
+    Map<String, List<Entry>> entries = new HashMap<>();
+    List<String> literals = new ArrayList<>();
+    for (TransactionTemplate template : ordered) {
+      for (int i = 0; i < template.totalSQLs(); i++) {
+        literals.clear();
+        // clients send the sql they registered, not the rewritten one
+        String fingerprint = fingerprint(template.getSQLTemplateByIndex(i).getOriginSQL(), literals);
+        entries
+            .computeIfAbsent(fingerprint, k -> new ArrayList<>(1))
+            .add(new Entry(template.getName(), i, literals.toArray(new String[0])));
+      }
+    }
+    return new TemplateFingerprintIndex(entries);
+  }
+
+  public int size() {
+    return entries.values().stream().mapToInt(List::size).sum();
+  }
+
+  /** @return the template sqls the raw sql is an instance of, in the order of registration */
+  public List<Match> find(String sql) {
+    List<String> literals = new ArrayList<>(4);
+    List<Entry> candidates = entries.get(fingerprint(sql, literals));
+    if (candidates == null) {
+      return List.of();
+    }
+    List<Match> matches = new ArrayList<>(candidates.size());
+    for (Entry entry : candidates) {
+      String[] params = bind(entry, literals);
+      if (params != null) {
+        matches.add(new Match(entry.template(), entry.index(), params));
+      }
+    }
+    return matches;
+  }
+
+  // null if the raw sql has a ? or another literal where the template sql has a literal
+  private static String[] bind(Entry entry, List<String> literals) {
+    int placeholders = 0;
+    for (int i = 0; i < entry.literals().length; i++) {
+      String expected = entry.literals()[i];
+      String actual = literals.get(i);
+      if (expected == null) {
+        if (actual == null) {
+          return null; // nothing to bind
+        }
+        placeholders++;
+      } else if (!expected.equals(actual)) {
+        return null;
+      }
+    }
+    String[] params = new String[placeholders];
+    int p = 0;
+    for (int i = 0; i < entry.literals().length; i++) {
+      if (entry.literals()[i] == null) {
+        params[p++] = literals.get(i);
+      }
+    }
+    return params;
+  }
+
+  /**
+   * @param literals receives the value of every literal replaced by ?, unquoted, and null for
+   *     every ? of the sql
+   */
+  static String fingerprint(String sql, List<String> literals) {
+    StringBuilder builder = new StringBuilder(sql.length());
+    int n = sql.length();
+    int i = 0;
+    char last = ' '; // kind of the last token: a (word), 0 (number or ?), ) or an operator
+    while (i < n) {
+      char c = sql.charAt(i);
+      int start = i;
+      if (Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      if (isCommentStart(sql, i)) {
+        i = skipComment(sql, i);
+        continue;
+      }
+      if (builder.length() > 0) {
+        builder.append(' ');
+      }
+      boolean signed =
+          c == '-' && i + 1 < n && isNumberStart(sql, i + 1) && last != 'a' && last != '0' && last != ')';
+      if (isNumberStart(sql, i) || signed) {
+        i = skipNumber(sql, signed ? i + 1 : i);
+        literals.add(sql.substring(start, i));
+        builder.append('?');
+        last = '0';
+      } else if (c == '\'') {
+        StringBuilder value = new StringBuilder();
+        i++;
+        while (i < n) {
+          char d = sql.charAt(i++);
+          if (d == '\'') {
+            if (i < n && sql.charAt(i) == '\'') {
+              value.append('\'');
+              i++;
+            } else {
+              break;
+            }
+          } else {
+            value.append(d);
+          }
+        }
+        literals.add(value.toString());
+        builder.append('?');
+        last = '0';
+      } else if (c == '?') {
+        i++;
+        literals.add(null);
+        builder.append('?');
+        last = '0';
+      } else if (c == '"') {
+        int end = sql.indexOf('"', i + 1);
+        i = end < 0 ? n : end + 1;
+        builder.append(sql, start, i);
+        last = 'a';
+      } else if (Character.isLetter(c) || c == '_') {
+        while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || "_$.".indexOf(sql.charAt(i)) >= 0)) {
+          builder.append(Character.toLowerCase(sql.charAt(i++)));
+        }
+        last = 'a';
+      } else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+        // an operator ends before the sign of a number, a=-1 is a = -1
+        do {
+          builder.append(sql.charAt(i++));
+        } while (i < n
+            && OPERATOR_CHARS.indexOf(sql.charAt(i)) >= 0
+            && !(sql.charAt(i) == '-' && i + 1 < n && isNumberStart(sql, i + 1))
+            && !isCommentStart(sql, i));
+        last = c;
+      } else {
+        builder.append(c);
+        i++;
+        last = c;
+      }
+    }
+    // a trailing semicolon does not change the statement
+    int end = builder.length();
+    while (end > 0 && (builder.charAt(end - 1) == ';' || builder.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    builder.setLength(end);
+    return builder.toString();
+  }
+
+  private static boolean isCommentStart(String sql, int i) {
+    if (i + 1 >= sql.length()) {
+      return false;
+    }
+    char c = sql.charAt(i);
+    char d = sql.charAt(i + 1);
+    return (c == '-' && d == '-') || (c == '/' && d == '*');
+  }
+
+  // past the comment at i, block comments nest as in PostgreSQL
+  private static int skipComment(String sql, int i) {
+    int n = sql.length();
+    if (sql.charAt(i) == '-') {
+      while (i < n && sql.charAt(i) != '\n') {
+        i++;
+      }
+      return i;
+    }
+    int depth = 0;
+    while (i < n) {
+      if (i + 1 < n && sql.charAt(i) == '/' && sql.charAt(i + 1) == '*') {
+        depth++;
+        i += 2;
+      } else if (i + 1 < n && sql.charAt(i) == '*' && sql.charAt(i + 1) == '/') {
+        i += 2;
+        if (--depth == 0) {
+          return i;
+        }
+      } else {
+        i++;
+      }
+    }
+    return n;
+  }
+
+  private static boolean isNumberStart(String sql, int i) {
+    char c = sql.charAt(i);
+    return Character.isDigit(c)
+        || (c == '.' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1)));
+  }
+
+  private static int skipNumber(String sql, int i) {
+    int n = sql.length();
+    while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+      i++;
+    }
+    if (i + 1 < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+      int j = i + 1;
+      if (sql.charAt(j) == '+' || sql.charAt(j) == '-') {
+        j++;
+      }
+      if (j < n && Character.isDigit(sql.charAt(j))) {
+        i = j;
+        while (i < n && Character.isDigit(sql.charAt(i))) {
+          i++;
+        }
+      }
+    }
+    return i;
+  }
+}
@@ -40,6 +40,24 @@ public class WorkloadConfiguration {
   @Getter @Setter private double selectivity = -1.0;
   @Setter @Getter private int terminals;
   @Setter @Getter private JacksonXmlConfiguration xmlConfig = null;
+  @Setter @Getter private String frontend = "netty";
+  @Setter @Getter private int port = 9876;
+  @Setter @Getter private int executorThreads = 128;
+  @Setter @Getter private int ioThreads = 0;
+  @Setter @Getter private int statementCacheSize = 256;
+  @Setter @Getter private String hotspotWarmup = "eager";
+  @Setter @Getter private int poolSize = 0;
+  @Setter @Getter private boolean virtualThreads = false;
+  @Setter @Getter private String logLevel = "info";
+  @Setter @Getter private double traceRate = 0;
+  @Setter @Getter private int sampleBatchSize = 128;
+  @Setter @Getter private String sampleFormat = "binary";
+  @Setter @Getter private String predictor = "rule";
+  @Setter @Getter private double sampleRate = 0.01;
+  @Setter @Getter private boolean adaptiveSampling = true;
+  @Setter @Getter private int sampleBudget = 2000;
+  @Setter @Getter private int sampleBatchMin = 0;
+  @Setter @Getter private String analysisSnapshot = "";
 
   @Getter
   private int isolationMode =
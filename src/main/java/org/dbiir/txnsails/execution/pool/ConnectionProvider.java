@@ -0,0 +1,18 @@
+package org.dbiir.txnsails.execution.pool;
+
+import java.sql.SQLException;
+
+/**
+ * Where a worker gets the connection of a transaction from. The worker acquires a connection when
+ * the transaction begins and releases it after the commit or rollback.
+ */
+public interface ConnectionProvider {
+  /** A connection at the isolation level, not used by anyone else until it is released. */
+  PooledConnection acquire(int isolation) throws SQLException;
+
+  /** Hand back a connection whose transaction has finished. */
+  void release(PooledConnection connection);
+
+  /** Called when the worker closes. */
+  void close();
+}
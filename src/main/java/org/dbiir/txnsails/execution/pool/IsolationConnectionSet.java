@@ -0,0 +1,97 @@
+package org.dbiir.txnsails.execution.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.StringJoiner;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+
+/**
+ * The connections of one worker, at most one per isolation level. Switching the isolation level
+ * picks another warm connection for the next transaction instead of reconfiguring the current one
+ * and preparing its statements again. Not thread-safe, it belongs to its worker.
+ */
+public final class IsolationConnectionSet implements ConnectionProvider {
+  static final int[] LEVELS = {
+    Connection.TRANSACTION_READ_COMMITTED,
+    Connection.TRANSACTION_REPEATABLE_READ,
+    Connection.TRANSACTION_SERIALIZABLE
+  };
+
+  private final WorkloadConfiguration conf;
+  private final Collection<TransactionTemplate> templates;
+  private final int queryTimeout;
+  private final PooledConnection[] connections = new PooledConnection[LEVELS.length];
+
+  /**
+   * @param allLevels open every level up front, used when the adapter may switch the isolation
+   *     level; otherwise other levels are opened on their first use
+   */
+  public IsolationConnectionSet(
+      WorkloadConfiguration conf,
+      Collection<TransactionTemplate> templates,
+      int queryTimeout,
+      int initialIsolation,
+      boolean allLevels)
+      throws SQLException {
+    this.conf = conf;
+    this.templates = templates;
+    this.queryTimeout = queryTimeout;
+    get(initialIsolation);
+    if (allLevels) {
+      for (int level : LEVELS) {
+        get(level);
+      }
+    }
+  }
+
+  @Override
+  public PooledConnection acquire(int isolation) throws SQLException {
+    return get(isolation);
+  }
+
+  @Override
+  public void release(PooledConnection connection) {
+    // the connections stay with the worker
+  }
+
+  /** The connection of the isolation level, opened if the worker never used the level. */
+  public PooledConnection get(int isolation) throws SQLException {
+    int idx = indexOf(isolation);
+    if (connections[idx] == null) {
+      connections[idx] = PooledConnection.open(conf, isolation, queryTimeout, templates);
+    }
+    return connections[idx];
+  }
+
+  @Override
+  public void close() {
+    for (int i = 0; i < connections.length; i++) {
+      if (connections[i] != null) {
+        connections[i].close();
+        connections[i] = null;
+      }
+    }
+  }
+
+  static int indexOf(int isolation) {
+    for (int i = 0; i < LEVELS.length; i++) {
+      if (LEVELS[i] == isolation) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported isolation level: " + isolation);
+  }
+
+  @Override
+  public String toString() {
+    StringJoiner joiner = new StringJoiner(", ", "IsolationConnectionSet{", "}");
+    for (PooledConnection connection : connections) {
+      if (connection != null) {
+        joiner.add(connection.toString());
+      }
+    }
+    return joiner.toString();
+  }
+}
@@ -0,0 +1,78 @@
+package org.dbiir.txnsails.execution.pool;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collection;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.PreparedStatementCache;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+import org.dbiir.txnsails.execution.utils.Log;
+
+/**
+ * A database connection fixed to one isolation level, together with its prepared statements. The
+ * isolation level is never changed after opening, so the statements stay valid for its lifetime.
+ */
+public class PooledConnection {
+  @Getter private final Connection connection;
+  @Getter private final int isolation;
+  @Getter private final PreparedStatementCache statementCache;
+
+  private PooledConnection(Connection connection, int isolation, PreparedStatementCache cache) {
+    this.connection = connection;
+    this.isolation = isolation;
+    this.statementCache = cache;
+  }
+
+  /** Open a connection at the isolation level and prepare the sql of all templates on it. */
+  public static PooledConnection open(
+      WorkloadConfiguration conf,
+      int isolation,
+      int queryTimeout,
+      Collection<TransactionTemplate> templates)
+      throws SQLException {
+    Connection conn;
+    if (StringUtils.isEmpty(conf.getUsername())) {
+      conn = DriverManager.getConnection(conf.getUrl());
+    } else {
+      conn = DriverManager.getConnection(conf.getUrl(), conf.getUsername(), conf.getPassword());
+    }
+    conn.setAutoCommit(false);
+    conn.setTransactionIsolation(isolation);
+    PreparedStatementCache cache =
+        new PreparedStatementCache(conn, conf.getStatementCacheSize(), queryTimeout);
+    PooledConnection pooled = new PooledConnection(conn, isolation, cache);
+    try {
+      cache.prepareAll(templates);
+    } catch (SQLException ex) {
+      Log.warn("preparing statements failed", "connection", pooled, ex);
+    }
+    return pooled;
+  }
+
+  /** The isolation level of the connections that run transactions of the cc type. */
+  public static int isolationOf(CCType ccType) {
+    return switch (ccType) {
+      case RC, RC_TAILOR -> Connection.TRANSACTION_READ_COMMITTED;
+      case SI, SI_TAILOR -> Connection.TRANSACTION_REPEATABLE_READ;
+      default -> Connection.TRANSACTION_SERIALIZABLE;
+    };
+  }
+
+  public void close() {
+    statementCache.invalidateAll();
+    try {
+      connection.close();
+    } catch (SQLException ex) {
+      Log.warn("closing connection failed", "connection", this, ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PooledConnection{isolation: %d, %s}", isolation, statementCache);
+  }
+}
@@ -0,0 +1,206 @@
+package org.dbiir.txnsails.execution.pool;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.execution.WorkloadConfiguration;
+
+/**
+ * Connections shared by all client sessions for the duration of one transaction, so the number of
+ * database backends follows the number of concurrent transactions instead of the number of
+ * clients. At most poolSize connections are open, whatever their isolation levels: they are opened
+ * on demand and kept after release, and a level that needs one while the pool is full closes the
+ * least recently used idle connection of another level. Sessions waiting for a connection are
+ * served in arrival order.
+ */
+public class TransactionConnectionPool implements ConnectionProvider {
+  private static final long ACQUIRE_TIMEOUT = 5000; // ms
+  private static volatile TransactionConnectionPool INSTANCE;
+
+  private final WorkloadConfiguration conf;
+  private final int queryTimeout;
+  private final int poolSize;
+  private final Supplier<Collection<TransactionTemplate>> templates;
+  private final Level[] levels = new Level[IsolationConnectionSet.LEVELS.length];
+  // a permit per connection in use, of any level
+  private final Semaphore permits;
+  private final AtomicInteger opened = new AtomicInteger(0);
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder waited = new LongAdder(); // acquisitions that found no free connection
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong(0);
+  private final LongAdder timeouts = new LongAdder();
+
+  private static final class Level {
+    private final int isolation;
+    // most recently released first, their statements and buffers are the warmest
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger opened = new AtomicInteger(0);
+
+    Level(int isolation) {
+      this.isolation = isolation;
+    }
+  }
+
+  /**
+   * @param templates the templates whose sql every new connection prepares, read when it opens
+   */
+  public TransactionConnectionPool(
+      WorkloadConfiguration conf,
+      int queryTimeout,
+      Supplier<Collection<TransactionTemplate>> templates) {
+    this.conf = conf;
+    this.queryTimeout = queryTimeout;
+    this.poolSize = conf.getPoolSize();
+    this.templates = templates;
+    this.permits = new Semaphore(poolSize, true);
+    for (int i = 0; i < levels.length; i++) {
+      levels[i] = new Level(IsolationConnectionSet.LEVELS[i]);
+    }
+  }
+
+  public static void init(TransactionConnectionPool pool) {
+    INSTANCE = pool;
+  }
+
+  /** @return the shared pool, null if every worker keeps dedicated connections */
+  public static TransactionConnectionPool getInstance() {
+    return INSTANCE;
+  }
+
+  @Override
+  public PooledConnection acquire(int isolation) throws SQLException {
+    Level level = levels[IsolationConnectionSet.indexOf(isolation)];
+    acquisitions.increment();
+    // the untimed tryAcquire would barge ahead of the sessions already waiting
+    if (!tryAcquireFree()) {
+      long start = System.nanoTime();
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(ACQUIRE_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a connection", "500", 0);
+      }
+      long waitNanos = System.nanoTime() - start;
+      waited.increment();
+      totalWaitNanos.add(waitNanos);
+      maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+      if (!acquired) {
+        timeouts.increment();
+        String msg = "No free connection in the pool after " + ACQUIRE_TIMEOUT + "ms";
+        throw new SQLException(msg, "500", 0);
+      }
+    }
+
+    // with a permit, fewer than poolSize connections are in use: one is idle or may be opened
+    while (true) {
+      PooledConnection connection = level.idle.pollFirst();
+      if (connection != null) {
+        return connection;
+      }
+      if (opened.incrementAndGet() <= poolSize) {
+        try {
+          connection = PooledConnection.open(conf, isolation, queryTimeout, templates.get());
+        } catch (SQLException ex) {
+          opened.decrementAndGet();
+          permits.release();
+          throw ex;
+        }
+        level.opened.incrementAndGet();
+        return connection;
+      }
+      opened.decrementAndGet();
+      if (!closeIdle(level)) {
+        // another session took the idle connection, it released or opened one meanwhile
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  // close the least recently used idle connection of a level other than level
+  private boolean closeIdle(Level level) {
+    for (Level other : levels) {
+      if (other == level) {
+        continue;
+      }
+      PooledConnection connection = other.idle.pollLast();
+      if (connection != null) {
+        connection.close();
+        other.opened.decrementAndGet();
+        opened.decrementAndGet();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean tryAcquireFree() {
+    try {
+      return permits.tryAcquire(0, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @Override
+  public void release(PooledConnection connection) {
+    Level level = levels[IsolationConnectionSet.indexOf(connection.getIsolation())];
+    boolean broken;
+    try {
+      broken = connection.getConnection().isClosed();
+    } catch (SQLException ex) {
+      broken = true;
+    }
+    if (broken) {
+      connection.close();
+      level.opened.decrementAndGet();
+      opened.decrementAndGet();
+    } else {
+      level.idle.offerFirst(connection);
+    }
+    permits.release();
+  }
+
+  @Override
+  public void close() {
+    // shared by all workers, closed with the server
+  }
+
+  public void shutdown() {
+    for (Level level : levels) {
+      PooledConnection connection;
+      while ((connection = level.idle.pollFirst()) != null) {
+        connection.close();
+        level.opened.decrementAndGet();
+        opened.decrementAndGet();
+      }
+    }
+  }
+
+  public String getStats() {
+    long waits = waited.sum();
+    StringBuilder opened = new StringBuilder();
+    for (Level level : levels) {
+      opened.append(level.isolation).append(':').append(level.opened.get()).append(' ');
+    }
+    return String.format(
+        "size: %d, opened: {%s}, acquisitions: %d, waited: %d, avg wait: %.3f ms,"
+            + " max wait: %.3f ms, timeouts: %d",
+        poolSize,
+        opened.toString().trim(),
+        acquisitions.sum(),
+        waits,
+        waits == 0 ? 0.0 : totalWaitNanos.sum() / 1e6 / waits,
+        maxWaitNanos.get() / 1e6,
+        timeouts.sum());
+  }
+}
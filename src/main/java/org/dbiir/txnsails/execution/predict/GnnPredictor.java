@@ -0,0 +1,350 @@
+package org.dbiir.txnsails.execution.predict;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.predict.TensorFile.Tensor;
+import org.dbiir.txnsails.execution.sample.RuntimeDependencyGraph;
+
+/**
+ * Inference of the GraphClassificationModel of isolation_adapter/graph_training/train.py on the
+ * sample batch itself: NNConv layers with max aggregation and ReLU, global mean pooling and two
+ * linear layers, with the inputs prepared as by the online service. The weights are exported by
+ * export.py; GnnPredictorTest runs an exported fixture against its reference log-probabilities.
+ *
+ * <p>All buffers are kept between predictions and only grow with the batch. The weights an edge
+ * network computes depend only on the edge features, which take a handful of values (type, table),
+ * so they are computed once per distinct feature, and a message once per source and feature.
+ */
+public class GnnPredictor implements IsolationPredictor {
+  private static final float EPS = 1e-12f; // of torch.nn.functional.normalize
+
+  /** NNConv: out_v = max_{u->v} x_u * W(e_uv) + x_v * root + bias, W(e) = nn2(relu(nn1(e))) */
+  private record Conv(Dense nn1, Dense nn2, float[] root, float[] bias, int in, int out) {}
+
+  /** Linear layer, weight [out, in] as in torch. */
+  private record Dense(float[] weight, float[] bias, int in, int out) {
+    void apply(float[] x, int xOff, float[] y, int yOff, boolean relu) {
+      for (int o = 0; o < out; o++) {
+        float sum = bias[o];
+        int w = o * in;
+        for (int i = 0; i < in; i++) {
+          sum += weight[w + i] * x[xOff + i];
+        }
+        y[yOff + o] = relu && sum < 0 ? 0 : sum;
+      }
+    }
+  }
+
+  private final Conv[] convs;
+  private final Dense fc1;
+  private final Dense fc2;
+  private final int nodeIn;
+  private final int edgeIn;
+  private final int maxChannels;
+
+  // inputs of the graph being predicted
+  private int nodes;
+  private int edges;
+  private float[] nodeFeatures = new float[0];
+  private int[] src = new int[0];
+  private int[] dst = new int[0];
+  private float[] edgeFeatures = new float[0];
+  private final RuntimeDependencyGraph.EdgeSink collect = this::collectEdge;
+  private int collectFrom;
+
+  // scratch
+  private float[] x = new float[0];
+  private float[] next = new float[0];
+  private float[] agg = new float[0];
+  private int[] attrOf = new int[0]; // distinct edge feature of every edge
+  private float[] attrs = new float[0];
+  private int distinct;
+  private float[] edgeWeights = new float[0]; // [distinct][in * out] of the current layer
+  private float[] hidden;
+  private int[] messageOf = new int[0]; // [node * distinct], -1 until computed
+  private float[] messages = new float[0];
+  private final float[] pooled;
+  private final float[] pooledHidden;
+  private final float[] logits;
+
+  GnnPredictor(Conv[] convs, Dense fc1, Dense fc2) {
+    this.convs = convs;
+    this.fc1 = fc1;
+    this.fc2 = fc2;
+    this.nodeIn = convs[0].in();
+    this.edgeIn = convs[0].nn1().in();
+    int channels = 0;
+    int hiddenSize = 0;
+    for (Conv conv : convs) {
+      channels = Math.max(channels, Math.max(conv.in(), conv.out()));
+      hiddenSize = Math.max(hiddenSize, conv.nn1().out());
+    }
+    this.maxChannels = channels;
+    this.hidden = new float[hiddenSize];
+    this.pooled = new float[fc1.in()];
+    this.pooledHidden = new float[fc1.out()];
+    this.logits = new float[fc2.out()];
+  }
+
+  public static GnnPredictor load(Path path) throws IOException {
+    Map<String, Tensor> tensors = TensorFile.read(path);
+    List<Conv> convs = new ArrayList<>();
+    for (int k = 1; tensors.containsKey("conv" + k + ".bias"); k++) {
+      String name = "conv" + k;
+      Dense nn1 = dense(tensors, name + ".nn.0", path);
+      Dense nn2 = dense(tensors, name + ".nn.2", path);
+      Tensor root = TensorFile.require(tensors, name + ".lin.weight", path);
+      Tensor bias = TensorFile.require(tensors, name + ".bias", path);
+      int out = root.dim(0);
+      int in = root.dim(1);
+      if (nn2.out() != in * out || nn1.out() != nn2.in() || bias.data().length != out) {
+        throw new IOException("Inconsistent shapes of " + name + " in " + path);
+      }
+      if (!convs.isEmpty() && convs.get(convs.size() - 1).out() != in) {
+        throw new IOException(name + " does not take the output of the layer before in " + path);
+      }
+      convs.add(new Conv(nn1, nn2, root.data(), bias.data(), in, out));
+    }
+    if (convs.isEmpty()) {
+      throw new IOException("No NNConv layer in " + path);
+    }
+    Dense fc1 = dense(tensors, "fc1", path);
+    Dense fc2 = dense(tensors, "fc2", path);
+    if (fc1.in() != convs.get(convs.size() - 1).out() || fc2.in() != fc1.out()) {
+      throw new IOException("Inconsistent shapes of the classifier in " + path);
+    }
+    return new GnnPredictor(convs.toArray(new Conv[0]), fc1, fc2);
+  }
+
+  private static Dense dense(Map<String, Tensor> tensors, String name, Path path)
+      throws IOException {
+    Tensor weight = TensorFile.require(tensors, name + ".weight", path);
+    Tensor bias = TensorFile.require(tensors, name + ".bias", path);
+    if (weight.shape().length != 2 || bias.data().length != weight.dim(0)) {
+      throw new IOException("Inconsistent shapes of " + name + " in " + path);
+    }
+    return new Dense(weight.data(), bias.data(), weight.dim(1), weight.dim(0));
+  }
+
+  /**
+   * Run an exported graph as written by export.py's export_reference.
+   *
+   * @param features node features [n, in], as before normalizing
+   * @param index edge sources and targets [2, e]
+   * @param attr edge features [e, edge in], as before normalizing
+   * @return the log-probabilities of the classes, valid until the next prediction
+   */
+  float[] forward(Tensor features, Tensor index, Tensor attr) {
+    if (features.dim(1) != nodeIn || attr.dim(1) != edgeIn || index.dim(1) != attr.dim(0)) {
+      throw new IllegalArgumentException("graph does not fit the model");
+    }
+    int e = index.dim(1);
+    ensureCapacity(features.dim(0), e);
+    nodes = features.dim(0);
+    edges = e;
+    System.arraycopy(features.data(), 0, nodeFeatures, 0, features.data().length);
+    System.arraycopy(attr.data(), 0, edgeFeatures, 0, attr.data().length);
+    for (int i = 0; i < e; i++) {
+      src[i] = (int) index.data()[i];
+      dst[i] = (int) index.data()[e + i];
+    }
+    return forward();
+  }
+
+  @Override
+  public CCType predict(RuntimeDependencyGraph graph) {
+    int n = graph.getSize();
+    if (n < 3 || nodeIn != 1 || edgeIn != 2) {
+      return null; // the placeholder edges of the samples need three nodes
+    }
+    int[] counts = graph.countEdges();
+    ensureCapacity(n, counts[1] + counts[2] + counts[4] + n);
+    nodes = n;
+    edges = 0;
+    for (int t = 0; t < n; t++) {
+      nodeFeatures[t] = graph.getReads(t) + graph.getWrites(t);
+      collectFrom = t;
+      graph.forEachEdge(t, collect);
+      // the placeholder edge the sample loader appends after the edges of every node
+      addEdge(1, 2, 0, 1);
+    }
+    forward();
+    int best = 0;
+    for (int c = 1; c < logits.length; c++) {
+      if (logits[c] > logits[best]) {
+        best = c;
+      }
+    }
+    return best < LABELS.length ? LABELS[best] : null;
+  }
+
+  private void collectEdge(int dst, int type, int table) {
+    addEdge(collectFrom, dst, type, table);
+  }
+
+  private void addEdge(int from, int to, int type, int table) {
+    src[edges] = from;
+    dst[edges] = to;
+    edgeFeatures[2 * edges] = type;
+    edgeFeatures[2 * edges + 1] = table;
+    edges++;
+  }
+
+  /** @return the log-probabilities of the classes, valid until the next prediction */
+  float[] forward() {
+    int n = nodes;
+    // F.normalize(x, p=2, dim=1) and likewise the edge features
+    for (int v = 0; v < n; v++) {
+      normalize(nodeFeatures, v * nodeIn, nodeIn, x, v * nodeIn);
+    }
+    distinct = 0;
+    for (int e = 0; e < edges; e++) {
+      normalize(edgeFeatures, e * edgeIn, edgeIn, edgeFeatures, e * edgeIn);
+      attrOf[e] = distinctAttr(e * edgeIn);
+    }
+
+    for (Conv conv : convs) {
+      convolve(conv, n);
+      float[] swap = x;
+      x = next;
+      next = swap;
+    }
+
+    int channels = fc1.in();
+    Arrays.fill(pooled, 0);
+    for (int v = 0; v < n; v++) {
+      for (int c = 0; c < channels; c++) {
+        pooled[c] += x[v * channels + c];
+      }
+    }
+    for (int c = 0; c < channels; c++) {
+      pooled[c] /= n;
+    }
+    fc1.apply(pooled, 0, pooledHidden, 0, true);
+    fc2.apply(pooledHidden, 0, logits, 0, false);
+    float max = Float.NEGATIVE_INFINITY;
+    for (float l : logits) {
+      max = Math.max(max, l);
+    }
+    double sum = 0;
+    for (float l : logits) {
+      sum += Math.exp(l - max);
+    }
+    float logSum = (float) (max + Math.log(sum));
+    for (int c = 0; c < logits.length; c++) {
+      logits[c] -= logSum;
+    }
+    return logits;
+  }
+
+  private void convolve(Conv conv, int n) {
+    int in = conv.in();
+    int out = conv.out();
+    int size = in * out;
+    if (edgeWeights.length < distinct * size) {
+      edgeWeights = new float[distinct * size];
+    }
+    if (messageOf.length < n * distinct) {
+      messageOf = new int[Math.max(n * distinct, messageOf.length * 2)];
+    }
+    for (int d = 0; d < distinct; d++) {
+      conv.nn1().apply(attrs, d * edgeIn, hidden, 0, true);
+      conv.nn2().apply(hidden, 0, edgeWeights, d * size, false);
+    }
+
+    // max over the messages of the incoming edges, 0 without any
+    Arrays.fill(agg, 0, n * out, Float.NEGATIVE_INFINITY);
+    Arrays.fill(messageOf, 0, n * distinct, -1);
+    int computed = 0;
+    for (int e = 0; e < edges; e++) {
+      int u = src[e];
+      int key = u * distinct + attrOf[e];
+      int m = messageOf[key];
+      if (m < 0) {
+        m = computed++ * out;
+        messageOf[key] = m;
+        Arrays.fill(messages, m, m + out, 0);
+        int w = attrOf[e] * size;
+        for (int i = 0; i < in; i++) {
+          float xi = x[u * in + i];
+          int row = w + i * out;
+          for (int o = 0; o < out; o++) {
+            messages[m + o] += xi * edgeWeights[row + o];
+          }
+        }
+      }
+      int a = dst[e] * out;
+      for (int o = 0; o < out; o++) {
+        agg[a + o] = Math.max(agg[a + o], messages[m + o]);
+      }
+    }
+
+    float[] root = conv.root();
+    float[] bias = conv.bias();
+    for (int v = 0; v < n; v++) {
+      for (int o = 0; o < out; o++) {
+        float sum = agg[v * out + o];
+        if (sum == Float.NEGATIVE_INFINITY) {
+          sum = 0;
+        }
+        sum += bias[o];
+        for (int i = 0; i < in; i++) {
+          sum += x[v * in + i] * root[o * in + i];
+        }
+        next[v * out + o] = Math.max(sum, 0);
+      }
+    }
+  }
+
+  private static void normalize(float[] from, int off, int len, float[] to, int toOff) {
+    float norm = 0;
+    for (int i = 0; i < len; i++) {
+      norm += from[off + i] * from[off + i];
+    }
+    norm = Math.max((float) Math.sqrt(norm), EPS);
+    for (int i = 0; i < len; i++) {
+      to[toOff + i] = from[off + i] / norm;
+    }
+  }
+
+  // the samples know a few (type, table) pairs, a scan is cheaper than hashing
+  private int distinctAttr(int off) {
+    for (int d = 0; d < distinct; d++) {
+      boolean same = true;
+      for (int i = 0; i < edgeIn && same; i++) {
+        same = attrs[d * edgeIn + i] == edgeFeatures[off + i];
+      }
+      if (same) {
+        return d;
+      }
+    }
+    if (attrs.length < (distinct + 1) * edgeIn) {
+      attrs = Arrays.copyOf(attrs, Math.max(16 * edgeIn, attrs.length * 2));
+    }
+    System.arraycopy(edgeFeatures, off, attrs, distinct * edgeIn, edgeIn);
+    return distinct++;
+  }
+
+  private void ensureCapacity(int n, int e) {
+    if (x.length < n * maxChannels) {
+      x = new float[n * maxChannels];
+      next = new float[n * maxChannels];
+      agg = new float[n * maxChannels];
+    }
+    if (nodeFeatures.length < n * nodeIn) {
+      nodeFeatures = new float[n * nodeIn];
+    }
+    if (src.length < e) {
+      src = new int[e];
+      dst = new int[e];
+      attrOf = new int[e];
+      edgeFeatures = new float[e * edgeIn];
+      messages = new float[e * maxChannels];
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package org.dbiir.txnsails.execution.predict;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.sample.RuntimeDependencyGraph;
+
+/**
+ * Chooses the isolation level of the next epoch from the runtime dependency graph of a sample
+ * batch, inside the server instead of through the Python adapter.
+ */
+public interface IsolationPredictor {
+  /** Isolation levels by the labels the models are trained with. */
+  CCType[] LABELS = {CCType.SER, CCType.SI_TAILOR, CCType.RC_TAILOR};
+
+  /** @return the isolation level for the batch, null to keep the current one */
+  CCType predict(RuntimeDependencyGraph graph);
+
+  /**
+   * @param name "rule", "bayes" or "gnn", the naive Bayes parameters are read from
+   *     models/&lt;workload&gt;.nb and the GNN weights from models/&lt;workload&gt;.gnn
+   * @return null for "python", which leaves the prediction to the adapter
+   */
+  static IsolationPredictor create(String name, String workload) throws IOException {
+    return switch (name.toLowerCase()) {
+      case "rule" -> new RulePredictor();
+      case "bayes" -> NaiveBayesPredictor.load(Path.of("models", workload + ".nb"));
+      case "gnn" -> GnnPredictor.load(Path.of("models", workload + ".gnn"));
+      case "python" -> null;
+      default -> throw new IllegalArgumentException("Unknown predictor: " + name);
+    };
+  }
+}
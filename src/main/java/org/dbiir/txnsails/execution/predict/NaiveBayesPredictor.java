@@ -0,0 +1,105 @@
+package org.dbiir.txnsails.execution.predict;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.sample.RuntimeDependencyGraph;
+
+/**
+ * Gaussian naive Bayes over the features of the offline Bayes model: reads, writes, read-write
+ * edges and write-write edges of a batch. The parameters are those of the fitted GaussianNB,
+ * exported by the offline service as one line per class:
+ *
+ * <pre>
+ * label,prior,mean_0..mean_3,var_0..var_3
+ * </pre>
+ */
+public class NaiveBayesPredictor implements IsolationPredictor {
+  static final int FEATURES = 4;
+
+  private final int[] labels;
+  private final double[] logPrior;
+  private final double[][] mean;
+  private final double[][] var;
+  private final double[] logNorm; // -0.5 * sum(log(2 * pi * var)) per class
+
+  public NaiveBayesPredictor(int[] labels, double[] prior, double[][] mean, double[][] var) {
+    this.labels = labels;
+    this.mean = mean;
+    this.var = var;
+    this.logPrior = new double[labels.length];
+    this.logNorm = new double[labels.length];
+    for (int c = 0; c < labels.length; c++) {
+      if (labels[c] < 0 || labels[c] >= LABELS.length) {
+        throw new IllegalArgumentException("Unknown isolation label: " + labels[c]);
+      }
+      logPrior[c] = Math.log(prior[c]);
+      for (int f = 0; f < FEATURES; f++) {
+        logNorm[c] -= 0.5 * Math.log(2 * Math.PI * var[c][f]);
+      }
+    }
+  }
+
+  public static NaiveBayesPredictor load(Path path) throws IOException {
+    List<double[]> rows = new ArrayList<>();
+    for (String line : Files.readAllLines(path)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      if (fields.length != 2 + 2 * FEATURES) {
+        throw new IOException("Malformed naive Bayes class in " + path + ": " + line);
+      }
+      double[] row = new double[fields.length];
+      for (int i = 0; i < fields.length; i++) {
+        row[i] = Double.parseDouble(fields[i].trim());
+      }
+      rows.add(row);
+    }
+    if (rows.isEmpty()) {
+      throw new IOException("No naive Bayes classes in " + path);
+    }
+    int n = rows.size();
+    int[] labels = new int[n];
+    double[] prior = new double[n];
+    double[][] mean = new double[n][FEATURES];
+    double[][] var = new double[n][FEATURES];
+    for (int c = 0; c < n; c++) {
+      double[] row = rows.get(c);
+      labels[c] = (int) row[0];
+      prior[c] = row[1];
+      System.arraycopy(row, 2, mean[c], 0, FEATURES);
+      System.arraycopy(row, 2 + FEATURES, var[c], 0, FEATURES);
+    }
+    return new NaiveBayesPredictor(labels, prior, mean, var);
+  }
+
+  @Override
+  public CCType predict(RuntimeDependencyGraph graph) {
+    int[] edges = graph.countEdges();
+    return predict(
+        new double[] {graph.getTotalReads(), graph.getTotalWrites(), edges[2], edges[4]});
+  }
+
+  /** @param x reads, writes, read-write edges and write-write edges */
+  public CCType predict(double[] x) {
+    int best = 0;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int c = 0; c < labels.length; c++) {
+      double score = logPrior[c] + logNorm[c];
+      for (int f = 0; f < FEATURES; f++) {
+        double d = x[f] - mean[c][f];
+        score -= 0.5 * d * d / var[c][f];
+      }
+      if (score > bestScore) {
+        bestScore = score;
+        best = c;
+      }
+    }
+    return LABELS[labels[best]];
+  }
+}
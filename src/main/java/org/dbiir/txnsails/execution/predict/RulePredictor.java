@@ -0,0 +1,28 @@
+package org.dbiir.txnsails.execution.predict;
+
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.sample.RuntimeDependencyGraph;
+
+/**
+ * The write ratio rule of the online service: SI below 20% writes, SER up to 40% and RC above.
+ */
+public class RulePredictor implements IsolationPredictor {
+  private static final double SI_BELOW = 0.2;
+  private static final double SER_UP_TO = 0.4;
+
+  @Override
+  public CCType predict(RuntimeDependencyGraph graph) {
+    int reads = graph.getTotalReads();
+    int writes = graph.getTotalWrites();
+    if (reads + writes == 0) {
+      return null;
+    }
+    double wr = (double) writes / (writes + reads);
+    if (wr < SI_BELOW) {
+      return CCType.SI_TAILOR;
+    } else if (wr <= SER_UP_TO) {
+      return CCType.SER;
+    }
+    return CCType.RC_TAILOR;
+  }
+}
@@ -0,0 +1,64 @@
+package org.dbiir.txnsails.execution.predict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named float tensors as written by isolation_adapter/graph_training/export.py, all little-endian:
+ * magic, version, tensor count, then per tensor the name length, the UTF-8 name, the rank, the
+ * dimensions and the float32 values in row-major order.
+ */
+final class TensorFile {
+  static final int MAGIC = 0x4E475854; // "TXGN"
+  static final int VERSION = 1;
+
+  record Tensor(int[] shape, float[] data) {
+    int dim(int i) {
+      return shape[i];
+    }
+  }
+
+  private TensorFile() {}
+
+  static Map<String, Tensor> read(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException(path + " is not a tensor file of version " + VERSION);
+      }
+      int count = buffer.getInt();
+      Map<String, Tensor> tensors = new LinkedHashMap<>();
+      for (int t = 0; t < count; t++) {
+        byte[] name = new byte[buffer.getInt()];
+        buffer.get(name);
+        int[] shape = new int[buffer.getInt()];
+        int size = 1;
+        for (int i = 0; i < shape.length; i++) {
+          shape[i] = buffer.getInt();
+          size *= shape[i];
+        }
+        float[] data = new float[size];
+        buffer.asFloatBuffer().get(data);
+        buffer.position(buffer.position() + 4 * size);
+        tensors.put(new String(name, StandardCharsets.UTF_8), new Tensor(shape, data));
+      }
+      return tensors;
+    } catch (RuntimeException ex) {
+      throw new IOException("Truncated tensor file " + path, ex);
+    }
+  }
+
+  static Tensor require(Map<String, Tensor> tensors, String name, Path path) throws IOException {
+    Tensor tensor = tensors.get(name);
+    if (tensor == null) {
+      throw new IOException("Missing tensor " + name + " in " + path);
+    }
+    return tensor;
+  }
+}
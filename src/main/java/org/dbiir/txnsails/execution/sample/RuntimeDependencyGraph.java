@@ -0,0 +1,361 @@
+package org.dbiir.txnsails.execution.sample;
+
+import java.util.Arrays;
+
+/**
+ * Dependencies between the transactions of one sample batch, found through an inverted index
+ * instead of comparing every pair. One pass over the batch hashes every distinct (table_idx,
+ * key_id) a transaction reads or writes to a posting list of the transactions that access it, so
+ * the edges of a transaction only visit the transactions it shares a key with.
+ *
+ * <p>The edges equal those of comparing the access lists pair by pair: the table reported for a
+ * pair is the one of the first access, in access order, of the list the comparison walks first.
+ * Postings therefore keep the position of the first access of a transaction to each key.
+ */
+public class RuntimeDependencyGraph {
+  private static final int NONE = Integer.MAX_VALUE;
+
+  private int size;
+  private int[] readStart = new int[1]; // of the batch, owned by the caller of build
+  private int[] writeStart = new int[1];
+  // open addressing over packed (table_idx, key_id), the heads and tails link postings below
+  private long[] slotKeys = new long[0];
+  private boolean[] slotUsed = new boolean[0];
+  private int[] readHead = new int[0];
+  private int[] readTail = new int[0];
+  private int[] writeHead = new int[0];
+  private int[] writeTail = new int[0];
+  private int[] slotTxns = new int[0]; // transactions accessing the key
+  private int[] slotLast = new int[0]; // the last of them
+  private int[] slotWriters = new int[0];
+  private final Postings reads = new Postings();
+  private final Postings writes = new Postings();
+
+  // per transaction of the batch, reset after each edge query for the entries it touched
+  private int[] rrPos = new int[0];
+  private int[] rwPos = new int[0]; // writes of the other transaction against our reads
+  private int[] wrPos = new int[0]; // our writes against the reads of the other transaction
+  private int[] wwPos = new int[0];
+  private int[] rrTable = new int[0];
+  private int[] rwTable = new int[0];
+  private int[] wrTable = new int[0];
+  private int[] wwTable = new int[0];
+  private int[] touched = new int[0];
+  private boolean[] isTouched = new boolean[0];
+
+  /** Receives the edges of one transaction. */
+  @FunctionalInterface
+  public interface EdgeSink {
+    /**
+     * @param type 1 for a read-read, 2 for a read-write and 4 for a write-write dependency
+     */
+    void accept(int dst, int type, int table);
+  }
+
+  /**
+   * Entries of one access kind, appended transaction by transaction: the entries of transaction t
+   * are [start[t], start[t + 1]), one per distinct key.
+   */
+  private static final class Postings {
+    int[] start = new int[1];
+    int[] txn = new int[0];
+    int[] pos = new int[0]; // position of the first access to the key in the access list
+    int[] slot = new int[0];
+    int[] next = new int[0]; // next entry of the same key, -1 at the end
+    int count;
+
+    void reset(int transactions, int accesses) {
+      if (start.length < transactions + 1) {
+        start = new int[transactions + 1];
+      }
+      if (txn.length < accesses) {
+        txn = new int[accesses];
+        pos = new int[accesses];
+        slot = new int[accesses];
+        next = new int[accesses];
+      }
+      count = 0;
+    }
+  }
+
+  /**
+   * Index a batch. The reads of transaction t are [readStart[t], readStart[t + 1]) of
+   * readTable/readKey in access order, the writes likewise.
+   */
+  public void build(
+      int size,
+      int[] readStart,
+      int[] readTable,
+      int[] readKey,
+      int[] writeStart,
+      int[] writeTable,
+      int[] writeKey) {
+    this.size = size;
+    this.readStart = readStart;
+    this.writeStart = writeStart;
+    int accesses = readStart[size] + writeStart[size];
+    resetTable(accesses);
+    reads.reset(size, readStart[size]);
+    writes.reset(size, writeStart[size]);
+    resetPairs(size);
+    for (int t = 0; t < size; t++) {
+      reads.start[t] = reads.count;
+      for (int i = readStart[t]; i < readStart[t + 1]; i++) {
+        append(reads, readHead, readTail, t, i - readStart[t], readTable[i], readKey[i]);
+      }
+      writes.start[t] = writes.count;
+      for (int i = writeStart[t]; i < writeStart[t + 1]; i++) {
+        append(writes, writeHead, writeTail, t, i - writeStart[t], writeTable[i], writeKey[i]);
+      }
+    }
+    reads.start[size] = reads.count;
+    writes.start[size] = writes.count;
+  }
+
+  private void append(
+      Postings postings, int[] head, int[] tail, int t, int position, int table, int key) {
+    int s = slotOf(table, key);
+    int last = tail[s];
+    if (last >= 0 && postings.txn[last] == t) {
+      return; // not the first access of t to the key
+    }
+    if (slotLast[s] != t) {
+      slotLast[s] = t;
+      slotTxns[s]++;
+    }
+    if (postings == writes) {
+      slotWriters[s]++;
+    }
+    int e = postings.count++;
+    postings.txn[e] = t;
+    postings.pos[e] = position;
+    postings.slot[e] = s;
+    postings.next[e] = -1;
+    if (last >= 0) {
+      postings.next[last] = e;
+    } else {
+      head[s] = e;
+    }
+    tail[s] = e;
+  }
+
+  private int slotOf(int table, int key) {
+    long packed = ((long) table << 32) | (key & 0xffffffffL);
+    int mask = slotKeys.length - 1;
+    int s = (int) mix(packed) & mask;
+    while (slotUsed[s]) {
+      if (slotKeys[s] == packed) {
+        return s;
+      }
+      s = (s + 1) & mask;
+    }
+    slotUsed[s] = true;
+    slotKeys[s] = packed;
+    return s;
+  }
+
+  private static long mix(long x) {
+    x *= 0x9E3779B97F4A7C15L;
+    return x ^ (x >>> 29);
+  }
+
+  private void resetTable(int accesses) {
+    int capacity = Integer.highestOneBit(Math.max(16, accesses * 2 - 1)) << 1;
+    if (slotKeys.length < capacity) {
+      slotKeys = new long[capacity];
+      slotUsed = new boolean[capacity];
+      readHead = new int[capacity];
+      readTail = new int[capacity];
+      writeHead = new int[capacity];
+      writeTail = new int[capacity];
+      slotTxns = new int[capacity];
+      slotLast = new int[capacity];
+      slotWriters = new int[capacity];
+    } else {
+      Arrays.fill(slotUsed, false);
+      Arrays.fill(slotTxns, 0);
+      Arrays.fill(slotWriters, 0);
+    }
+    Arrays.fill(slotLast, -1);
+    Arrays.fill(readHead, -1);
+    Arrays.fill(readTail, -1);
+    Arrays.fill(writeHead, -1);
+    Arrays.fill(writeTail, -1);
+  }
+
+  private void resetPairs(int size) {
+    if (rrPos.length < size) {
+      rrPos = new int[size];
+      rwPos = new int[size];
+      wrPos = new int[size];
+      wwPos = new int[size];
+      rrTable = new int[size];
+      rwTable = new int[size];
+      wrTable = new int[size];
+      wwTable = new int[size];
+      touched = new int[size];
+      isTouched = new boolean[size];
+      Arrays.fill(rrPos, NONE);
+      Arrays.fill(rwPos, NONE);
+      Arrays.fill(wrPos, NONE);
+      Arrays.fill(wwPos, NONE);
+    }
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /** @return the number of reads of transaction t, repeated accesses included */
+  public int getReads(int t) {
+    return readStart[t + 1] - readStart[t];
+  }
+
+  public int getWrites(int t) {
+    return writeStart[t + 1] - writeStart[t];
+  }
+
+  /** @return the reads of the whole batch */
+  public int getTotalReads() {
+    return readStart[size];
+  }
+
+  public int getTotalWrites() {
+    return writeStart[size];
+  }
+
+  /**
+   * @return the share of the accessed keys of all transactions, counted once per transaction, that
+   *     another transaction of the batch accesses while one of them writes it
+   */
+  public double getConflictDensity() {
+    int total = reads.count + writes.count;
+    if (total == 0) {
+      return 0;
+    }
+    int contended = 0;
+    for (int e = 0; e < reads.count; e++) {
+      if (isContended(reads.slot[e])) {
+        contended++;
+      }
+    }
+    for (int e = 0; e < writes.count; e++) {
+      if (isContended(writes.slot[e])) {
+        contended++;
+      }
+    }
+    return (double) contended / total;
+  }
+
+  private boolean isContended(int s) {
+    return slotWriters[s] > 0 && slotTxns[s] > 1;
+  }
+
+  /** @return the number of edges of the batch per type, indexed 1, 2 and 4 as in getEdgeFeature */
+  public int[] countEdges() {
+    int[] counts = new int[5];
+    for (int t = 0; t < size; t++) {
+      forEachEdge(t, (dst, type, table) -> counts[type]++);
+    }
+    return counts;
+  }
+
+  /**
+   * The edges of transaction idx as "#i,type,table_idx" for every other transaction i in ascending
+   * order, type 1 for a read-read, 2 for a read-write and 4 for a write-write dependency.
+   */
+  public String getEdgeFeature(int idx) {
+    StringBuilder builder = new StringBuilder();
+    // "#%d,%d,%d" without the format parsing, dense batches emit an edge for most pairs
+    forEachEdge(
+        idx,
+        (dst, type, table) ->
+            builder.append('#').append(dst).append(',').append(type).append(',').append(table));
+    return builder.toString();
+  }
+
+  /** Pass the edges of transaction idx to the sink, in the order of {@link #getEdgeFeature}. */
+  public void forEachEdge(int idx, EdgeSink sink) {
+    int n = 0;
+    // keys idx reads: read-read with the other readers, read-write with the writers
+    for (int e = reads.start[idx]; e < reads.start[idx + 1]; e++) {
+      int s = reads.slot[e];
+      int table = (int) (slotKeys[s] >>> 32);
+      for (int o = readHead[s]; o >= 0; o = reads.next[o]) {
+        int t = reads.txn[o];
+        if (t != idx) {
+          n = touch(t, n);
+          if (reads.pos[o] < rrPos[t]) {
+            rrPos[t] = reads.pos[o];
+            rrTable[t] = table;
+          }
+        }
+      }
+      for (int o = writeHead[s]; o >= 0; o = writes.next[o]) {
+        int t = writes.txn[o];
+        if (t != idx) {
+          n = touch(t, n);
+          if (writes.pos[o] < rwPos[t]) {
+            rwPos[t] = writes.pos[o];
+            rwTable[t] = table;
+          }
+        }
+      }
+    }
+    // keys idx writes: write-read with the readers, write-write with the other writers
+    for (int e = writes.start[idx]; e < writes.start[idx + 1]; e++) {
+      int s = writes.slot[e];
+      int table = (int) (slotKeys[s] >>> 32);
+      int own = writes.pos[e];
+      for (int o = readHead[s]; o >= 0; o = reads.next[o]) {
+        int t = reads.txn[o];
+        if (t != idx) {
+          n = touch(t, n);
+          if (own < wrPos[t]) {
+            wrPos[t] = own;
+            wrTable[t] = table;
+          }
+        }
+      }
+      for (int o = writeHead[s]; o >= 0; o = writes.next[o]) {
+        int t = writes.txn[o];
+        if (t != idx) {
+          n = touch(t, n);
+          if (writes.pos[o] < wwPos[t]) {
+            wwPos[t] = writes.pos[o];
+            wwTable[t] = table;
+          }
+        }
+      }
+    }
+
+    Arrays.sort(touched, 0, n);
+    for (int k = 0; k < n; k++) {
+      int t = touched[k];
+      if (rrPos[t] != NONE && rrTable[t] > 0) {
+        sink.accept(t, 1, rrTable[t]);
+      }
+      // the writes of t are compared first, the writes of idx only if they share nothing
+      int rw = rwPos[t] != NONE ? rwTable[t] : wrPos[t] != NONE ? wrTable[t] : -1;
+      if (rw > 0) {
+        sink.accept(t, 2, rw);
+      }
+      if (wwPos[t] != NONE && wwTable[t] > 0) {
+        sink.accept(t, 4, wwTable[t]);
+      }
+      rrPos[t] = NONE;
+      rwPos[t] = NONE;
+      wrPos[t] = NONE;
+      wwPos[t] = NONE;
+      isTouched[t] = false;
+    }
+  }
+
+  private int touch(int t, int n) {
+    if (!isTouched[t]) {
+      isTouched[t] = true;
+      touched[n++] = t;
+    }
+    return n;
+  }
+}
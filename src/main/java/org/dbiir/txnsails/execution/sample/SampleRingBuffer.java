@@ -0,0 +1,126 @@
+package org.dbiir.txnsails.execution.sample;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Preallocated ring of sampled transactions shared by all workers and drained by one consumer.
+ * Every slot is a fixed stretch of one int array: the transaction type, its outcome, the number of
+ * accesses and then an (table_idx, key_id, op) triple per access. A worker claims a slot with one
+ * CAS on the tail, copies its triples in and publishes the slot through its sequence; the consumer
+ * reads published slots in order and hands them back, producers never wait for it. A sample that
+ * finds the ring full is dropped.
+ */
+public class SampleRingBuffer {
+  public static final int MAX_ACCESSES = 128; // per transaction, further accesses are not kept
+  public static final int ACCESS_INTS = 3; // table_idx, key_id, op
+  private static final int HEADER = 3; // type, processing, access count
+
+  private final int capacity;
+  private final int mask;
+  private final int slotInts;
+  private final int[] data;
+  // a slot is free for position p while its sequence is p and published while it is p + 1
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong(0);
+  private long head = 0; // only touched by the consumer
+  private final LongAdder dropped = new LongAdder();
+
+  /** Receives a published sample, the accesses are only valid during the call. */
+  @FunctionalInterface
+  public interface SampleConsumer {
+    void accept(int type, int processing, int[] accesses, int offset, int count);
+  }
+
+  /** @param capacity number of slots, rounded up to a power of two */
+  public SampleRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.capacity = size;
+    this.mask = size - 1;
+    this.slotInts = HEADER + MAX_ACCESSES * ACCESS_INTS;
+    this.data = new int[size * slotInts];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Publish one sampled transaction.
+   *
+   * @param accesses count consecutive (table_idx, key_id, op) triples
+   * @return false if the ring was full and the sample was dropped
+   */
+  public boolean offer(int type, int processing, int[] accesses, int count) {
+    long pos;
+    int idx;
+    while (true) {
+      pos = tail.get();
+      idx = (int) (pos & mask);
+      long diff = sequences.get(idx) - pos;
+      if (diff < 0) {
+        // the consumer has not handed this slot back yet
+        dropped.increment();
+        return false;
+      }
+      if (diff == 0 && tail.compareAndSet(pos, pos + 1)) {
+        break;
+      }
+    }
+    int n = Math.min(count, MAX_ACCESSES);
+    int base = idx * slotInts;
+    data[base] = type;
+    data[base + 1] = processing;
+    data[base + 2] = n;
+    System.arraycopy(accesses, 0, data, base + HEADER, n * ACCESS_INTS);
+    sequences.set(idx, pos + 1);
+    return true;
+  }
+
+  /** @return the number of published samples ready to drain, at most max. Consumer only. */
+  public int available(int max) {
+    int n = 0;
+    long pos = head;
+    while (n < max && sequences.get((int) (pos & mask)) == pos + 1) {
+      n++;
+      pos++;
+    }
+    return n;
+  }
+
+  /**
+   * Pass up to max published samples to the consumer, oldest first, and free their slots. Consumer
+   * only.
+   *
+   * @return the number of samples drained
+   */
+  public int drain(int max, SampleConsumer consumer) {
+    int n = 0;
+    while (n < max) {
+      int idx = (int) (head & mask);
+      if (sequences.get(idx) != head + 1) {
+        break;
+      }
+      int base = idx * slotInts;
+      consumer.accept(data[base], data[base + 1], data, base + HEADER, data[base + 2]);
+      sequences.set(idx, head + capacity);
+      head++;
+      n++;
+    }
+    return n;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** @return all samples offered so far, dropped ones included */
+  public long getOffered() {
+    return tail.get() + dropped.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+}
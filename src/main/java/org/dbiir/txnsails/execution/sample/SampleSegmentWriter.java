@@ -0,0 +1,144 @@
+package org.dbiir.txnsails.execution.sample;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Writes runtime dependency graphs as binary records into preallocated, memory-mapped segment
+ * files, so a flush neither creates a file nor formats text. A record that does not fit into the
+ * rest of the segment starts the next one. All numbers are little-endian int32:
+ *
+ * <pre>
+ * segment: MAGIC_SEGMENT, VERSION, 0, 0, then records; a record magic of 0 ends the segment
+ * record:  MAGIC_RECORD, nodes, edges, timestamp low, timestamp high, 0,
+ *          (reads, writes) per node, (src, dst, type, table) per edge
+ * </pre>
+ *
+ * The record magic is written last, a reader that finds it finds the whole record. Edges are ordered
+ * by source and then destination, like the lines of the text samples.
+ *
+ * <p>Segments written for a reader that consumes every record before the next flush are kept as a
+ * ring: rolling over deletes the oldest segment beyond the ring, and closing deletes the rest.
+ */
+public class SampleSegmentWriter implements AutoCloseable {
+  public static final int MAGIC_SEGMENT = 0x47535854; // "TXSG"
+  public static final int MAGIC_RECORD = 0x52535854; // "TXSR"
+  public static final int VERSION = 1;
+  static final int SEGMENT_HEADER_INTS = 4;
+  static final int RECORD_HEADER_INTS = 6;
+  public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+  private final String prefix;
+  private final long segmentSize;
+  private final int keepSegments; // 0 keeps every segment
+  private final ArrayDeque<Path> kept = new ArrayDeque<>();
+  private final long createdAt = System.currentTimeMillis();
+  private int sequence = 0;
+  private Path path;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int[] edges = new int[4096]; // staged (src, dst, type, table) of the record being written
+  private int edgeInts;
+
+  /** Where a record starts, sent to the predictor instead of a file of its own. */
+  public record Location(Path path, long offset) {}
+
+  /**
+   * @param prefix directory and file name prefix of the segments
+   * @param keepSegments the segments kept on disk, the oldest is deleted when another one starts;
+   *     0 keeps all of them, e.g. as training samples
+   */
+  public SampleSegmentWriter(String prefix, long segmentSize, int keepSegments) {
+    this.prefix = prefix;
+    this.segmentSize = segmentSize;
+    this.keepSegments = keepSegments;
+  }
+
+  public Location write(RuntimeDependencyGraph graph) throws IOException {
+    int n = graph.getSize();
+    edgeInts = 0;
+    for (int src = 0; src < n; src++) {
+      int s = src;
+      graph.forEachEdge(
+          src,
+          (dst, type, table) -> {
+            if (edgeInts + 4 > edges.length) {
+              edges = Arrays.copyOf(edges, edges.length * 2);
+            }
+            edges[edgeInts++] = s;
+            edges[edgeInts++] = dst;
+            edges[edgeInts++] = type;
+            edges[edgeInts++] = table;
+          });
+    }
+    long bytes = 4L * (RECORD_HEADER_INTS + 2L * n + edgeInts);
+    // keep room for the zero magic that ends the segment
+    if (buffer == null || buffer.remaining() < bytes + 4) {
+      roll(bytes + 4);
+    }
+
+    long offset = buffer.position();
+    IntBuffer ints = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    long now = System.currentTimeMillis();
+    ints.put(1, n).put(2, edgeInts / 4).put(3, (int) now).put(4, (int) (now >>> 32)).put(5, 0);
+    ints.position(RECORD_HEADER_INTS);
+    for (int t = 0; t < n; t++) {
+      ints.put(graph.getReads(t)).put(graph.getWrites(t));
+    }
+    ints.put(edges, 0, edgeInts);
+    ints.put(0, MAGIC_RECORD);
+    buffer.position((int) (offset + bytes));
+    return new Location(path, offset);
+  }
+
+  private void roll(long recordBytes) throws IOException {
+    unmap();
+    long size = Math.max(segmentSize, recordBytes + 4L * SEGMENT_HEADER_INTS);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Sample record of " + recordBytes + " bytes exceeds a segment");
+    }
+    path = Path.of(String.format("%ssamples_%d_%04d.seg", prefix, createdAt, sequence++));
+    channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    // mapping past the end extends the file, the unwritten rest reads as zeros
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC_SEGMENT).putInt(VERSION).putInt(0).putInt(0);
+    if (keepSegments > 0) {
+      kept.addLast(path);
+      while (kept.size() > keepSegments) {
+        Files.deleteIfExists(kept.pollFirst());
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    unmap();
+    // nobody reads the ring after the server stops
+    while (!kept.isEmpty()) {
+      Files.deleteIfExists(kept.pollFirst());
+    }
+  }
+
+  private void unmap() throws IOException {
+    if (channel != null) {
+      buffer.force();
+      channel.close();
+      channel = null;
+      buffer = null;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package org.dbiir.txnsails.execution.sample;
+
+import org.dbiir.txnsails.execution.utils.Log;
+
+/**
+ * Decides how often the workers sample and how many samples make a batch. The flusher reports how
+ * many samples arrived and the statistics of every batch it drains; from the samples and the
+ * probability they were taken with it estimates the throughput, and it compares the write ratio
+ * and the conflict density of a batch with those of the batches before; the density grows with
+ * the batch, so it is only compared between batches of the same size.
+ *
+ * <p>A stable workload is sampled to fill a batch once per base interval (1s online). When a batch
+ * drifts from the average, the controller aims at a batch every eighth of that interval, and at
+ * the smallest batch allowed, until the batches agree again; the interval then doubles back to the
+ * base. The probability never exceeds the sample budget per second, so a fast workload does not
+ * spend more CPU on sampling than a slow one.
+ */
+public class SamplingController {
+  public static final double DEFAULT_RATE = 0.01;
+  public static final int DEFAULT_BUDGET = 2000; // samples per second
+  private static final double MIN_RATE = 1e-4;
+  private static final double DRIFT_THRESHOLD = 0.15; // of the write ratio or the conflict density
+  private static final double SMOOTHING = 0.3; // weight of the newest batch in the averages
+  private static final int SHIFT_SPEEDUP = 8;
+  private static final long MIN_OBSERVE_NANOS = 100_000_000L;
+
+  private final boolean adaptive;
+  private final double budget;
+  private final int minBatch;
+  private final int maxBatch;
+  private volatile double probability;
+  private volatile int batchSize;
+
+  // owned by the flusher
+  private long baseIntervalMillis = 1000;
+  private long intervalMillis = 1000;
+  private long lastSamples = -1;
+  private long lastNanos;
+  private double throughput; // transactions per second, 0 until estimated
+  private double writeRatio = Double.NaN;
+  private double conflictDensity = Double.NaN;
+  private int densitySize; // the batch size the conflict density was measured at
+
+  /** A fixed probability and batch size. */
+  public SamplingController(double rate, int batchSize) {
+    this(rate, false, DEFAULT_BUDGET, batchSize, batchSize);
+  }
+
+  /**
+   * @param rate the probability to start with, and the one kept if not adaptive
+   * @param budget the most samples per second
+   * @param minBatch the smallest batch while the workload shifts, at most maxBatch
+   */
+  public SamplingController(
+      double rate, boolean adaptive, double budget, int minBatch, int maxBatch) {
+    this.adaptive = adaptive;
+    this.budget = budget;
+    this.maxBatch = maxBatch;
+    this.minBatch = Math.max(1, Math.min(minBatch, maxBatch));
+    this.probability = rate;
+    this.batchSize = maxBatch;
+  }
+
+  /** Called by the workers for every transaction. */
+  public double getProbability() {
+    return probability;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /** @param millis the interval a stable workload fills a batch in */
+  public void setBaseInterval(long millis) {
+    this.baseIntervalMillis = millis;
+    this.intervalMillis = millis;
+  }
+
+  /** @return how long the flusher may wait before it checks for a batch again */
+  public long getPollMillis() {
+    if (!adaptive) {
+      return baseIntervalMillis;
+    }
+    return Math.max(10, intervalMillis / 4);
+  }
+
+  /**
+   * Estimate the throughput from the samples taken so far.
+   *
+   * @param samples all samples offered to the ring, dropped ones included
+   */
+  public void observe(long samples, long nanos) {
+    if (!adaptive) {
+      return;
+    }
+    if (lastSamples < 0) {
+      lastSamples = samples;
+      lastNanos = nanos;
+      return;
+    }
+    long elapsed = nanos - lastNanos;
+    if (elapsed < MIN_OBSERVE_NANOS) {
+      return;
+    }
+    double tps = (samples - lastSamples) / probability / (elapsed / 1e9);
+    throughput = throughput == 0 ? tps : SMOOTHING * tps + (1 - SMOOTHING) * throughput;
+    lastSamples = samples;
+    lastNanos = nanos;
+    adjust();
+  }
+
+  /** Compare a drained batch with the batches before and adapt the interval and batch size. */
+  public void onBatch(RuntimeDependencyGraph graph) {
+    if (!adaptive) {
+      return;
+    }
+    int accesses = graph.getTotalReads() + graph.getTotalWrites();
+    double ratio = accesses == 0 ? 0 : (double) graph.getTotalWrites() / accesses;
+    double density = graph.getConflictDensity();
+    if (Double.isNaN(writeRatio)) {
+      writeRatio = ratio;
+      conflictDensity = density;
+      densitySize = graph.getSize();
+      return;
+    }
+    // more transactions share more keys, the density of another batch size is no reference
+    if (graph.getSize() != densitySize) {
+      conflictDensity = density;
+      densitySize = graph.getSize();
+    }
+    double drift = Math.max(Math.abs(ratio - writeRatio), Math.abs(density - conflictDensity));
+    if (drift > DRIFT_THRESHOLD) {
+      // the batches before describe another workload
+      writeRatio = ratio;
+      conflictDensity = density;
+      intervalMillis = Math.max(1, baseIntervalMillis / SHIFT_SPEEDUP);
+      batchSize = minBatch;
+      Log.info(
+          "sampling workload shift",
+          "drift",
+          drift,
+          "writeRatio",
+          ratio,
+          "conflictDensity",
+          density);
+    } else {
+      writeRatio = SMOOTHING * ratio + (1 - SMOOTHING) * writeRatio;
+      conflictDensity = SMOOTHING * density + (1 - SMOOTHING) * conflictDensity;
+      intervalMillis = Math.min(baseIntervalMillis, intervalMillis * 2);
+      batchSize = Math.min(maxBatch, batchSize * 2);
+    }
+    adjust();
+  }
+
+  // the probability that fills a batch in the interval, within the budget
+  private void adjust() {
+    if (throughput <= 0) {
+      return;
+    }
+    double target = batchSize / (throughput * intervalMillis / 1000.0);
+    target = Math.min(target, budget / throughput);
+    target = Math.max(MIN_RATE, Math.min(1, target));
+    // an idle server would sample everything, do not jump there at once
+    double next = Math.min(target, probability * 4);
+    if (Math.abs(next - probability) > probability * 0.05) {
+      Log.debug(
+          "sampling adjusted",
+          "probability",
+          next,
+          "batch",
+          batchSize,
+          "intervalMs",
+          intervalMillis,
+          "tps",
+          (long) throughput);
+    }
+    probability = next;
+  }
+}
@@ -0,0 +1,285 @@
+package org.dbiir.txnsails.execution.utils;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled, structured logging that keeps the console off the execution path. A call only claims a
+ * slot of a bounded ring buffer and fills in the event and its key/value fields; a daemon writer
+ * drains the ring, formats the lines and prints them in batches. A full ring drops the message and
+ * counts it instead of blocking the caller.
+ *
+ * <p>Per-message logging is DEBUG and off by default. Requests can additionally be traced at a
+ * sampled rate, see {@link #sampleTrace()}, which is changed at runtime with the trace command.
+ */
+public final class Log {
+  public enum Level {
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+  }
+
+  private static final int CAPACITY = 1 << 16;
+  private static final int MASK = CAPACITY - 1;
+  private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final DateTimeFormatter TIME_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+  private static volatile Level level = Level.INFO;
+  private static volatile double traceRate = 0;
+
+  private static final Slot[] ring = new Slot[CAPACITY];
+  private static final AtomicLong tail = new AtomicLong(0); // next slot to claim
+  private static volatile long head = 0; // next slot to drain, only advanced by the writer
+  private static final AtomicLong dropped = new AtomicLong(0);
+  private static final PrintStream out = System.out;
+  private static final Thread writer;
+  private static volatile boolean writerIdle = false;
+
+  /**
+   * One message. A producer owns the slot between claiming its position and publishing it through
+   * {@link #sequence}, the writer between seeing it published and handing it back.
+   */
+  private static final class Slot {
+    volatile long sequence;
+    long time;
+    Level level;
+    String thread;
+    String event;
+    Object[] fields;
+
+    Slot(long sequence) {
+      this.sequence = sequence;
+    }
+  }
+
+  static {
+    for (int i = 0; i < CAPACITY; i++) {
+      ring[i] = new Slot(i);
+    }
+    writer = new Thread(Log::drainLoop, "log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  private Log() {}
+
+  public static Level getLevel() {
+    return level;
+  }
+
+  public static void setLevel(Level newLevel) {
+    level = newLevel;
+  }
+
+  /** @throws IllegalArgumentException if the name is not a level */
+  public static void setLevel(String name) {
+    level = Level.valueOf(name.trim().toUpperCase());
+  }
+
+  public static boolean isEnabled(Level l) {
+    return l.compareTo(level) >= 0;
+  }
+
+  public static boolean isDebugEnabled() {
+    return Level.DEBUG.compareTo(level) >= 0;
+  }
+
+  public static double getTraceRate() {
+    return traceRate;
+  }
+
+  /** @param rate share of the requests to trace, 0 disables tracing and 1 traces every request */
+  public static void setTraceRate(double rate) {
+    if (Double.isNaN(rate) || rate < 0 || rate > 1) {
+      throw new IllegalArgumentException("trace rate must be within [0, 1]: " + rate);
+    }
+    traceRate = rate;
+  }
+
+  /** Decide whether the request about to run is traced, cheap enough to ask for every request. */
+  public static boolean sampleTrace() {
+    double rate = traceRate;
+    return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /** Log a sampled request, independent of the level. */
+  public static void trace(String event, Object... fields) {
+    publish(Level.TRACE, event, fields);
+  }
+
+  public static void debug(String event, Object... fields) {
+    if (isEnabled(Level.DEBUG)) {
+      publish(Level.DEBUG, event, fields);
+    }
+  }
+
+  public static void info(String event, Object... fields) {
+    if (isEnabled(Level.INFO)) {
+      publish(Level.INFO, event, fields);
+    }
+  }
+
+  public static void warn(String event, Object... fields) {
+    if (isEnabled(Level.WARN)) {
+      publish(Level.WARN, event, fields);
+    }
+  }
+
+  public static void error(String event, Object... fields) {
+    if (isEnabled(Level.ERROR)) {
+      publish(Level.ERROR, event, fields);
+    }
+  }
+
+  public static long getDropped() {
+    return dropped.get();
+  }
+
+  /** Wait until every message logged before the call is printed, at most the given time. */
+  public static void flush(long timeoutMillis) {
+    long target = tail.get();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (head < target && System.nanoTime() < deadline) {
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  private static void publish(Level l, String event, Object[] fields) {
+    Slot slot;
+    long pos;
+    while (true) {
+      pos = tail.get();
+      slot = ring[(int) (pos & MASK)];
+      long diff = slot.sequence - pos;
+      if (diff < 0) {
+        // the writer has not handed this slot back yet
+        dropped.incrementAndGet();
+        return;
+      }
+      if (diff == 0 && tail.compareAndSet(pos, pos + 1)) {
+        break;
+      }
+    }
+    slot.time = System.currentTimeMillis();
+    slot.level = l;
+    slot.thread = threadName(Thread.currentThread());
+    slot.event = event;
+    slot.fields = fields;
+    slot.sequence = pos + 1;
+    if (writerIdle) {
+      writerIdle = false;
+      LockSupport.unpark(writer);
+    }
+  }
+
+  // virtual threads are unnamed unless the executor names them
+  private static String threadName(Thread thread) {
+    String name = thread.getName();
+    return name.isEmpty() ? "virtual-" + thread.threadId() : name;
+  }
+
+  private static void drainLoop() {
+    StringBuilder sb = new StringBuilder(1 << 16);
+    long reportedDrops = 0;
+    while (true) {
+      long pos = head;
+      int lines = 0;
+      while (lines < 4096) {
+        Slot slot = ring[(int) (pos & MASK)];
+        if (slot.sequence != pos + 1) {
+          break;
+        }
+        format(sb, slot);
+        slot.fields = null;
+        slot.event = null;
+        slot.sequence = pos + CAPACITY;
+        pos++;
+        lines++;
+      }
+      long drops = dropped.get();
+      if (drops != reportedDrops) {
+        sb.append(TIME_FORMAT.format(Instant.now()))
+            .append(" WARN [log-writer] log ring full dropped=")
+            .append(drops - reportedDrops)
+            .append('\n');
+        reportedDrops = drops;
+      }
+      if (sb.length() > 0) {
+        out.print(sb);
+        out.flush();
+        sb.setLength(0);
+      }
+      head = pos;
+      if (lines == 0) {
+        writerIdle = true;
+        // a message published before the flag was set would otherwise wait for the timeout
+        if (ring[(int) (pos & MASK)].sequence != pos + 1) {
+          LockSupport.parkNanos(Log.class, IDLE_PARK);
+        }
+        writerIdle = false;
+      }
+    }
+  }
+
+  private static void format(StringBuilder sb, Slot slot) {
+    sb.append(TIME_FORMAT.format(Instant.ofEpochMilli(slot.time)))
+        .append(' ')
+        .append(slot.level)
+        .append(" [")
+        .append(slot.thread)
+        .append("] ")
+        .append(slot.event);
+    Object[] fields = slot.fields;
+    Throwable thrown = null;
+    if (fields != null) {
+      for (int i = 0; i + 1 < fields.length; i += 2) {
+        sb.append(' ').append(fields[i]).append('=');
+        appendValue(sb, fields[i + 1]);
+        thrown = fields[i + 1] instanceof Throwable t ? t : thrown;
+      }
+      if (fields.length % 2 == 1) {
+        // a trailing value without a key, typically the exception
+        sb.append(' ');
+        appendValue(sb, fields[fields.length - 1]);
+        thrown = fields[fields.length - 1] instanceof Throwable t ? t : thrown;
+      }
+    }
+    sb.append('\n');
+    if (thrown != null) {
+      // the full trace with its causes below the line, the line itself stays one record
+      StringWriter trace = new StringWriter();
+      thrown.printStackTrace(new PrintWriter(trace));
+      sb.append(trace);
+    }
+  }
+
+  private static void appendValue(StringBuilder sb, Object value) {
+    String s = value instanceof Throwable t ? t.toString() : String.valueOf(value);
+    if (!s.isEmpty() && s.chars().noneMatch(c -> c == ' ' || c == '"' || c == '\n')) {
+      sb.append(s);
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\');
+      }
+      sb.append(c == '\n' ? ' ' : c);
+    }
+    sb.append('"');
+  }
+}
@@ -0,0 +1,85 @@
+package org.dbiir.txnsails.execution.utils;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import org.dbiir.txnsails.common.types.ColumnType;
+
+/**
+ * Typed setter of one placeholder, resolved once from the type of the column the placeholder is
+ * compared with or assigned to, so binding needs neither a schema lookup nor boxing.
+ */
+@FunctionalInterface
+public interface ParameterBinder {
+  /**
+   * @param idx the 1-based JDBC parameter index
+   * @param paramIdx the 0-based index into the runtime params
+   */
+  void bind(PreparedStatement stmt, int idx, StatementParams params, int paramIdx)
+      throws SQLException;
+
+  ParameterBinder INTEGER =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.INTEGER);
+        else stmt.setInt(idx, params.getInt(i));
+      };
+  ParameterBinder BIGINT =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.BIGINT);
+        else stmt.setLong(idx, params.getLong(i));
+      };
+  ParameterBinder FLOAT =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.REAL);
+        else stmt.setFloat(idx, params.getFloat(i));
+      };
+  ParameterBinder DOUBLE =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.DOUBLE);
+        else stmt.setDouble(idx, params.getDouble(i));
+      };
+  ParameterBinder BOOLEAN =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.BOOLEAN);
+        else stmt.setBoolean(idx, params.getBoolean(i));
+      };
+  ParameterBinder STRING =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.VARCHAR);
+        else stmt.setString(idx, params.getString(i));
+      };
+  ParameterBinder DATE =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.DATE);
+        else stmt.setDate(idx, Date.valueOf(params.getString(i)));
+      };
+  ParameterBinder TIMESTAMP =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.TIMESTAMP);
+        else stmt.setTimestamp(idx, Timestamp.valueOf(params.getString(i)));
+      };
+  // the column type is unknown, let the database infer the type of the value
+  ParameterBinder UNTYPED =
+      (stmt, idx, params, i) -> {
+        if (params.isNull(i)) stmt.setNull(idx, Types.OTHER);
+        else stmt.setObject(idx, params.getString(i), Types.OTHER);
+      };
+
+  static ParameterBinder of(ColumnType type) {
+    if (type == null) {
+      return UNTYPED;
+    }
+    return switch (type) {
+      case INTEGER -> INTEGER;
+      case BIGINT -> BIGINT;
+      case FLOAT -> FLOAT;
+      case DOUBLE -> DOUBLE;
+      case BOOLEAN -> BOOLEAN;
+      case VARCHAR, TEXT -> STRING;
+      case DATE -> DATE;
+      case TIMESTAMP -> TIMESTAMP;
+    };
+  }
+}
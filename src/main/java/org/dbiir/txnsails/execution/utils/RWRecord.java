@@ -1,3 +0,0 @@
-package org.dbiir.txnsails.execution.utils;
-
-public record RWRecord(int table_idx, int key_id) {}
@@ -0,0 +1,8 @@
+package org.dbiir.txnsails.execution.utils;
+
+/** Receives the rows of a statement as they are read from the ResultSet. */
+public interface ResultWriter {
+  void beginRow(int columns);
+
+  void addColumn(String value);
+}
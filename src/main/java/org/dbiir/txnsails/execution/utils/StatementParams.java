@@ -0,0 +1,23 @@
+package org.dbiir.txnsails.execution.utils;
+
+/**
+ * Runtime values of the placeholders of one statement, indexed from 0 in placeholder order. The
+ * text protocol parses them on demand, the binary protocol carries them already typed.
+ */
+public interface StatementParams {
+  int size();
+
+  boolean isNull(int idx);
+
+  int getInt(int idx);
+
+  long getLong(int idx);
+
+  float getFloat(int idx);
+
+  double getDouble(int idx);
+
+  boolean getBoolean(int idx);
+
+  String getString(int idx);
+}
@@ -0,0 +1,44 @@
+package org.dbiir.txnsails.execution.utils;
+
+/**
+ * Result encoding of the text protocol: per row, the column count as 2 hex digits, then per column
+ * its length as 4 hex digits followed by the value.
+ */
+public class TextResultWriter implements ResultWriter {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+  private final StringBuilder sb = new StringBuilder(64);
+
+  public TextResultWriter reset() {
+    sb.setLength(0);
+    return this;
+  }
+
+  @Override
+  public void beginRow(int columns) {
+    appendHex(columns, 2);
+  }
+
+  @Override
+  public void addColumn(String value) {
+    if (value == null) {
+      value = "";
+    }
+    appendHex(value.length(), 4);
+    sb.append(value);
+  }
+
+  private void appendHex(int value, int minDigits) {
+    int digits = minDigits;
+    while (digits < 8 && (value >>> (digits * 4)) != 0) {
+      digits++;
+    }
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+      sb.append(HEX_DIGITS[(value >>> shift) & 0xf]);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return sb.toString();
+  }
+}
@@ -0,0 +1,63 @@
+package org.dbiir.txnsails.execution.utils;
+
+/** Parameters of a '#'-delimited text command, starting at a fixed offset of the split line. */
+public class TextStatementParams implements StatementParams {
+  private String[] args;
+  private int offset;
+
+  public TextStatementParams() {
+    this.args = new String[0];
+    this.offset = 0;
+  }
+
+  public TextStatementParams(String[] args, int offset) {
+    this.args = args;
+    this.offset = offset;
+  }
+
+  public TextStatementParams reset(String[] args, int offset) {
+    this.args = args;
+    this.offset = offset;
+    return this;
+  }
+
+  @Override
+  public int size() {
+    return Math.max(args.length - offset, 0);
+  }
+
+  @Override
+  public boolean isNull(int idx) {
+    return false;
+  }
+
+  @Override
+  public int getInt(int idx) {
+    return Integer.parseInt(args[offset + idx]);
+  }
+
+  @Override
+  public long getLong(int idx) {
+    return Long.parseLong(args[offset + idx]);
+  }
+
+  @Override
+  public float getFloat(int idx) {
+    return Float.parseFloat(args[offset + idx]);
+  }
+
+  @Override
+  public double getDouble(int idx) {
+    return Double.parseDouble(args[offset + idx]);
+  }
+
+  @Override
+  public boolean getBoolean(int idx) {
+    return Boolean.parseBoolean(args[offset + idx]);
+  }
+
+  @Override
+  public String getString(int idx) {
+    return args[offset + idx];
+  }
+}
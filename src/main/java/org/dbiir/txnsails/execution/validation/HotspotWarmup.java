@@ -0,0 +1,201 @@
+package org.dbiir.txnsails.execution.validation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import org.dbiir.txnsails.execution.utils.Log;
+
+/**
+ * Loads the versions of the cached key space before the server accepts clients. Every table is
+ * split into ranges of its leading key column, and each range is streamed through a server-side
+ * cursor, one range at a time per auxiliary connection, instead of selecting every key on its own.
+ * Progress is the share of the ranges loaded, logged every few seconds.
+ */
+public class HotspotWarmup {
+  private static final int FETCH_SIZE = 10000;
+  private static final long PROGRESS_INTERVAL = 5; // seconds
+  // more ranges than connections balance the loaders and make the progress finer
+  private static final int RANGES_PER_CONNECTION = 4;
+
+  private final String workload;
+  private final List<Connection> connections;
+  private final List<Lock> guards;
+  private final Map<String, ValidationLockTable> lockTables;
+  private final ConcurrentLinkedQueue<Range> ranges = new ConcurrentLinkedQueue<>();
+  private final LongAdder versions = new LongAdder();
+  private final AtomicInteger loadedRanges = new AtomicInteger(0);
+  private volatile int totalRanges = 0;
+  private volatile long startTime = 0;
+  private volatile long finishTime = 0;
+
+  private record Range(String table, String[] keyColumns, int hashSize, int low, int high) {}
+
+  HotspotWarmup(
+      String workload,
+      List<Connection> connections,
+      List<Lock> guards,
+      Map<String, ValidationLockTable> lockTables) {
+    this.workload = workload;
+    this.connections = connections;
+    this.guards = guards;
+    this.lockTables = lockTables;
+  }
+
+  /** Stream the versions of all tables and block until they are loaded. */
+  void run() throws SQLException {
+    startTime = System.nanoTime();
+    for (Map.Entry<String, ValidationLockTable> entry : lockTables.entrySet()) {
+      String table = entry.getKey();
+      String[] keyColumns = WorkloadKeys.keyColumns(workload, table);
+      int hashSize = WorkloadKeys.hashSizes(workload).get(table);
+      if (keyColumns == null || hashSize <= 0) {
+        continue;
+      }
+      // split the values of the leading key column, which orders the validation ids
+      int first = WorkloadKeys.decode(workload, table, 0)[0];
+      int last = WorkloadKeys.decode(workload, table, hashSize - 1)[0];
+      long span = (long) last - first + 1;
+      int parts = (int) Math.min((long) connections.size() * RANGES_PER_CONNECTION, span);
+      for (int i = 0; i < parts; i++) {
+        int low = (int) (first + span * i / parts);
+        int high = (int) (first + span * (i + 1) / parts - 1);
+        ranges.add(new Range(table, keyColumns, hashSize, low, high));
+      }
+      totalRanges += parts;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(connections.size());
+    List<Future<?>> loaders = new ArrayList<>(connections.size());
+    for (int i = 0; i < connections.size(); i++) {
+      int index = i;
+      loaders.add(
+          executor.submit(
+              () -> {
+                Range range;
+                while ((range = ranges.poll()) != null) {
+                  load(index, range);
+                }
+                return null;
+              }));
+    }
+    executor.shutdown();
+    try {
+      for (Future<?> loader : loaders) {
+        while (true) {
+          try {
+            loader.get(PROGRESS_INTERVAL, TimeUnit.SECONDS);
+            break;
+          } catch (TimeoutException ex) {
+            Log.info(
+                "hotspot warmup progress",
+                "workload",
+                workload,
+                "ranges",
+                loadedRanges.get() + "/" + totalRanges,
+                "versions",
+                versions.sum(),
+                "percent",
+                String.format("%.1f", getProgress() * 100));
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      executor.shutdownNow();
+      throw new SQLException("Hotspot warmup interrupted", "500", 0);
+    } catch (ExecutionException ex) {
+      executor.shutdownNow();
+      Throwable cause = ex.getCause();
+      throw new SQLException("Hotspot warmup failed: " + cause.getMessage(), "500", 0, cause);
+    }
+    finishTime = System.nanoTime();
+    Log.info(
+        "hotspot warmup finished",
+        "workload",
+        workload,
+        "ranges",
+        totalRanges,
+        "versions",
+        versions.sum(),
+        "ms",
+        getDurationMillis());
+  }
+
+  private void load(int index, Range range) throws SQLException {
+    Connection conn = connections.get(index);
+    ValidationLockTable lockTable = lockTables.get(range.table());
+    String[] keyColumns = range.keyColumns();
+    String sql =
+        "SELECT "
+            + String.join(", ", keyColumns)
+            + ", vid FROM "
+            + range.table()
+            + " WHERE "
+            + keyColumns[0]
+            + " BETWEEN ? AND ?";
+    int[] keys = new int[keyColumns.length];
+
+    guards.get(index).lock();
+    try {
+      // the driver only streams through a cursor inside a transaction
+      conn.setAutoCommit(false);
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setFetchSize(FETCH_SIZE);
+        stmt.setInt(1, range.low());
+        stmt.setInt(2, range.high());
+        long loaded = 0;
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            for (int c = 0; c < keys.length; c++) {
+              keys[c] = res.getInt(c + 1);
+            }
+            int id = WorkloadKeys.encode(workload, range.table(), keys);
+            if (id < 0 || id >= range.hashSize()) {
+              continue;
+            }
+            lockTable.pinVersion(id, res.getInt(keys.length + 1));
+            loaded++;
+          }
+        }
+        conn.commit();
+        versions.add(loaded);
+        loadedRanges.incrementAndGet();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+    } finally {
+      guards.get(index).unlock();
+    }
+  }
+
+  /** @return the share of the key ranges loaded so far, 1 once the warmup finished */
+  double getProgress() {
+    if (finishTime != 0) {
+      return 1.0;
+    }
+    int total = totalRanges;
+    return total == 0 ? 0.0 : (double) loadedRanges.get() / total;
+  }
+
+  long getDurationMillis() {
+    if (startTime == 0) {
+      return 0;
+    }
+    long end = finishTime != 0 ? finishTime : System.nanoTime();
+    return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+  }
+}
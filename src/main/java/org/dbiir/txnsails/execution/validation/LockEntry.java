@@ -9,7 +9,8 @@ import org.dbiir.txnsails.common.types.LockType;
 public class LockEntry {
   private final long transactionId;
   private final LockType lockType;
-  private boolean grantee;
+  private volatile boolean grantee;
+  private final Thread thread; // the transaction thread, parked while waiting
   private final long enterTime;
 
   public LockEntry(long transactionId, LockType type) {
@@ -17,6 +18,7 @@ public class LockEntry {
     this.lockType = type;
     this.enterTime = System.currentTimeMillis();
     this.grantee = false;
+    this.thread = Thread.currentThread();
   }
 
   public LockEntry(long transactionId, LockType type, boolean grantee) {
@@ -24,6 +26,7 @@ public class LockEntry {
     this.lockType = type;
     this.enterTime = System.currentTimeMillis();
     this.grantee = grantee;
+    this.thread = Thread.currentThread();
   }
 
   public boolean Timeout() {
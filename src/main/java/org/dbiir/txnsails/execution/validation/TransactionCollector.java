@@ -1,111 +1,151 @@
 package org.dbiir.txnsails.execution.validation;
 
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import lombok.Getter;
-import lombok.Setter;
-import org.dbiir.txnsails.execution.sample.TransactionMeta;
-import org.dbiir.txnsails.execution.utils.RWRecord;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.dbiir.txnsails.execution.sample.RuntimeDependencyGraph;
+import org.dbiir.txnsails.execution.sample.SampleRingBuffer;
+import org.dbiir.txnsails.execution.sample.SamplingController;
 
 public class TransactionCollector {
-  private static final TransactionCollector INSTANCE;
-  public static int TRANSACTION_BATCH = 128;
-  private static final double SAMPLE_PROBABILITY = 0.01;
-  private final Random random = new Random();
-  static String edgeFormat = "#%d,%d,%d";
-  private final Lock lock;
-  @Getter @Setter private boolean needFlush = false;
-  private TransactionMeta[] transactionMetas;
-  private int sampleCount;
+  private static volatile TransactionCollector INSTANCE;
+  public static final int DEFAULT_TRANSACTION_BATCH = 128;
+  private static final int RING_BATCHES = 2; // batches the ring holds while the flusher writes
+  private final int transactionBatch;
+  private final SamplingController sampling;
+  private final SampleRingBuffer ring;
+  private final RuntimeDependencyGraph graph = new RuntimeDependencyGraph();
+
+  // the batch being flushed, owned by the flusher: the reads of transaction i are
+  // [readStart[i], readStart[i + 1]) of readTable/readKey, the writes likewise
+  private int batchSize;
+  private final int[] readStart;
+  private final int[] writeStart;
+  private int[] readTable = new int[1024];
+  private int[] readKey = new int[1024];
+  private int[] writeTable = new int[1024];
+  private int[] writeKey = new int[1024];
 
   static {
-    INSTANCE = new TransactionCollector();
+    INSTANCE = new TransactionCollector(DEFAULT_TRANSACTION_BATCH);
   }
 
-  public TransactionCollector() {
-    this.lock = new ReentrantLock();
-    this.transactionMetas = new TransactionMeta[TRANSACTION_BATCH + 1];
-    this.sampleCount = 0;
+  /** @param transactionBatch the number of sampled transactions per runtime dependency graph */
+  public TransactionCollector(int transactionBatch) {
+    this(
+        transactionBatch,
+        new SamplingController(SamplingController.DEFAULT_RATE, transactionBatch));
   }
 
-  public void addTransactionSample(
-      int transactionType, List<RWRecord> reads, List<RWRecord> writes, int processing) {
-    lock.lock();
-    if (!needFlush) {
-      transactionMetas[sampleCount++] =
-          new TransactionMeta(transactionType, reads, writes, processing);
-      if (sampleCount >= TRANSACTION_BATCH) needFlush = true;
-    }
-    // System.out.println("sample count: " + sampleCount);
-    lock.unlock();
+  /**
+   * @param transactionBatch the largest batch, the controller may choose smaller ones
+   */
+  public TransactionCollector(int transactionBatch, SamplingController sampling) {
+    this.transactionBatch = transactionBatch;
+    this.sampling = sampling;
+    this.ring = new SampleRingBuffer(transactionBatch * RING_BATCHES);
+    this.readStart = new int[transactionBatch + 1];
+    this.writeStart = new int[transactionBatch + 1];
   }
 
-  public void refreshMetas() {
-    lock.lock();
-    sampleCount = 0;
-    needFlush = false;
-    lock.unlock();
+  /** Replace the collector before any worker samples, e.g. for another batch size. */
+  public static void init(TransactionCollector collector) {
+    INSTANCE = collector;
   }
 
-  // runtime dependency graph (RDGBuilder)
-  public String getTransactionNodeFeature(int idx) {
-    return transactionMetas[idx].transactionFeature();
+  public int getTransactionBatch() {
+    return transactionBatch;
   }
 
-  public String getTransactionEdgeFeature(int idx) {
-    StringBuilder builder = new StringBuilder();
-    int table_idx;
-    for (int i = 0; i < TRANSACTION_BATCH; i++) {
-      if (i == idx) continue;
-      if ((table_idx = rrDependency(idx, i)) > 0) {
-        builder.append(edgeFormat.formatted(i, 1, table_idx));
-      }
-      if ((table_idx = rwDependency(idx, i)) > 0) {
-        builder.append(edgeFormat.formatted(i, 2, table_idx));
-      }
-      if ((table_idx = wwDependency(idx, i)) > 0) {
-        builder.append(edgeFormat.formatted(i, 4, table_idx));
-      }
-    }
-    return builder.toString();
+  public SamplingController getSampling() {
+    return sampling;
   }
 
-  private int rrDependency(int idx1, int idx2) {
-    for (RWRecord r : transactionMetas[idx2].getRset()) {
-      for (RWRecord r2 : transactionMetas[idx1].getRset()) {
-        if (r.table_idx() == r2.table_idx() && r.key_id() == r2.key_id()) return r.table_idx();
-      }
-    }
-    return -1;
+  /**
+   * @param accesses count (table_idx, key_id, op) triples, op 0 is a read and 1 a write
+   */
+  public void addTransactionSample(int transactionType, int[] accesses, int count, int processing) {
+    ring.offer(transactionType, processing, accesses, count);
   }
 
-  private int rwDependency(int idx1, int idx2) {
-    for (RWRecord w : transactionMetas[idx2].getWset()) {
-      for (RWRecord r : transactionMetas[idx1].getRset()) {
-        if (w.table_idx() == r.table_idx() && w.key_id() == r.key_id()) return w.table_idx();
-      }
+  /** @return true once a whole batch is published, called by the flusher */
+  public boolean isNeedFlush() {
+    int batch = sampling.getBatchSize();
+    return ring.available(batch) == batch;
+  }
+
+  /**
+   * Take the next batch out of the ring and index its dependencies, the workers keep sampling into
+   * the slots left. Called by the flusher before it reads the features.
+   *
+   * @return the number of transactions in the batch
+   */
+  public int drainBatch() {
+    batchSize = 0;
+    readStart[0] = 0;
+    writeStart[0] = 0;
+    ring.drain(sampling.getBatchSize(), this::addToBatch);
+    graph.build(batchSize, readStart, readTable, readKey, writeStart, writeTable, writeKey);
+    return batchSize;
+  }
+
+  private void addToBatch(int type, int processing, int[] accesses, int offset, int count) {
+    int r = readStart[batchSize];
+    int w = writeStart[batchSize];
+    if (readTable.length < r + count) {
+      readTable = Arrays.copyOf(readTable, Math.max(readTable.length * 2, r + count));
+      readKey = Arrays.copyOf(readKey, readTable.length);
     }
-    for (RWRecord w : transactionMetas[idx1].getWset()) {
-      for (RWRecord r : transactionMetas[idx2].getRset()) {
-        if (w.table_idx() == r.table_idx() && w.key_id() == r.key_id()) return w.table_idx();
+    if (writeTable.length < w + count) {
+      writeTable = Arrays.copyOf(writeTable, Math.max(writeTable.length * 2, w + count));
+      writeKey = Arrays.copyOf(writeKey, writeTable.length);
+    }
+    for (int i = 0; i < count; i++) {
+      int at = offset + i * SampleRingBuffer.ACCESS_INTS;
+      if (accesses[at + 2] == 0) {
+        readTable[r] = accesses[at];
+        readKey[r++] = accesses[at + 1];
+      } else {
+        writeTable[w] = accesses[at];
+        writeKey[w++] = accesses[at + 1];
       }
     }
-    return -1;
+    batchSize++;
+    readStart[batchSize] = r;
+    writeStart[batchSize] = w;
   }
 
-  private int wwDependency(int idx1, int idx2) {
-    for (RWRecord w1 : transactionMetas[idx2].getWset()) {
-      for (RWRecord w2 : transactionMetas[idx1].getWset()) {
-        if (w1.table_idx() == w2.table_idx() && w1.key_id() == w2.key_id()) return w1.table_idx();
-      }
-    }
-    return -1;
+  /** @return the dependencies of the last drained batch */
+  public RuntimeDependencyGraph getGraph() {
+    return graph;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public long getOfferedSamples() {
+    return ring.getOffered();
+  }
+
+  public long getDroppedSamples() {
+    return ring.getDropped();
+  }
+
+  // runtime dependency graph (RDGBuilder)
+  public String getTransactionNodeFeature(int idx) {
+    int reads = readStart[idx + 1] - readStart[idx];
+    int writes = writeStart[idx + 1] - writeStart[idx];
+    return "%d, %d".formatted(reads, writes);
+  }
+
+  /** @see RuntimeDependencyGraph#getEdgeFeature(int) */
+  public String getTransactionEdgeFeature(int idx) {
+    return graph.getEdgeFeature(idx);
   }
 
+  /** Decide whether the next transaction of the calling worker is sampled. */
   public boolean isSample() {
-    return !needFlush && random.nextDouble() < SAMPLE_PROBABILITY;
+    return ThreadLocalRandom.current().nextDouble() < sampling.getProbability();
   }
 
   public static TransactionCollector getInstance() {
@@ -0,0 +1,699 @@
+package org.dbiir.txnsails.execution.validation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.common.types.LockType;
+
+/**
+ * Validation locks and cached latest versions of one relation, kept in an open-addressing table of
+ * primitive longs instead of one object per key. Every slot is three longs:
+ *
+ * <ul>
+ *   <li>key + 1 in the high and the version in the low 32 bits (0: empty slot)
+ *   <li>control word: spin and frozen bits, referenced, waiters and pinned bits, lock type and
+ *       holder count
+ *   <li>maxTid in the high and minWriteWaitTid in the low 32 bits
+ * </ul>
+ *
+ * Lookups never lock. A lock operation owns its slot for a few instructions through the spin bit
+ * of the control word, so the lock type, count and tids change together. Entries are inserted by
+ * CAS into empty slots and never deleted in place; instead, when the load gets too high the table
+ * is rebuilt: all slots are frozen, entries that are free, not pinned by the warmup and have not
+ * been referenced since the previous rebuild are dropped, and the rest is copied into a table sized
+ * from what survived.
+ * Operations that run into a frozen slot wait for the rebuild and retry on the new table.
+ *
+ * <p>A writer that has to wait for readers parks in a per-key queue and sets the waiters bit of the
+ * slot. The release that frees the lock decides for the queued writers and unparks exactly those
+ * that were granted or have to abort; the others keep waiting until their deadline. Every decision
+ * on the queue, a timeout included, sets minWriteWaitTid to the oldest writer still queued.
+ */
+class ValidationLockTable {
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final int STRIDE = 3;
+  private static final int KEY_VERSION = 0;
+  private static final int CONTROL = 1;
+  private static final int TIDS = 2;
+
+  private static final long EMPTY = 0L;
+  private static final long FROZEN_EMPTY = -1L; // key + 1 == 0xffffffff is not a valid int key
+  private static final long VERSION_MASK = 0xffffffffL;
+
+  private static final long SPIN = 1L << 63;
+  private static final long FROZEN = 1L << 62;
+  private static final long REFERENCED = 1L << 61;
+  private static final long WAITERS = 1L << 60; // writers are parked on the key
+  private static final long PINNED = 1L << 59; // loaded by the warmup, never dropped
+  private static final int TYPE_SHIFT = 32;
+  private static final long TYPE_MASK = 3L << TYPE_SHIFT;
+  private static final long COUNT_MASK = 0xffffffffL;
+  private static final int TYPE_NONE = 0;
+  private static final int TYPE_SH = 1;
+  private static final int TYPE_EX = 2;
+  // indexes into the unpacked lock state of a slot
+  private static final int TYPE = 0;
+  private static final int COUNT = 1;
+  private static final int MAX_TID = 2;
+  private static final int MIN_WRITE_WAIT_TID = 3;
+
+  // results of a probe that did not end on the key
+  private static final int ABSENT = -1;
+  private static final int FROZEN_SLOT = -2;
+  private static final int FULL = -3;
+
+  private static final int MIN_CAPACITY = 1024;
+  // rebuild above 3/4 load, to at most 1/2 load
+  private static final int LOAD_NUMERATOR = 3;
+  private static final int LOAD_DENOMINATOR = 4;
+
+  private final AtomicInteger size = new AtomicInteger(0); // approximate, exact after rebuild
+  private final ReentrantLock resizeLock = new ReentrantLock();
+  private volatile long[] slots;
+  // parked writers per key, only present while someone waits
+  private final ConcurrentHashMap<Long, WaitQueue> waiters = new ConcurrentHashMap<>();
+
+  /**
+   * @param expectedKeys number of keys the table is sized for at first, it grows past them
+   */
+  ValidationLockTable(int expectedKeys) {
+    this.slots = new long[capacityFor(expectedKeys) * STRIDE];
+  }
+
+  int size() {
+    return size.get();
+  }
+
+  int capacity() {
+    return slots.length / STRIDE;
+  }
+
+  /**
+   * @return the cached version of the key, -1 if the key is not cached or its version is unknown
+   */
+  long getVersion(long key) {
+    checkKey(key);
+    while (true) {
+      long[] s = slots;
+      int i = find(s, key);
+      if (i == ABSENT) {
+        return -1;
+      }
+      if (i == FROZEN_SLOT) {
+        awaitRebuild(s);
+        continue;
+      }
+      int base = i * STRIDE;
+      long version = (int) (long) SLOTS.getVolatile(s, base + KEY_VERSION);
+      long c = (long) SLOTS.getVolatile(s, base + CONTROL);
+      if ((c & FROZEN) != 0) {
+        // the version may have moved on in the new table
+        awaitRebuild(s);
+        continue;
+      }
+      if ((c & (REFERENCED | SPIN)) == 0) {
+        SLOTS.compareAndSet(s, base + CONTROL, c, c | REFERENCED);
+      }
+      return version;
+    }
+  }
+
+  /**
+   * Raise the cached version of the key to the given version.
+   *
+   * @param insert whether to cache the key if it is not cached yet
+   */
+  void updateVersion(long key, long version, boolean insert) {
+    update(key, version, insert, false);
+  }
+
+  /** Cache the key with at least the given version and keep it cached even if it goes cold. */
+  void pinVersion(long key, long version) {
+    update(key, version, true, true);
+  }
+
+  private void update(long key, long version, boolean insert, boolean pin) {
+    checkKey(key);
+    while (true) {
+      long[] s = slots;
+      int i = insert ? findOrInsert(s, key, version) : find(s, key);
+      if (i == ABSENT) {
+        return;
+      }
+      if (i == FULL) {
+        rebuild(s, true);
+        continue;
+      }
+      if (i == FROZEN_SLOT) {
+        awaitRebuild(s);
+        continue;
+      }
+      int base = i * STRIDE;
+      long kv;
+      do {
+        kv = (long) SLOTS.getVolatile(s, base + KEY_VERSION);
+        if ((int) kv >= version) {
+          break;
+        }
+      } while (!SLOTS.compareAndSet(
+          s, base + KEY_VERSION, kv, (kv & ~VERSION_MASK) | (version & VERSION_MASK)));
+      while (pin) {
+        long c = (long) SLOTS.getVolatile(s, base + CONTROL);
+        if ((c & (PINNED | FROZEN)) != 0) {
+          break;
+        }
+        if ((c & SPIN) != 0) {
+          Thread.onSpinWait();
+        } else if (SLOTS.compareAndSet(s, base + CONTROL, c, c | PINNED)) {
+          break;
+        }
+      }
+      if (((long) SLOTS.getVolatile(s, base + CONTROL) & FROZEN) != 0) {
+        // the slot may have been copied before the update, redo it on the new table
+        awaitRebuild(s);
+        continue;
+      }
+      maybeRebuild(s);
+      return;
+    }
+  }
+
+  /*
+   * @return result. 1 for success, 0 means the transaction manager can wait, -1 for abort
+   */
+  int tryLock(long key, long tid, LockType lockType, CCType ccType) {
+    checkKey(key);
+    int[] state = new int[4];
+    while (true) {
+      long[] s = slots;
+      int i = findOrInsert(s, key, -1);
+      if (i == FULL) {
+        rebuild(s, true);
+        continue;
+      }
+      if (i == FROZEN_SLOT) {
+        awaitRebuild(s);
+        continue;
+      }
+      int base = i * STRIDE;
+      long c = acquire(s, base);
+      if (c < 0) {
+        awaitRebuild(s);
+        continue;
+      }
+      decode(s, base, c, state);
+      int result = decide(state, (int) tid, lockType, ccType);
+      release(s, base, state, c & (WAITERS | PINNED));
+      maybeRebuild(s);
+      return result;
+    }
+  }
+
+  /**
+   * Like {@link #tryLock}, but instead of answering 0 the caller is queued on the key and parked
+   * until a release decides for it or the timeout expires.
+   *
+   * @return 1 for success, -1 for abort, 0 if the wait timed out
+   */
+  int lock(long key, long tid, LockType lockType, CCType ccType, long timeoutNanos) {
+    int result = tryLock(key, tid, lockType, ccType);
+    if (result != 0) {
+      return result;
+    }
+    return await(key, new Waiter((int) tid, ccType), System.nanoTime() + timeoutNanos);
+  }
+
+  void releaseLock(long key, LockType lockType) {
+    checkKey(key);
+    int[] state = new int[4];
+    while (true) {
+      long[] s = slots;
+      int i = find(s, key);
+      if (i == ABSENT) {
+        return;
+      }
+      if (i == FROZEN_SLOT) {
+        awaitRebuild(s);
+        continue;
+      }
+      int base = i * STRIDE;
+      long c = acquire(s, base);
+      if (c < 0) {
+        awaitRebuild(s);
+        continue;
+      }
+      decode(s, base, c, state);
+      assert (state[TYPE] == (lockType == LockType.EX ? TYPE_EX : TYPE_SH));
+      state[COUNT]--;
+      if (state[COUNT] <= 0) {
+        state[COUNT] = 0;
+        state[TYPE] = TYPE_NONE;
+        state[MAX_TID] = 0;
+      }
+      release(s, base, state, c & (WAITERS | PINNED));
+      if ((c & WAITERS) != 0 && state[TYPE] == TYPE_NONE) {
+        signal(key);
+      }
+      return;
+    }
+  }
+
+  /** The lock decision of one request, applied to the unpacked slot state. */
+  private static int decide(int[] state, int t, LockType lockType, CCType ccType) {
+    int result = -2;
+    if (state[TYPE] == TYPE_NONE) {
+      state[TYPE] = lockType == LockType.EX ? TYPE_EX : TYPE_SH;
+      state[COUNT]++;
+      if (lockType == LockType.EX) {
+        state[MIN_WRITE_WAIT_TID] = 0;
+      }
+      state[MAX_TID] = t;
+      result = 1;
+    } else if (state[TYPE] == TYPE_SH) {
+      if (lockType == LockType.SH) {
+        if (state[MIN_WRITE_WAIT_TID] != 0 && t > state[MIN_WRITE_WAIT_TID]) {
+          // an old transaction wants to read the entry, abort
+          result = -1;
+        } else {
+          state[COUNT]++;
+          state[MAX_TID] = Math.max(state[MAX_TID], t);
+          result = 1;
+        }
+      } else {
+        int minWriteWaitTid = state[MIN_WRITE_WAIT_TID];
+        if (state[MIN_WRITE_WAIT_TID] != 0) {
+          // it wants to acquire a write lock, while there is a concurrent write send commit before
+          // it
+          if (ccType == CCType.SI_TAILOR) {
+            result = -1;
+          } else if (ccType == CCType.RC_TAILOR) {
+            state[MIN_WRITE_WAIT_TID] = Math.min(state[MIN_WRITE_WAIT_TID], t);
+            result = 0;
+          }
+        } else {
+          state[MIN_WRITE_WAIT_TID] = t;
+          result = 0;
+        }
+
+        if (result == 0 && state[MAX_TID] > t) {
+          // it never waits, later readers must not be held back by its tid
+          state[MIN_WRITE_WAIT_TID] = minWriteWaitTid;
+          result = -1;
+        }
+      }
+    } else {
+      // this type is EX
+      if (lockType == LockType.SH) {
+        result = -1;
+      } else {
+        if (ccType == CCType.SI_TAILOR) {
+          result = -1;
+        } else if (ccType == CCType.RC_TAILOR) {
+          // concurrent update is allowed under RC, only need to keep the rw order
+          state[COUNT]++;
+          state[MAX_TID] = Math.max(state[MAX_TID], t);
+          result = 1;
+        }
+      }
+    }
+    return result;
+  }
+
+  private int await(long key, Waiter waiter, long deadline) {
+    WaitQueue queue;
+    while (true) {
+      queue = waiters.computeIfAbsent(key, k -> new WaitQueue());
+      queue.lock.lock();
+      try {
+        if (queue.removed) {
+          continue; // emptied and unlinked meanwhile, take a fresh one
+        }
+        queue.add(waiter);
+        // a release may have happened before we were queued
+        evaluate(key, queue);
+        break;
+      } finally {
+        queue.lock.unlock();
+      }
+    }
+    while (waiter.state == Waiter.WAITING) {
+      long left = deadline - System.nanoTime();
+      if (left <= 0 || Thread.interrupted()) {
+        break;
+      }
+      LockSupport.parkNanos(this, left);
+    }
+    queue.lock.lock();
+    try {
+      if (waiter.state == Waiter.WAITING) {
+        queue.remove(waiter);
+        // the remaining writers decide the min write wait tid of the slot now
+        evaluate(key, queue);
+        return 0;
+      }
+    } finally {
+      queue.lock.unlock();
+    }
+    return waiter.state == Waiter.GRANTED ? 1 : -1;
+  }
+
+  private void signal(long key) {
+    WaitQueue queue = waiters.get(key);
+    if (queue == null) {
+      return;
+    }
+    queue.lock.lock();
+    try {
+      if (!queue.removed) {
+        evaluate(key, queue);
+      }
+    } finally {
+      queue.lock.unlock();
+    }
+  }
+
+  /**
+   * Decide for the queued writers, oldest transaction first, as if each of them retried now: grant
+   * the ones that get the lock, abort the ones that never can and leave the rest parked. Must hold
+   * the lock of the queue.
+   */
+  private void evaluate(long key, WaitQueue queue) {
+    int[] state = new int[4];
+    while (true) {
+      long[] s = slots;
+      int i = findOrInsert(s, key, -1);
+      if (i == FULL) {
+        rebuild(s, true);
+        continue;
+      }
+      if (i == FROZEN_SLOT) {
+        awaitRebuild(s);
+        continue;
+      }
+      int base = i * STRIDE;
+      long c = acquire(s, base);
+      if (c < 0) {
+        awaitRebuild(s);
+        continue;
+      }
+      decode(s, base, c, state);
+      for (Iterator<Waiter> it = queue.iterator(); it.hasNext(); ) {
+        Waiter waiter = it.next();
+        int result;
+        if (state[TYPE] == TYPE_SH) {
+          // readers are still in, it can only lose its place by a younger reader
+          result = state[MAX_TID] > waiter.tid ? -1 : 0;
+        } else {
+          result = decide(state, waiter.tid, LockType.EX, waiter.ccType);
+        }
+        if (result != 0) {
+          it.remove();
+          waiter.state = result > 0 ? Waiter.GRANTED : Waiter.ABORTED;
+          LockSupport.unpark(waiter.thread);
+        }
+      }
+      // readers are only held back by writers that still wait, not by aborted or timed out ones
+      state[MIN_WRITE_WAIT_TID] = queue.isEmpty() ? 0 : queue.minTid();
+      release(s, base, state, (c & PINNED) | (queue.isEmpty() ? 0 : WAITERS));
+      unlinkIfEmpty(key, queue);
+      return;
+    }
+  }
+
+  private void unlinkIfEmpty(long key, WaitQueue queue) {
+    if (queue.isEmpty()) {
+      queue.removed = true;
+      waiters.remove(key, queue);
+    }
+  }
+
+  private static void decode(long[] s, int base, long c, int[] state) {
+    long tids = (long) SLOTS.getVolatile(s, base + TIDS);
+    state[TYPE] = (int) ((c & TYPE_MASK) >>> TYPE_SHIFT);
+    state[COUNT] = (int) (c & COUNT_MASK);
+    state[MAX_TID] = (int) (tids >>> 32);
+    state[MIN_WRITE_WAIT_TID] = (int) tids;
+  }
+
+  private static void checkKey(long key) {
+    if (key < 0 || key > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("invalid validation key: " + key);
+    }
+  }
+
+  private static int capacityFor(int keys) {
+    return Math.max(MIN_CAPACITY, keys * 2);
+  }
+
+  private static int home(long key, int capacity) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) (((h & 0xffffffffL) * capacity) >>> 32);
+  }
+
+  /**
+   * @return the slot index of the key, ABSENT, or FROZEN_SLOT if the probe ran into a rebuild
+   */
+  private static int find(long[] s, long key) {
+    int capacity = s.length / STRIDE;
+    long tag = key + 1;
+    int i = home(key, capacity);
+    for (int probes = 0; probes < capacity; probes++) {
+      long kv = (long) SLOTS.getVolatile(s, i * STRIDE + KEY_VERSION);
+      if (kv == EMPTY) {
+        return ABSENT;
+      }
+      if (kv == FROZEN_EMPTY) {
+        return FROZEN_SLOT;
+      }
+      if ((kv >>> 32) == tag) {
+        return i;
+      }
+      i = i + 1 == capacity ? 0 : i + 1;
+    }
+    return ABSENT;
+  }
+
+  /**
+   * @return the slot index of the key, inserting it with the version if needed, FROZEN_SLOT if the
+   *     probe ran into a rebuild, or FULL
+   */
+  private int findOrInsert(long[] s, long key, long version) {
+    int capacity = s.length / STRIDE;
+    long tag = key + 1;
+    int i = home(key, capacity);
+    int probes = 0;
+    while (probes < capacity) {
+      int base = i * STRIDE;
+      long kv = (long) SLOTS.getVolatile(s, base + KEY_VERSION);
+      if (kv == EMPTY) {
+        if (SLOTS.compareAndSet(s, base + KEY_VERSION, EMPTY, (tag << 32) | (version & VERSION_MASK))) {
+          size.incrementAndGet();
+          return i;
+        }
+        continue; // lost the race for this slot, look at it again
+      }
+      if (kv == FROZEN_EMPTY) {
+        return FROZEN_SLOT;
+      }
+      if ((kv >>> 32) == tag) {
+        return i;
+      }
+      i = i + 1 == capacity ? 0 : i + 1;
+      probes++;
+    }
+    return FULL;
+  }
+
+  /**
+   * Take the spin bit of the slot.
+   *
+   * @return the control word before, or -1 if the slot is frozen
+   */
+  private static long acquire(long[] s, int base) {
+    while (true) {
+      long c = (long) SLOTS.getVolatile(s, base + CONTROL);
+      if ((c & FROZEN) != 0) {
+        return -1;
+      }
+      if ((c & SPIN) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      if (SLOTS.compareAndSet(s, base + CONTROL, c, c | SPIN)) {
+        return c;
+      }
+    }
+  }
+
+  /** @param flags the waiters and pinned bits the slot keeps */
+  private static void release(long[] s, int base, int[] state, long flags) {
+    SLOTS.setVolatile(
+        s,
+        base + TIDS,
+        ((long) state[MAX_TID] << 32) | (state[MIN_WRITE_WAIT_TID] & 0xffffffffL));
+    SLOTS.setVolatile(
+        s,
+        base + CONTROL,
+        REFERENCED
+            | flags
+            | ((long) state[TYPE] << TYPE_SHIFT)
+            | (state[COUNT] & COUNT_MASK));
+  }
+
+  private void maybeRebuild(long[] s) {
+    if ((long) size.get() * LOAD_DENOMINATOR > (long) (s.length / STRIDE) * LOAD_NUMERATOR) {
+      rebuild(s, false);
+    }
+  }
+
+  private void awaitRebuild(long[] s) {
+    while (slots == s) {
+      // the rebuilding thread holds the lock until the new table is published
+      resizeLock.lock();
+      resizeLock.unlock();
+    }
+  }
+
+  /**
+   * Freeze every slot of s, drop the cold entries and publish a table sized from the survivors.
+   *
+   * @param force wait for a concurrent rebuild instead of leaving the work to it
+   */
+  private void rebuild(long[] s, boolean force) {
+    if (force) {
+      resizeLock.lock();
+    } else if (!resizeLock.tryLock()) {
+      return;
+    }
+    try {
+      if (slots != s) {
+        return; // someone else rebuilt it meanwhile
+      }
+      int capacity = s.length / STRIDE;
+      int live = 0;
+      for (int i = 0; i < capacity; i++) {
+        if (freeze(s, i * STRIDE)) {
+          live++;
+        }
+      }
+      // a full table of live entries must still grow
+      int newCapacity = capacityFor(Math.max(live, force ? capacity : 0));
+      long[] next = new long[newCapacity * STRIDE];
+      int copied = 0;
+      for (int i = 0; i < capacity; i++) {
+        int base = i * STRIDE;
+        long kv = (long) SLOTS.getVolatile(s, base + KEY_VERSION);
+        if (kv == FROZEN_EMPTY) {
+          continue;
+        }
+        long c = (long) SLOTS.getVolatile(s, base + CONTROL);
+        if (!retain(c)) {
+          continue;
+        }
+        long key = (kv >>> 32) - 1;
+        int j = home(key, newCapacity);
+        while (next[j * STRIDE + KEY_VERSION] != EMPTY) {
+          j = j + 1 == newCapacity ? 0 : j + 1;
+        }
+        next[j * STRIDE + KEY_VERSION] = kv;
+        next[j * STRIDE + CONTROL] = c & ~(SPIN | FROZEN | REFERENCED);
+        next[j * STRIDE + TIDS] = (long) SLOTS.getVolatile(s, base + TIDS);
+        copied++;
+      }
+      size.set(copied);
+      slots = next;
+    } finally {
+      resizeLock.unlock();
+    }
+  }
+
+  /**
+   * Stop all further changes of the slot.
+   *
+   * @return whether the slot holds an entry that survives the rebuild
+   */
+  private boolean freeze(long[] s, int base) {
+    while (true) {
+      long kv = (long) SLOTS.getVolatile(s, base + KEY_VERSION);
+      if (kv == EMPTY) {
+        if (SLOTS.compareAndSet(s, base + KEY_VERSION, EMPTY, FROZEN_EMPTY)) {
+          return false;
+        }
+        continue;
+      }
+      long c = (long) SLOTS.getVolatile(s, base + CONTROL);
+      if ((c & SPIN) != 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+      if (SLOTS.compareAndSet(s, base + CONTROL, c, c | SPIN | FROZEN)) {
+        return retain(c);
+      }
+    }
+  }
+
+  private static boolean retain(long c) {
+    return (c & (COUNT_MASK | REFERENCED | PINNED)) != 0;
+  }
+
+  private static final class Waiter {
+    static final int WAITING = 0;
+    static final int GRANTED = 1;
+    static final int ABORTED = 2;
+
+    final Thread thread = Thread.currentThread();
+    final int tid;
+    final CCType ccType;
+    volatile int state = WAITING;
+
+    Waiter(int tid, CCType ccType) {
+      this.tid = tid;
+      this.ccType = ccType;
+    }
+  }
+
+  /**
+   * Parked writers of one key, ordered by transaction id. Guarded by its own lock rather than its
+   * monitor: evaluating it may wait for a rebuild, which would pin the carrier of a virtual thread.
+   */
+  private static final class WaitQueue {
+    final ReentrantLock lock = new ReentrantLock();
+    boolean removed = false;
+    private final LinkedList<Waiter> waiters = new LinkedList<>();
+
+    void add(Waiter waiter) {
+      ListIterator<Waiter> it = waiters.listIterator();
+      while (it.hasNext()) {
+        if (it.next().tid > waiter.tid) {
+          it.previous();
+          break;
+        }
+      }
+      it.add(waiter);
+    }
+
+    void remove(Waiter waiter) {
+      waiters.remove(waiter);
+    }
+
+    Iterator<Waiter> iterator() {
+      return waiters.iterator();
+    }
+
+    boolean isEmpty() {
+      return waiters.isEmpty();
+    }
+
+    int minTid() {
+      return waiters.getFirst().tid;
+    }
+  }
+}
@@ -10,6 +10,8 @@ import org.dbiir.txnsails.common.TemplateSQL;
 import org.dbiir.txnsails.common.constants.SmallBankConstants;
 import org.dbiir.txnsails.common.constants.TPCCConstants;
 import org.dbiir.txnsails.common.constants.YCSBConstants;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.execution.utils.StatementParams;
 
 @Getter
 @Setter
@@ -35,14 +37,14 @@ public class ValidationMeta {
   @Getter
   private RangeValidationLock rangeValidationLock;
 
-  public void addRuntimeArgs(List<String> args, int offset) {
+  public void addRuntimeArgs(StatementParams params) {
     List<ConditionInfo> whereConditionInfos = templateSQL.getWherePlaceholders();
-    if (args.size() - offset < whereConditionInfos.size()) {
+    if (params.size() < whereConditionInfos.size()) {
       idForValidation = -1;
       return;
     }
     for (ConditionInfo conditionInfo : whereConditionInfos) {
-      int v = Integer.parseInt(args.get(offset + conditionInfo.getPlaceholderIndex()));
+      int v = params.getInt(conditionInfo.getPlaceholderIndex());
       uniqueKeys.put(conditionInfo.getUpperCaseColumnName(), v);
       keyList.add(v);
     }
@@ -51,7 +53,7 @@ public class ValidationMeta {
       switch (ValidationMetaTable.getInstance().getWorkload()) {
         case "smallbank":
         case "tpcc":
-          System.out.println("Range validation lock is not supported for smallbank and tpcc workloads.");
+          Log.debug("range validation lock is not supported", "workload", ValidationMetaTable.getInstance().getWorkload());
           break;
         case "ycsb":
           rangeValidationLock = YCSBConstants.getRangeValidationLock(this.keyList, this.templateSQL);
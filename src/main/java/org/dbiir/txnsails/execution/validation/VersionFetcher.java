@@ -0,0 +1,200 @@
+package org.dbiir.txnsails.execution.validation;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Fetches the latest versions of keys missing from the hot version cache in batches. Committers
+ * only enqueue their keys; whoever finds the table idle becomes its leader and drains every pending
+ * key with one query per batch, so a cold key costs one round trip per batch instead of one per
+ * key, and concurrent committers asking for the same key share its fetch.
+ */
+public class VersionFetcher {
+  private static final int MAX_BATCH = 256;
+
+  private final String workload;
+  private final HashMap<String, TableFetcher> tables = new HashMap<>(8);
+
+  public VersionFetcher(String workload, List<Connection> connections, List<Lock> guards) {
+    this.workload = workload;
+    for (String table : WorkloadKeys.hashSizes(workload).keySet()) {
+      String[] keyColumns = WorkloadKeys.keyColumns(workload, table);
+      if (keyColumns == null) {
+        continue;
+      }
+      // spread the tables over the auxiliary connections
+      int idx = tables.size() % connections.size();
+      tables.put(
+          table, new TableFetcher(table, keyColumns, connections.get(idx), guards.get(idx)));
+    }
+  }
+
+  /** Enqueue the key, the returned future completes with its version or -1 if the row is gone. */
+  public CompletableFuture<Integer> fetch(String table, int key) {
+    TableFetcher fetcher = tables.get(table);
+    if (fetcher == null) {
+      return CompletableFuture.completedFuture(-1);
+    }
+    return fetcher.pending.computeIfAbsent(key, k -> new CompletableFuture<>());
+  }
+
+  /** Wait for a future returned by {@link #fetch}, draining the pending keys if nobody else does. */
+  public int await(String table, CompletableFuture<Integer> future) throws SQLException {
+    TableFetcher fetcher = tables.get(table);
+    if (fetcher != null && !future.isDone()) {
+      fetcher.drive();
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while fetching the version of " + table, "500", 0);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      String msg = "Failed to fetch the versions of " + table + ": " + cause.getMessage();
+      throw new SQLException(msg, "500", 0, cause);
+    }
+  }
+
+  private final class TableFetcher {
+    private final String table;
+    private final String[] keyColumns;
+    private final Connection conn;
+    private final Lock guard;
+    private final String sql;
+    private final ConcurrentHashMap<Integer, CompletableFuture<Integer>> pending =
+        new ConcurrentHashMap<>();
+    private final AtomicBoolean leader = new AtomicBoolean(false);
+    private PreparedStatement stmt; // guarded by the connection guard
+
+    TableFetcher(String table, String[] keyColumns, Connection conn, Lock guard) {
+      this.table = table;
+      this.keyColumns = keyColumns;
+      this.conn = conn;
+      this.guard = guard;
+      this.sql = buildSQL(table, keyColumns);
+    }
+
+    /*
+     * A key enqueued while the leader is busy is seen by its recheck after it steps down, so a
+     * committer that lost the leadership can simply block on its future.
+     */
+    void drive() {
+      while (!pending.isEmpty() && leader.compareAndSet(false, true)) {
+        try {
+          while (!pending.isEmpty()) {
+            fetchBatch();
+          }
+        } finally {
+          leader.set(false);
+        }
+      }
+    }
+
+    private void fetchBatch() {
+      List<Integer> keys = new ArrayList<>(Math.min(pending.size(), MAX_BATCH));
+      List<CompletableFuture<Integer>> futures = new ArrayList<>(keys.size());
+      Iterator<Map.Entry<Integer, CompletableFuture<Integer>>> it = pending.entrySet().iterator();
+      while (it.hasNext() && keys.size() < MAX_BATCH) {
+        Map.Entry<Integer, CompletableFuture<Integer>> entry = it.next();
+        keys.add(entry.getKey());
+        futures.add(entry.getValue());
+        it.remove();
+      }
+
+      int[] versions = new int[keys.size()];
+      try {
+        query(keys, versions);
+      } catch (SQLException | RuntimeException ex) {
+        for (CompletableFuture<Integer> future : futures) {
+          future.completeExceptionally(ex);
+        }
+        return;
+      }
+      for (int i = 0; i < keys.size(); i++) {
+        if (versions[i] >= 0) {
+          ValidationMetaTable.getInstance().updateHotspotVersion(table, keys.get(i), versions[i]);
+        }
+        futures.get(i).complete(versions[i]);
+      }
+    }
+
+    private void query(List<Integer> keys, int[] versions) throws SQLException {
+      Integer[][] columns = new Integer[keyColumns.length][keys.size()];
+      for (int i = 0; i < keys.size(); i++) {
+        int[] values = WorkloadKeys.decode(workload, table, keys.get(i));
+        for (int c = 0; c < keyColumns.length; c++) {
+          columns[c][i] = values[c];
+        }
+      }
+      Arrays.fill(versions, -1);
+
+      guard.lock();
+      try {
+        if (stmt == null) {
+          stmt = conn.prepareStatement(sql);
+        }
+        Array[] arrays = new Array[keyColumns.length];
+        for (int c = 0; c < keyColumns.length; c++) {
+          arrays[c] = conn.createArrayOf("integer", columns[c]);
+          stmt.setArray(c + 1, arrays[c]);
+        }
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            int idx = (int) res.getLong(1) - 1;
+            if (versions[idx] < 0) {
+              versions[idx] = res.getInt(2);
+            }
+          }
+        } finally {
+          for (Array array : arrays) {
+            array.free();
+          }
+        }
+      } finally {
+        guard.unlock();
+      }
+    }
+  }
+
+  /*
+   * Composite keys rule out a plain "= ANY(?)", so the keys are unnested column by column and
+   * joined back to the table; the ordinality maps every row to its position in the batch.
+   */
+  private static String buildSQL(String table, String[] keyColumns) {
+    StringBuilder params = new StringBuilder();
+    StringBuilder aliases = new StringBuilder();
+    StringBuilder conditions = new StringBuilder();
+    for (int c = 0; c < keyColumns.length; c++) {
+      if (c > 0) {
+        params.append(", ");
+        conditions.append(" AND ");
+      }
+      params.append("?::int[]");
+      aliases.append("k").append(c).append(", ");
+      conditions.append("t.").append(keyColumns[c]).append(" = q.k").append(c);
+    }
+    return "SELECT q.ord, t.vid FROM "
+        + table
+        + " t JOIN unnest("
+        + params
+        + ") WITH ORDINALITY AS q("
+        + aliases
+        + "ord) ON "
+        + conditions;
+  }
+}
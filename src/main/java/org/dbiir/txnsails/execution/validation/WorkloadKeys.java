@@ -0,0 +1,47 @@
+package org.dbiir.txnsails.execution.validation;
+
+import java.util.Map;
+import org.dbiir.txnsails.common.constants.SmallBankConstants;
+import org.dbiir.txnsails.common.constants.TPCCConstants;
+import org.dbiir.txnsails.common.constants.YCSBConstants;
+
+/** Dispatches the key layout of the validated tables to the constants of the workload. */
+final class WorkloadKeys {
+  private WorkloadKeys() {}
+
+  static Map<String, Integer> hashSizes(String workload) {
+    return switch (workload) {
+      case "ycsb" -> YCSBConstants.TABLENAME_TO_HASH_SIZE;
+      case "smallbank" -> SmallBankConstants.TABLENAME_TO_HASH_SIZE;
+      case "tpcc" -> TPCCConstants.TABLENAME_TO_HASH_SIZE;
+      default -> Map.of();
+    };
+  }
+
+  static String[] keyColumns(String workload, String table) {
+    return switch (workload) {
+      case "ycsb" -> YCSBConstants.getKeyColumns(table);
+      case "smallbank" -> SmallBankConstants.getKeyColumns(table);
+      case "tpcc" -> TPCCConstants.getKeyColumns(table);
+      default -> null;
+    };
+  }
+
+  static int[] decode(String workload, String table, int id) {
+    return switch (workload) {
+      case "ycsb" -> YCSBConstants.decodeValidationId(table, id);
+      case "smallbank" -> SmallBankConstants.decodeValidationId(table, id);
+      case "tpcc" -> TPCCConstants.decodeValidationId(table, id);
+      default -> throw new IllegalStateException("Unknown workload: " + workload);
+    };
+  }
+
+  static int encode(String workload, String table, int[] keys) {
+    return switch (workload) {
+      case "ycsb" -> YCSBConstants.encodeValidationId(table, keys);
+      case "smallbank" -> SmallBankConstants.encodeValidationId(table, keys);
+      case "tpcc" -> TPCCConstants.encodeValidationId(table, keys);
+      default -> throw new IllegalStateException("Unknown workload: " + workload);
+    };
+  }
+}
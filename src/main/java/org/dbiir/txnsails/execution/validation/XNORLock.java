@@ -4,7 +4,9 @@ import java.sql.SQLException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import lombok.Getter;
 import org.dbiir.txnsails.common.types.LockStrategyType;
@@ -43,39 +45,44 @@ public class XNORLock {
 
   public void tryLock(long transactionId, LockType type) throws SQLException {
     lock.lock();
-    try {
-      if (!waitList.isEmpty() || !tolerate(this.type, type)) {
-        if (strategy == LockStrategyType.NO_WAIT) {
-          lock.unlock();
-          String msg = "Abort due to no wait, transaction id: " + transactionId;
-          throw new SQLException(msg, "500", 0);
-        }
-        if (!admitByWaitDieStrategy(transactionId)) {
-          lock.unlock();
-          String msg = "Abort due to wait die, transaction id: " + transactionId;
-          throw new SQLException(msg, "500", 0);
-        }
-        LockEntry entry = new LockEntry(transactionId, type);
-        waitList.add(entry);
+    if (!waitList.isEmpty() || !tolerate(this.type, type)) {
+      if (strategy == LockStrategyType.NO_WAIT) {
+        lock.unlock();
+        String msg = "Abort due to no wait, transaction id: " + transactionId;
+        throw new SQLException(msg, "500", 0);
+      }
+      if (!admitByWaitDieStrategy(transactionId)) {
         lock.unlock();
-        long startTime = System.currentTimeMillis();
-        while (!entry.isGrantee()) {
-          Thread.sleep(0, 1000);
-          if (System.currentTimeMillis() - startTime > lockWaitTimeout) {
-            lock.lock();
+        String msg = "Abort due to wait die, transaction id: " + transactionId;
+        throw new SQLException(msg, "500", 0);
+      }
+      LockEntry entry = new LockEntry(transactionId, type);
+      waitList.add(entry);
+      lock.unlock();
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lockWaitTimeout);
+      while (!entry.isGrantee()) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0 || Thread.interrupted()) {
+          lock.lock();
+          try {
+            if (entry.isGrantee()) {
+              // granted while timing out
+              return;
+            }
             waitList.removeIf(e -> e.getTransactionId() == transactionId);
+          } finally {
             lock.unlock();
-            String msg = "Abort due to wait die and timeout, transaction id: " + transactionId;
-            throw new SQLException(msg, "500", 0);
           }
+          String msg = "Abort due to wait die and timeout, transaction id: " + transactionId;
+          throw new SQLException(msg, "500", 0);
         }
-      } else {
-        this.type = type;
-        lockList.add(new LockEntry(transactionId, type, true));
-        lock.unlock();
+        // woken up by the release that grants the entry
+        LockSupport.parkNanos(this, left);
       }
-    } catch (InterruptedException e) {
-      throw new RuntimeException(e);
+    } else {
+      this.type = type;
+      lockList.add(new LockEntry(transactionId, type, true));
+      lock.unlock();
     }
   }
 
@@ -94,6 +101,7 @@ public class XNORLock {
             lockList.add(llock);
             waitListIterator.remove();
             llock.setGrantee(true);
+            LockSupport.unpark(llock.getThread());
           } else {
             break;
           }
@@ -0,0 +1,94 @@
+package org.dbiir.txnsails.parse;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * A PostgreSQL lexer and parser per thread, reused from statement to statement instead of built
+ * for every one. A statement is parsed with SLL prediction and bails out at the first error
+ * first, which the plain OLTP statements of the templates pass much faster than full LL; only a
+ * statement SLL cannot parse is parsed again with LL and the default error recovery, which
+ * returns the same tree as a single LL parse.
+ *
+ * <p>The grammar knows PostgreSQL's $n parameters but not JDBC's ?, so {@link #parse} numbers
+ * the placeholders before parsing.
+ */
+public final class ReusablePostgreSQLParser {
+  private static final ThreadLocal<ReusablePostgreSQLParser> LOCAL =
+      ThreadLocal.withInitial(ReusablePostgreSQLParser::new);
+
+  private final PostgreSQLLexer lexer = new PostgreSQLLexer(CharStreams.fromString(""));
+  private final CommonTokenStream tokens = new CommonTokenStream(lexer);
+  private final PostgreSQLParser parser = new PostgreSQLParser(tokens);
+  private final BailErrorStrategy bail = new BailErrorStrategy();
+  private final DefaultErrorStrategy recover = new DefaultErrorStrategy();
+
+  private ReusablePostgreSQLParser() {}
+
+  /** @return the tree of the root rule of sql, whose ? placeholders are parsed as $1, $2, ... */
+  public static ParseTree parse(String sql) {
+    return LOCAL.get().root(numberParameters(sql));
+  }
+
+  private ParseTree root(String sql) {
+    reset(sql);
+    lexer.removeErrorListeners();
+    parser.removeErrorListeners();
+    parser.setErrorHandler(bail);
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return parser.root();
+    } catch (ParseCancellationException e) {
+      reset(sql);
+      lexer.addErrorListener(ConsoleErrorListener.INSTANCE);
+      parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+      parser.setErrorHandler(recover);
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return parser.root();
+    }
+  }
+
+  private void reset(String sql) {
+    lexer.setInputStream(CharStreams.fromString(sql));
+    lexer.tags.clear();
+    tokens.setTokenSource(lexer);
+    parser.setTokenStream(tokens);
+  }
+
+  /** Replace the ? outside of literals, quoted identifiers and comments by $1, $2, ... */
+  static String numberParameters(String sql) {
+    if (sql.indexOf('?') < 0) {
+      return sql;
+    }
+    StringBuilder builder = new StringBuilder(sql.length() + 8);
+    int parameter = 0;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        end = end < 0 ? sql.length() : end;
+        builder.append(sql, i, end);
+        i = end - 1;
+        continue;
+      } else if (c == '?') {
+        builder.append('$').append(++parameter);
+        continue;
+      }
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
@@ -2,24 +2,39 @@ package org.dbiir.txnsails.worker;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import lombok.Getter;
 import lombok.Setter;
 import org.dbiir.txnsails.common.types.CCType;
 import org.dbiir.txnsails.execution.WorkloadConfiguration;
+import org.dbiir.txnsails.execution.utils.Log;
 
 public class Adapter {
   private static final Adapter INSTANCE;
-  @Setter private boolean used = false; // true if DYNAMIC
-  private CCType currentCCType = CCType.SER;
-  @Getter private CCType nextCCType;
-  @Getter private CCType transitionLockCCType = CCType.NUM_CC;
+  private static final long SWITCH_TIMEOUT = 1000; // ms, per phase
+  @Setter @Getter private boolean used = false; // true if DYNAMIC
+  private volatile CCType currentCCType = CCType.SER;
+  @Getter private volatile CCType nextCCType;
+  @Getter private volatile CCType transitionLockCCType = CCType.NUM_CC;
   private final List<OnlineWorker> workers;
   @Setter private WorkloadConfiguration workConf;
-  @Getter private boolean inSwitchPhase;
-  @Getter private boolean allWorkersReadyForSwitch;
+  @Getter private volatile boolean inSwitchPhase;
+  @Getter private volatile boolean allWorkersReadyForSwitch;
   private final Lock guardForWorkers;
+  private long epoch = 0; // guarded by guardForWorkers
+  private volatile Switch pendingSwitch; // the switch in progress
+  @Getter private volatile Switch appliedSwitch; // the last switch whose isolation level applies
+
+  /**
+   * One isolation level switch. Every worker registered when it starts counts down each latch
+   * once: ready when its validations use the transition lock manner, finish when its connection
+   * uses the target isolation level or will before its next transaction.
+   */
+  record Switch(long epoch, CCType target, CountDownLatch ready, CountDownLatch finish) {}
 
   static {
     INSTANCE = new Adapter();
@@ -41,12 +56,24 @@ public class Adapter {
 
   public void addOnlineWorker(OnlineWorker worker) {
     guardForWorkers.lock();
+    // not counted by a switch in progress, it adopts the applied isolation level when it begins
+    worker.readyEpoch.set(epoch);
+    worker.finishEpoch.set(epoch);
     this.workers.add(worker);
     guardForWorkers.unlock();
   }
 
   public void removeOnlineWorker(int id) {
     guardForWorkers.lock();
+    for (OnlineWorker worker : workers) {
+      if (worker.getId() == id) {
+        Switch s = pendingSwitch;
+        if (s != null) {
+          acknowledge(worker.readyEpoch, s.epoch(), s.ready());
+          acknowledge(worker.finishEpoch, s.epoch(), s.finish());
+        }
+      }
+    }
     workers.removeIf(w -> w.getId() == id);
     guardForWorkers.unlock();
   }
@@ -62,100 +89,155 @@ public class Adapter {
       /*
        * 1. (not necessary) set the isolation level in benchmark module
        * 2. notify all workers the new isolation to block the transaction that no enters validation: transition phase
-       * 3. travel through the worker list to determine whether all workers finish the switch
+       * 3. wait until every worker acknowledged the switch, idle workers are acknowledged at once
        * 4. notify all workers to use the validation in new isolation level
        */
-      System.out.println("=====*===== Switch from " + currentCCType + " to " + nextCCType);
+      Log.info("switch started", "from", currentCCType, "to", nextCCType);
       long startTime = System.currentTimeMillis();
+      List<OnlineWorker> participants;
+      Switch s;
+      guardForWorkers.lock();
+      try {
+        participants = new ArrayList<>(workers);
+        s =
+            new Switch(
+                ++epoch,
+                ccType,
+                new CountDownLatch(participants.size()),
+                new CountDownLatch(participants.size()));
+      } finally {
+        guardForWorkers.unlock();
+      }
       setTransitionLockCCType();
+      pendingSwitch = s;
       inSwitchPhase = true;
-      while (!allSwitchPhaseReady() && !Thread.interrupted()) {
-        try {
-          Thread.sleep(1);
-        } catch (InterruptedException e) {
-          System.out.println("Thread interrupted");
+      // a worker outside a transaction validates its next one under the transition lock manner
+      for (OnlineWorker worker : participants) {
+        if (!worker.isInTransaction()) {
+          acknowledge(worker.readyEpoch, s.epoch(), s.ready());
         }
       }
+      if (!await(s.ready())) {
+        cancelSwitch(s);
+        Log.warn(
+            "switch cancelled",
+            "to", ccType,
+            "notReady", s.ready().getCount(),
+            "timeoutMs", SWITCH_TIMEOUT);
+        return;
+      }
+      appliedSwitch = s;
       allWorkersReadyForSwitch = true;
       long endTime = System.currentTimeMillis();
-      System.out.println(
-          "=====*===== All workers ready for transition" + (endTime - startTime) + "ms");
-      while (!allSwitchFinish() && !Thread.interrupted()) {
-        try {
-          Thread.sleep(1);
-        } catch (InterruptedException e) {
-          System.out.println("Thread interrupted");
+      Log.info("switch ready", "epoch", s.epoch(), "ms", endTime - startTime);
+      // a worker outside a transaction switches its connection before it begins the next one
+      for (OnlineWorker worker : participants) {
+        if (!worker.isInTransaction()) {
+          acknowledge(worker.finishEpoch, s.epoch(), s.finish());
+        }
+      }
+      if (!await(s.finish())) {
+        // the connections of other workers switched already, abort the transactions left behind
+        int committing = 0;
+        for (OnlineWorker worker : participants) {
+          if (worker.finishEpoch.get() >= s.epoch()) {
+            continue;
+          }
+          if (worker.abortForSwitch()) {
+            // it can no longer commit under the previous isolation level
+            Log.warn("switch aborts a transaction", "worker", worker.getId());
+            acknowledge(worker.finishEpoch, s.epoch(), s.finish());
+          } else {
+            committing++;
+          }
+        }
+        // a transaction past its validation does not wait for its client, give it one more phase
+        if (committing > 0 && !await(s.finish())) {
+          Log.warn(
+              "switch finished before commits",
+              "epoch", s.epoch(),
+              "notFinished", s.finish().getCount());
         }
       }
-      currentCCType = nextCCType;
+      currentCCType = ccType;
       inSwitchPhase = false;
       allWorkersReadyForSwitch = false;
-      resetWorkerStatus();
-      endTime = System.currentTimeMillis();
-      System.out.println(
-          "=====*===== All workers finish transition" + (endTime - startTime) + "ms");
+      pendingSwitch = null;
       endTime = System.currentTimeMillis();
-      System.out.println("=====*===== Switch phase takes " + (endTime - startTime) + "ms");
+      Log.info("switch finished", "epoch", s.epoch(), "to", ccType, "ms", endTime - startTime);
       nextCCType = CCType.NUM_CC;
     }
   }
 
-  public void setNextCCType(String ccType) {
-    ccType = ccType.trim();
-    if (ccType.equals("0")) {
-      this.setNextCCType(CCType.SER);
-    } else if (ccType.equals("1")) {
-      this.setNextCCType(CCType.SI_TAILOR);
-    } else if (ccType.equals("2")) {
-      this.setNextCCType(CCType.RC_TAILOR);
-    } else {
-      System.out.println("ERROR");
+  /** Called by a worker that reached its validation, blocks until every worker is ready. */
+  void awaitSwitchReady(OnlineWorker worker) {
+    Switch s = pendingSwitch;
+    if (s == null || allWorkersReadyForSwitch) {
+      return;
+    }
+    acknowledge(worker.readyEpoch, s.epoch(), s.ready());
+    try {
+      // released once all workers are ready or the switch is cancelled
+      s.ready().await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private boolean allSwitchFinish() {
-    guardForWorkers.lock();
-    for (OnlineWorker worker : workers) {
-      if (!worker.isSwitchFinish()) {
-        try {
-          System.out.println(worker.toString() + " is not finish");
-          Thread.sleep(5);
-        } catch (InterruptedException e) {
-          guardForWorkers.unlock();
-          System.out.println("Thread.sleep() interrupted");
-        }
-        guardForWorkers.unlock();
-        return false;
+  /** Called by a worker that finished a transaction, it does not wait for the others. */
+  void acknowledgeReady(OnlineWorker worker) {
+    Switch s = pendingSwitch;
+    if (s != null) {
+      acknowledge(worker.readyEpoch, s.epoch(), s.ready());
+    }
+  }
+
+  /** Called by a worker once its connection uses the isolation level of the switch. */
+  void acknowledgeFinish(OnlineWorker worker, Switch s) {
+    acknowledge(worker.finishEpoch, s.epoch(), s.finish());
+  }
+
+  // the worker or the adapter on its behalf, whoever comes first counts down the latch
+  private static void acknowledge(AtomicLong acked, long epoch, CountDownLatch latch) {
+    long prev;
+    while ((prev = acked.get()) < epoch) {
+      if (acked.compareAndSet(prev, epoch)) {
+        latch.countDown();
+        return;
       }
     }
-    guardForWorkers.unlock();
-    return true;
   }
 
-  private void resetWorkerStatus() {
-    for (OnlineWorker worker : workers) {
-      worker.setSwitchPhaseReady(false);
-      worker.setSwitchFinish(false);
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(SWITCH_TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
     }
   }
 
-  private boolean allSwitchPhaseReady() {
-    // ready if its validation is
-    guardForWorkers.lock();
-    for (OnlineWorker worker : workers) {
-      if (!worker.isSwitchPhaseReady()) {
-        try {
-          System.out.println(worker.toString() + " is not ready");
-          Thread.sleep(5);
-        } catch (InterruptedException e) {
-          guardForWorkers.unlock();
-        }
-        guardForWorkers.unlock();
-        return false;
-      }
+  // no connection switched yet, workers fall back to the current lock manner
+  private void cancelSwitch(Switch s) {
+    inSwitchPhase = false;
+    pendingSwitch = null;
+    nextCCType = CCType.NUM_CC;
+    while (s.ready().getCount() > 0) {
+      s.ready().countDown();
+    }
+  }
+
+  public void setNextCCType(String ccType) {
+    ccType = ccType.trim();
+    if (ccType.equals("0")) {
+      this.setNextCCType(CCType.SER);
+    } else if (ccType.equals("1")) {
+      this.setNextCCType(CCType.SI_TAILOR);
+    } else if (ccType.equals("2")) {
+      this.setNextCCType(CCType.RC_TAILOR);
+    } else {
+      Log.warn("unknown isolation level", "value", ccType);
     }
-    guardForWorkers.unlock();
-    return true;
   }
 
   // set out the lock manner in switch phase
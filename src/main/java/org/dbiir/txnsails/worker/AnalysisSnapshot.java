@@ -0,0 +1,105 @@
+package org.dbiir.txnsails.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import org.dbiir.txnsails.common.TemplateSQL;
+
+/**
+ * The registered templates with their analysis result on disk, so a restarted server is ready
+ * without parsing and analyzing the templates again. The snapshot keeps the register calls in
+ * order: the calls of the clients after a restart are matched against them, and their hash tells
+ * whether the analysis of the snapshot is the one of the registered templates. The schema the
+ * placeholders were typed with is hashed as well, a snapshot of another schema is not restored.
+ *
+ * @param typeGenerator the one-hot type the next template name gets
+ */
+public record AnalysisSnapshot(
+    int version,
+    String schemaHash,
+    String templateHash,
+    int typeGenerator,
+    List<Registration> registrations,
+    List<Template> templates) {
+  public static final int VERSION = 2;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * A register call of a client.
+   *
+   * @param op -1 for the name of a template, otherwise the operation of the sql
+   * @param skipIdx the index of the sql it writes the record of, -1 for none
+   * @param result the index returned to the client
+   */
+  public record Registration(
+      String template, int op, String relation, String sql, int skipIdx, int result) {
+    boolean sameCall(Registration other) {
+      return template.equals(other.template)
+          && op == other.op
+          && Objects.equals(relation, other.relation)
+          && Objects.equals(sql, other.sql)
+          && skipIdx == other.skipIdx;
+    }
+
+    Registration withResult(int result) {
+      return new Registration(template, op, relation, sql, skipIdx, result);
+    }
+  }
+
+  public record Template(String name, int type, int id, List<TemplateSQL.Snapshot> sqls) {}
+
+  /** @return the SHA-256 of the calls, the results aside */
+  public static String hash(List<Registration> registrations) {
+    MessageDigest digest = sha256();
+    for (Registration registration : registrations) {
+      String call =
+          String.join(
+              "\0",
+              registration.template(),
+              String.valueOf(registration.op()),
+              String.valueOf(registration.relation()),
+              String.valueOf(registration.sql()),
+              String.valueOf(registration.skipIdx()));
+      digest.update(call.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  public static String hashFile(Path path) throws IOException {
+    return HexFormat.of().formatHex(sha256().digest(Files.readAllBytes(path)));
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Write to a file next to path first, a crash never leaves half a snapshot behind. */
+  public void write(Path path) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    try {
+      MAPPER.writeValue(temp.toFile(), this);
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  public static AnalysisSnapshot read(Path path) throws IOException {
+    return MAPPER.readValue(path.toFile(), AnalysisSnapshot.class);
+  }
+}
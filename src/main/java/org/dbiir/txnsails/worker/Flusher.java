@@ -9,6 +9,9 @@ import java.net.Socket;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.execution.predict.IsolationPredictor;
+import org.dbiir.txnsails.execution.sample.SampleSegmentWriter;
+import org.dbiir.txnsails.execution.utils.Log;
 import org.dbiir.txnsails.execution.validation.TransactionCollector;
 
 public class Flusher implements Runnable {
@@ -16,20 +19,39 @@ public class Flusher implements Runnable {
   private static final int port = 7654;
   private static final CCType[] types =
           new CCType[] {CCType.SER, CCType.SI_TAILOR, CCType.RC_TAILOR, CCType.DYNAMIC};
+  // the adapter reads a record before the next flush, older segments are deleted online
+  private static final int ONLINE_SEGMENTS = 2;
 
   private final String workload;
   @Setter private String outputFilePrefix;
   private final CCType ccType;
   private final boolean online;
+  private final boolean binary; // memory-mapped segments, or a text file per batch
+  private SampleSegmentWriter segmentWriter;
+  private final IsolationPredictor predictor; // null when the Python adapter predicts
   private final Socket socket;
-  private boolean use = false;
+  private final boolean use; // ask the Python adapter
 
-  public Flusher(String workload, String prefix, CCType ccType, boolean online) {
+  /**
+   * @param format "binary" for memory-mapped sample segments, "text" for a file per batch
+   * @param predictor "rule", "bayes" or "gnn" predict in the server, "python" asks the adapter
+   */
+  public Flusher(
+      String workload,
+      String prefix,
+      CCType ccType,
+      boolean online,
+      String format,
+      String predictor) {
     try {
       this.workload = workload;
       this.outputFilePrefix = prefix;
       this.ccType = ccType;
       this.online = online;
+      this.binary = !format.equalsIgnoreCase("text");
+      this.predictor = online ? IsolationPredictor.create(predictor, workload) : null;
+      this.use = online && this.predictor == null;
+      TransactionCollector.getInstance().getSampling().setBaseInterval(online ? 1000 : 10000);
       if (use && online) this.socket = new Socket(ip, port);
       else this.socket = new Socket();
       System.out.println(socket.getInetAddress() + ":" + socket.getPort());
@@ -38,6 +60,42 @@ public class Flusher implements Runnable {
     }
   }
 
+  /** @return "path,offset" of the record, null if it could not be written */
+  private String writeSegment() {
+    try {
+      if (segmentWriter == null) {
+        segmentWriter =
+            new SampleSegmentWriter(
+                outputFilePrefix,
+                SampleSegmentWriter.DEFAULT_SEGMENT_SIZE,
+                online ? ONLINE_SEGMENTS : 0);
+      }
+      SampleSegmentWriter.Location location =
+          segmentWriter.write(TransactionCollector.getInstance().getGraph());
+      return location.path() + "," + location.offset();
+    } catch (IOException ex) {
+      Log.error("writing the sample segment failed", ex);
+      return null;
+    }
+  }
+
+  /** @return the path of the new text sample file, null if it could not be written */
+  private String writeText(long timestamp, int batchSize) {
+    String fileName = outputFilePrefix + "sample_" + timestamp;
+    try (FileWriter fileWriter = new FileWriter(fileName, true)) {
+      for (int i = 0; i < batchSize; i++) {
+        fileWriter.write(i + ",");
+        fileWriter.write(TransactionCollector.getInstance().getTransactionNodeFeature(i));
+        fileWriter.write(TransactionCollector.getInstance().getTransactionEdgeFeature(i));
+        fileWriter.write("\n");
+      }
+    } catch (IOException ex) {
+      Log.error("writing the sample file failed", "file", fileName, ex);
+      return null;
+    }
+    return fileName;
+  }
+
   private boolean needFlush(CCType type) {
     for (CCType t : types) {
       if (type == t) return true;
@@ -48,44 +106,47 @@ public class Flusher implements Runnable {
   @SneakyThrows
   @Override
   public void run() {
-    while (!Thread.currentThread().isInterrupted()) {
-      if (TransactionCollector.getInstance().isNeedFlush() && needFlush(ccType)) {
-        long timestamp = System.currentTimeMillis();
-        String fileName = outputFilePrefix + "sample_" + timestamp;
-        System.out.println(fileName);
-        try (FileWriter fileWriter = new FileWriter(fileName, true)) {
-          for (int i = 0; i < TransactionCollector.TRANSACTION_BATCH; i++) {
-            fileWriter.write(i + ",");
-            fileWriter.write(TransactionCollector.getInstance().getTransactionNodeFeature(i));
-            fileWriter.write(TransactionCollector.getInstance().getTransactionEdgeFeature(i));
-            fileWriter.write("\n");
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        TransactionCollector collector = TransactionCollector.getInstance();
+        collector.getSampling().observe(collector.getOfferedSamples(), System.nanoTime());
+        if (collector.isNeedFlush() && needFlush(ccType)) {
+          long timestamp = System.currentTimeMillis();
+          // the workers keep sampling into the ring while this batch is written
+          int batchSize = collector.drainBatch();
+          collector.getSampling().onBatch(collector.getGraph());
+          if (predictor != null) {
+            long start = System.nanoTime();
+            CCType next = predictor.predict(TransactionCollector.getInstance().getGraph());
+            Log.info(
+                "prediction made", "result", next, "us", (System.nanoTime() - start) / 1000);
+            if (next != null) {
+              Adapter.getInstance().setNextCCType(next);
+            }
           }
-          fileWriter.close();
-          System.out.println("Content appended to the file.");
-        } catch (IOException ex) {
-          System.out.println("An error occurred: " + ex.getMessage());
+          // predicted in the server, nothing reads the samples
+          String sample =
+              online && !use ? null : binary ? writeSegment() : writeText(timestamp, batchSize);
+          if (online && use && sample != null) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out.println("online,predict," + sample);
+            Log.info("prediction requested", "sample", sample);
+            String data = in.readLine();
+            Log.info("prediction received", "result", data);
+            Adapter.getInstance().setNextCCType(data);
+          }
+          Log.debug("samples flushed", "ms", System.currentTimeMillis() - timestamp);
         }
-
-        TransactionCollector.getInstance().refreshMetas();
-        if (online && use) {
-          PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-          BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-          out.println("online,predict," + fileName);
-          System.out.println("Send the request to the server: " + "online,predict," + fileName);
-          String data = in.readLine();
-          System.out.println("Receive the prediction result: " + data);
-          Adapter.getInstance().setNextCCType(data);
+        try {
+          Thread.sleep(collector.getSampling().getPollMillis());
+        } catch (InterruptedException ignored) {
+          return;
         }
-        System.out.println("Flush time cost: " + (System.currentTimeMillis() - timestamp) + " ms");
       }
-      try {
-        if (online) {
-          Thread.sleep(1000);
-        } else {
-          Thread.sleep(10000);
-        }
-      } catch (InterruptedException ignored) {
-        return;
+    } finally {
+      if (segmentWriter != null) {
+        segmentWriter.close();
       }
     }
   }
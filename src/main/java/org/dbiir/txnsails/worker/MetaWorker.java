@@ -6,13 +6,20 @@ import com.sun.jna.Platform;
 import com.sun.jna.Pointer;
 import com.sun.jna.Memory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.dbiir.txnsails.analysis.ChordAbsentCycleFinder;
 import org.dbiir.txnsails.analysis.SchemaInfo;
@@ -21,6 +28,9 @@ import org.dbiir.txnsails.common.constants.SmallBankConstants;
 import org.dbiir.txnsails.common.constants.TPCCConstants;
 import org.dbiir.txnsails.common.constants.YCSBConstants;
 import org.dbiir.txnsails.common.types.DependencyType;
+import org.dbiir.txnsails.execution.TemplateFingerprintIndex;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.worker.AnalysisSnapshot.Registration;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -30,14 +40,19 @@ public class MetaWorker {
   private HashMap<String, TransactionTemplate> templates = new HashMap<>();
   private StaticDependencyGraph sdg = new StaticDependencyGraph();
   private AtomicInteger globalTransactionGenerator;
-  private int globalTemplateTypeGenerator;
+  private int globalTemplateTypeGenerator; // guarded by templateGuard
+  private final ReentrantLock templateGuard = new ReentrantLock();
   private final HashMap<String, Integer> relationEncodeMap = new HashMap<>();
   @Getter @Setter private SchemaInfo schema;
-
-  // create the shared netty context array
-  private static final int MAX_CLIENT_CONNECTIONS = 200;
-  private AtomicBoolean[] messageSignalPool = new AtomicBoolean[MAX_CLIENT_CONNECTIONS];
-  private String[] messagePool = new String[MAX_CLIENT_CONNECTIONS];
+  // the register calls of the clients in order, guarded by templateGuard
+  private final List<Registration> registrations = new ArrayList<>();
+  private AnalysisSnapshot restored; // while the calls of the clients agree with it
+  private Path snapshotPath; // null keeps no snapshot
+  private String schemaHash = "";
+  // raw sql to template sql, replaced once the analysis has finished and shared by all workers
+  @Getter
+  private volatile TemplateFingerprintIndex fingerprintIndex =
+          TemplateFingerprintIndex.build(List.of());
 
   // core affinity
   public static int MAX_AVAILABLE_CORES = 1;
@@ -51,22 +66,113 @@ public class MetaWorker {
     registerTable();
   }
 
-  public synchronized void registerTemplateName(String template_name) {
-    templates.computeIfAbsent(
-            template_name, k -> new TransactionTemplate(template_name, globalTemplateTypeGenerator));
-    globalTemplateTypeGenerator <<= 1;
+  public void registerTemplateName(String template_name) {
+    // not a monitor, a session on a virtual thread would pin its carrier while waiting
+    templateGuard.lock();
+    try {
+      Registration call = new Registration(template_name, -1, null, null, -1, 0);
+      if (matchRestored(call) != null) {
+        return;
+      }
+      templates.computeIfAbsent(
+              template_name,
+              k -> withTemplateId(new TransactionTemplate(template_name, globalTemplateTypeGenerator)));
+      globalTemplateTypeGenerator <<= 1;
+      registrations.add(call);
+    } finally {
+      templateGuard.unlock();
+    }
   }
 
   public int registerTemplateSQL(String template_name, int op, String relation, String sql) {
-    templates.computeIfAbsent(template_name, k -> new TransactionTemplate(template_name));
-    return templates.get(template_name).addTemplateSQL(op, relation, sql);
+    return registerTemplateSQL(template_name, op, relation, sql, -1);
   }
 
+  /** @param idx the sql whose record this one writes, -1 for none */
   public int registerTemplateSQL(
           String template_name, int op, String relation, String sql, int idx) {
-    templates.computeIfAbsent(template_name, k -> new TransactionTemplate(template_name));
-    templates.get(template_name).setSkipIndex(idx, true);
-    return templates.get(template_name).addTemplateSQL(op, relation, sql);
+    templateGuard.lock();
+    try {
+      Registration call = new Registration(template_name, op, relation, sql, idx, -1);
+      Registration restoredCall = matchRestored(call);
+      if (restoredCall != null) {
+        return restoredCall.result();
+      }
+      templates.computeIfAbsent(
+              template_name, k -> withTemplateId(new TransactionTemplate(template_name)));
+      if (idx >= 0) {
+        templates.get(template_name).setSkipIndex(idx, true);
+      }
+      int result = templates.get(template_name).addTemplateSQL(op, relation, sql);
+      registrations.add(call.withResult(result));
+      return result;
+    } finally {
+      templateGuard.unlock();
+    }
+  }
+
+  // the call of the snapshot the client repeats, null without a snapshot or if the calls diverge
+  private Registration matchRestored(Registration call) {
+    if (restored == null) {
+      return null;
+    }
+    int position = registrations.size();
+    List<Registration> expected = restored.registrations();
+    if (position < expected.size() && expected.get(position).sameCall(call)) {
+      registrations.add(expected.get(position));
+      return expected.get(position);
+    }
+    Log.warn("analysis snapshot is stale", "call", position, "template", call.template());
+    discardRestored();
+    return null;
+  }
+
+  // the templates of the snapshot are not the registered ones, register the calls so far again
+  private void discardRestored() {
+    List<Registration> calls = new ArrayList<>(registrations);
+    restored = null;
+    templates.clear();
+    registrations.clear();
+    globalTemplateTypeGenerator = 1;
+    for (Registration call : calls) {
+      if (call.op() < 0) {
+        registerTemplateName(call.template());
+      } else {
+        registerTemplateSQL(call.template(), call.op(), call.relation(), call.sql(), call.skipIdx());
+      }
+    }
+  }
+
+  // whether the restored analysis is the one of the registered templates
+  private boolean keepRestored() {
+    templateGuard.lock();
+    try {
+      if (restored == null) {
+        return false;
+      }
+      if (registrations.isEmpty()
+          || AnalysisSnapshot.hash(registrations).equals(restored.templateHash())) {
+        return true;
+      }
+      Log.warn("analysis snapshot is stale", "call", registrations.size(), "template", "");
+      discardRestored();
+      return false;
+    } finally {
+      templateGuard.unlock();
+    }
+  }
+
+  private TransactionTemplate withTemplateId(TransactionTemplate template) {
+    template.setId(templates.size());
+    return template;
+  }
+
+  /**
+   * @return the dense id of the template, which binary clients use instead of its name, or -1
+   */
+  public int getTemplateId(String template_name) {
+    TransactionTemplate template = templates.get(template_name);
+    return template == null ? -1 : template.getId();
   }
 
   public int getRelationType(String relationName) {
@@ -84,6 +190,11 @@ public class MetaWorker {
    * templates
    */
   public void analysisWorkload() {
+    if (keepRestored()) {
+      Log.info("analysis restored", "templates", templates.size());
+      indexTemplates();
+      return;
+    }
     // construct the static dependency graph
     this.sdg = new StaticDependencyGraph();
     for (Map.Entry<String, TransactionTemplate> entry : templates.entrySet()) {
@@ -93,15 +204,14 @@ public class MetaWorker {
 
     ChordAbsentCycleFinder finder = new ChordAbsentCycleFinder(sdg.getAdjacencyList());
     System.out.println("============ find cycles ============");
-    Set<StaticDependencyCycle> allCycles = finder.findAllCycles();
-    for (StaticDependencyCycle cycle : allCycles) {
+    // both anomalies need a RW dependency, cycles without one are not searched for
+    Set<StaticDependencyCycle> cyclesWithReadWrite = finder.findCyclesWithReadWrite();
+    for (StaticDependencyCycle cycle : cyclesWithReadWrite) {
       System.out.print("Cycle: ");
       System.out.println(cycle);
     }
 
     // analysis RC
-    System.out.println("============ find cycles ============");
-    Set<StaticDependencyCycle> cyclesWithReadWrite = findCyclesWithReadWrite(allCycles);
     // output the result
     System.out.println("====== RC ======");
     for (StaticDependencyCycle cycle : cyclesWithReadWrite) {
@@ -119,7 +229,7 @@ public class MetaWorker {
     // analysis SI
     System.out.println("====== SI ======");
     Set<StaticDependencyCycle> cyclesWithTwoConsecutiveReadWrite =
-            findCyclesWithTwoConsecutiveReadWrite(allCycles);
+            findCyclesWithTwoConsecutiveReadWrite(cyclesWithReadWrite);
     for (StaticDependencyCycle cycle : cyclesWithTwoConsecutiveReadWrite) {
       System.out.println(cycle);
     }
@@ -141,20 +251,16 @@ public class MetaWorker {
       }
     }
     System.out.println("========== find cycles end ==========");
+    indexTemplates();
   }
 
-  private Set<StaticDependencyCycle> findCyclesWithReadWrite(Set<StaticDependencyCycle> allCycles) {
-    Set<StaticDependencyCycle> result = new HashSet<>();
-
-    for (StaticDependencyCycle cycle : allCycles) {
-      for (StaticDependencyGraphEdge edge : cycle.edges()) {
-        if (edge.getType() == DependencyType.READ_WRITE) {
-          result.add(cycle);
-          break; // find a cycle with one RW
-        }
-      }
+  private void indexTemplates() {
+    templateGuard.lock();
+    try {
+      this.fingerprintIndex = TemplateFingerprintIndex.build(templates.values());
+    } finally {
+      templateGuard.unlock();
     }
-    return result;
   }
 
   private Set<StaticDependencyCycle> findCyclesWithTwoConsecutiveReadWrite(
@@ -175,14 +281,108 @@ public class MetaWorker {
     return result;
   }
 
+  public Collection<TransactionTemplate> getTemplates() {
+    return Collections.unmodifiableCollection(templates.values());
+  }
+
   public void cloneTemplatesAfterAnalysis(HashMap<String, TransactionTemplate> cloneTemplates) {
     for (Map.Entry<String, TransactionTemplate> entry : templates.entrySet()) {
       cloneTemplates.put(entry.getKey(), entry.getValue().clone());
     }
   }
 
+  /**
+   * Restore the templates and their analysis from the snapshot at path, which keeps the analysis
+   * of this server from now on. A missing snapshot, one of another version or schema is ignored.
+   *
+   * @return whether the templates were restored
+   */
+  public boolean restoreAnalysisResult(Path path, Path schemaFile) {
+    this.snapshotPath = path;
+    long start = System.nanoTime();
+    try {
+      this.schemaHash = AnalysisSnapshot.hashFile(schemaFile);
+      if (!Files.exists(path)) {
+        return false;
+      }
+      AnalysisSnapshot snapshot = AnalysisSnapshot.read(path);
+      if (snapshot.version() != AnalysisSnapshot.VERSION
+          || !schemaHash.equals(snapshot.schemaHash())
+          || !AnalysisSnapshot.hash(snapshot.registrations()).equals(snapshot.templateHash())) {
+        Log.warn("analysis snapshot ignored", "path", path, "version", snapshot.version());
+        return false;
+      }
+      templateGuard.lock();
+      try {
+        templates.clear();
+        registrations.clear();
+        for (AnalysisSnapshot.Template restoredTemplate : snapshot.templates()) {
+          TransactionTemplate template =
+                  new TransactionTemplate(restoredTemplate.name(), restoredTemplate.type());
+          template.setId(restoredTemplate.id());
+          for (TemplateSQL.Snapshot sql : restoredTemplate.sqls()) {
+            template.addTemplateSQL(TemplateSQL.restore(sql));
+          }
+          templates.put(template.getName(), template);
+        }
+        globalTemplateTypeGenerator = snapshot.typeGenerator();
+        restored = snapshot;
+      } finally {
+        templateGuard.unlock();
+      }
+      indexTemplates();
+      Log.info(
+              "analysis snapshot restored",
+              "path",
+              path,
+              "templates",
+              templates.size(),
+              "us",
+              (System.nanoTime() - start) / 1000);
+      return true;
+    } catch (IOException | RuntimeException e) {
+      Log.warn("analysis snapshot not restored", "path", path, "error", e.toString());
+      return false;
+    }
+  }
+
+  /** Keep the analysis for a restart, a restored one is already on disk. */
   public void flushAnalysisResult() {
-    // for failure recovery
+    List<AnalysisSnapshot.Template> snapshotTemplates = new ArrayList<>();
+    AnalysisSnapshot snapshot;
+    templateGuard.lock();
+    try {
+      if (snapshotPath == null || restored != null) {
+        return;
+      }
+      List<TransactionTemplate> ordered = new ArrayList<>(templates.values());
+      ordered.sort(Comparator.comparingInt(TransactionTemplate::getId));
+      for (TransactionTemplate template : ordered) {
+        List<TemplateSQL.Snapshot> sqls = new ArrayList<>(template.totalSQLs());
+        for (int i = 0; i < template.totalSQLs(); i++) {
+          sqls.add(template.getSQLTemplateByIndex(i).toSnapshot());
+        }
+        snapshotTemplates.add(
+                new AnalysisSnapshot.Template(
+                        template.getName(), template.getType(), template.getId(), sqls));
+      }
+      snapshot =
+              new AnalysisSnapshot(
+                      AnalysisSnapshot.VERSION,
+                      schemaHash,
+                      AnalysisSnapshot.hash(registrations),
+                      globalTemplateTypeGenerator,
+                      List.copyOf(registrations),
+                      snapshotTemplates);
+    } finally {
+      templateGuard.unlock();
+    }
+    try {
+      snapshot.write(snapshotPath);
+      Log.info("analysis snapshot written", "path", snapshotPath, "templates", snapshotTemplates.size());
+    } catch (IOException e) {
+      Log.error("analysis snapshot not written", "path", snapshotPath, "error", e.toString());
+    }
   }
 
   public static void setThreadAffinity(int coreId) {
@@ -211,36 +411,4 @@ public class MetaWorker {
   public static void setThreadAffinityMacOS(int coreId) {
     System.out.println("Setting thread affinity is not supported on macOS.");
   }
-
-  public void initExecutionContext(int idx) {
-    if (idx >= MAX_CLIENT_CONNECTIONS) {
-      String msg = "too many connectors";
-      System.out.println(msg);
-      throw new RuntimeException(msg);
-    }
-    messageSignalPool[idx] = new AtomicBoolean(false);
-    messagePool[idx] = "";
-  }
-
-  public String getExecutionMessage(int idx) {
-    if (!messageSignalPool[idx].get()) {
-      return null;
-    } else {
-      return messagePool[idx];
-    }
-  }
-
-  public void addExecutionMessage(int idx, String msg) {
-    if (messageSignalPool[idx].get()) {
-      String errMsg = "can not execute before previous execution complete";
-      throw new RuntimeException(errMsg);
-    }
-    messagePool[idx] = msg;
-    messageSignalPool[idx].set(true);
-  }
-
-  public void resetMessageSignal(int idx) {
-    assert messageSignalPool[idx].get();
-    messageSignalPool[idx].set(false);
-  }
 }
@@ -16,9 +16,10 @@ public class OfflineWorker {
   }
 
   /**
-   * We analyze the read/write dependencies on the relation granularity offline for now, which is
-   * sufficient for the benchmark used in our evaluation. A more fine-grained analysis as our future
-   * work.
+   * We analyze the read/write dependencies offline on the columns of a relation: a read and a
+   * write depend on each other if the write sets a column the read selects or filters on, and two
+   * writes if they may update a common row. Equality predicates on different literals separate
+   * the rows of two statements; placeholders may take any value.
    *
    * <p>args[0]: transaction template name args[1]: op name, Read or Write, Scan is included in Read
    * args[2]: table name, lowercase args[3]: sql args[4]: sql idx of previous read, write to the
@@ -2,22 +2,33 @@ package org.dbiir.txnsails.worker;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lombok.Getter;
 import lombok.Setter;
 import net.sf.jsqlparser.schema.Column;
-import org.apache.commons.lang3.StringUtils;
-import org.dbiir.txnsails.analysis.ConditionInfo;
-import org.dbiir.txnsails.analysis.SchemaInfo;
 import org.dbiir.txnsails.common.TemplateSQL;
 import org.dbiir.txnsails.common.TransactionStatus;
 import org.dbiir.txnsails.common.TransactionTemplate;
 import org.dbiir.txnsails.common.types.CCType;
-import org.dbiir.txnsails.common.types.ColumnType;
 import org.dbiir.txnsails.common.types.LockType;
+import org.dbiir.txnsails.execution.PreparedStatementCache;
+import org.dbiir.txnsails.execution.TemplateFingerprintIndex;
 import org.dbiir.txnsails.execution.WorkloadConfiguration;
-import org.dbiir.txnsails.execution.utils.RWRecord;
+import org.dbiir.txnsails.execution.pool.ConnectionProvider;
+import org.dbiir.txnsails.execution.pool.IsolationConnectionSet;
+import org.dbiir.txnsails.execution.pool.PooledConnection;
+import org.dbiir.txnsails.execution.pool.TransactionConnectionPool;
+import org.dbiir.txnsails.execution.sample.SampleRingBuffer;
+import org.dbiir.txnsails.execution.utils.Log;
+import org.dbiir.txnsails.execution.utils.ParameterBinder;
+import org.dbiir.txnsails.execution.utils.ResultWriter;
 import org.dbiir.txnsails.execution.utils.SQLStmt;
+import org.dbiir.txnsails.execution.utils.StatementParams;
+import org.dbiir.txnsails.execution.utils.TextResultWriter;
+import org.dbiir.txnsails.execution.utils.TextStatementParams;
 import org.dbiir.txnsails.execution.validation.TransactionCollector;
 import org.dbiir.txnsails.execution.validation.ValidationMeta;
 import org.dbiir.txnsails.execution.validation.ValidationMetaTable;
@@ -25,56 +36,84 @@ import org.dbiir.txnsails.execution.validation.ValidationMetaTable;
 public class OnlineWorker {
   protected Connection conn = null;
   private WorkloadConfiguration configuration = null;
-  private final Random random = new Random();
   @Getter private final int id;
   CCType ccType = CCType.SER;
-  @Setter @Getter protected boolean switchFinish = false;
-
-  @Getter @Setter
-  protected boolean switchPhaseReady = false; // validation transaction common, set it to true
+  // the last isolation level switch this worker acknowledged as ready / finished, see Adapter
+  final AtomicLong readyEpoch = new AtomicLong(0);
+  final AtomicLong finishEpoch = new AtomicLong(0);
+  private long isolationEpoch = 0; // the switch whose isolation level the connection uses
+  // whether the running transaction may still commit, see abortForSwitch
+  private static final int FENCE_OPEN = 0;
+  private static final int FENCE_COMMITTING = 1;
+  private static final int FENCE_ABORTED = 2;
+  private final AtomicInteger switchFence = new AtomicInteger(FENCE_OPEN);
 
   @Getter @Setter private TransactionStatus status = TransactionStatus.IDLE;
   private HashMap<String, TransactionTemplate> templates = new HashMap<>();
   // support at most 20 validation entries in a single transaction
   private static final int MAX_VALIDATION_META = 20;
-  private static final double SAMPLE_PROBABILITY = 0.01;
   private static final long mask = 0x7FFFFFFFFFFFFFFFL;
   private final ValidationMeta[] validationMetaUnderRC = new ValidationMeta[MAX_VALIDATION_META];
   private final ValidationMeta[] validationMetaUnderSI = new ValidationMeta[MAX_VALIDATION_META];
+  // version fetches of the metas missing from the hot version cache, reused by every validation
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final CompletableFuture<Integer>[] pendingVersions =
+      new CompletableFuture[MAX_VALIDATION_META];
   private int validationMetaIdxUnderRC = 0;
   private int validationMetaIdxUnderSI = 0;
   private boolean shouldSample = false;
   private int transactionId;
   // variables for sampling
-  private final List<RWRecord> readSet;
-  private final List<RWRecord> writeSet;
+  // (table_idx, key_id, op) per access of the sampled transaction
+  private final int[] sampleAccesses = new int[SampleRingBuffer.MAX_ACCESSES * SampleRingBuffer.ACCESS_INTS];
+  private int sampleAccessCount = 0;
   private ValidationMeta sampleMeta = new ValidationMeta();
   private CCType lockManner = CCType.SER;
-  private final SchemaInfo schema;
-  private boolean isInTransaction = false; // used for the transaction state
+  // read by the adapter, which acknowledges a switch for the worker outside a transaction
+  @Getter private volatile boolean inTransaction = false;
+  // the template the raw sqls of the transaction were found in and the index after the last one
   private int queryIdx = 0;
   private String templateName = "";
+  private String[] rawParams = new String[0];
+  private final TransactionTemplate[] templatesById;
+  private final TextStatementParams textParams = new TextStatementParams();
+  private final TextResultWriter textResults = new TextResultWriter();
+  // dedicated connections per isolation level or the shared pool, the current connection is only
+  // held while a transaction runs
+  private final ConnectionProvider connections;
+  private PooledConnection current;
+  @Getter private PreparedStatementCache statementCache;
+  public static final int QUERY_TIMEOUT = 1; // seconds
 
   public OnlineWorker(WorkloadConfiguration configuration, int id) {
     this.configuration = configuration;
     this.id = id;
-    // init the connection
-    try {
-      this.conn = makeConnection();
-      this.conn.setAutoCommit(false);
-      this.ccType = configuration.getConcurrencyControlType();
-      switch (ccType) {
-        case RC, RC_TAILOR ->
-                this.conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-        case SI, SI_TAILOR ->
-                this.conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
-        case SER -> this.conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-      }
-    } catch (SQLException ex) {
-      throw new RuntimeException("Failed to connect to database", ex);
-    }
+    this.ccType = configuration.getConcurrencyControlType();
     // clone the analysis result to thread local
     MetaWorker.getINSTANCE().cloneTemplatesAfterAnalysis(this.templates);
+    this.templatesById = new TransactionTemplate[this.templates.size()];
+    for (TransactionTemplate template : this.templates.values()) {
+      if (template.getId() >= 0 && template.getId() < templatesById.length) {
+        templatesById[template.getId()] = template;
+      }
+    }
+    // init the connections, the template set is closed after analysis, so every connection
+    // prepares all of its sql up front
+    if (TransactionConnectionPool.getInstance() != null) {
+      this.connections = TransactionConnectionPool.getInstance();
+    } else {
+      try {
+        this.connections =
+                new IsolationConnectionSet(
+                        configuration,
+                        this.templates.values(),
+                        QUERY_TIMEOUT,
+                        PooledConnection.isolationOf(ccType),
+                        Adapter.getInstance().isUsed());
+      } catch (SQLException ex) {
+        throw new RuntimeException("Failed to connect to database", ex);
+      }
+    }
     // init the validation metas
     for (int i = 0; i < MAX_VALIDATION_META; i++) {
       this.validationMetaUnderRC[i] = new ValidationMeta();
@@ -83,22 +122,24 @@ public class OnlineWorker {
     // init the first transactionID
     this.transactionId =
             (int) (((System.nanoTime() << 10) | (Thread.currentThread().getId() & 0x3ff)) & mask);
-    // init sample container
-    this.readSet = new ArrayList<>(8);
-    this.writeSet = new ArrayList<>(8);
-    // fetch the schema
-    this.schema = MetaWorker.getINSTANCE().getSchema();
     // register self into AdapterWorker
     Adapter.getInstance().addOnlineWorker(this);
-    System.out.println(this.toString() + " is initialized.");
+    Log.debug("worker initialized", "worker", id);
   }
 
-  private Connection makeConnection() throws SQLException {
-    if (StringUtils.isEmpty(configuration.getUsername())) {
-      return DriverManager.getConnection(configuration.getUrl());
-    } else {
-      return DriverManager.getConnection(
-              configuration.getUrl(), configuration.getUsername(), configuration.getPassword());
+  private void acquireConnection() throws SQLException {
+    PooledConnection connection = connections.acquire(PooledConnection.isolationOf(ccType));
+    this.current = connection;
+    this.conn = connection.getConnection();
+    this.statementCache = connection.getStatementCache();
+  }
+
+  private void releaseConnection() {
+    if (current != null) {
+      connections.release(current);
+      this.current = null;
+      this.conn = null;
+      this.statementCache = null;
     }
   }
 
@@ -110,15 +151,51 @@ public class OnlineWorker {
    *     template args[2:]: the params for
    */
   public String execute(String[] args, int offset) throws SQLException {
-    TemplateSQL templateSQL;
     if (args.length < offset) {
-      templateSQL = this.findTemplateSQL(args[1]);
-    } else {
-      templateSQL =
-              this.templates.get(args[offset - 2]).getSQLTemplateByIndex(Integer.parseInt(args[offset - 1]));
+      // raw sql, bound to the prepared statement of its template with its literals
+      TemplateSQL templateSQL = this.findTemplateSQL(args[1]);
+      execute(templateSQL, textParams.reset(rawParams, 0), textResults.reset());
+      return textResults.toString();
     }
-    StringBuilder results = new StringBuilder();
+    TemplateSQL templateSQL =
+            this.templates.get(args[offset - 2]).getSQLTemplateByIndex(Integer.parseInt(args[offset - 1]));
+    execute(templateSQL, textParams.reset(args, offset), textResults.reset());
+    return textResults.toString();
+  }
 
+  /**
+   * online execution for binary clients, which address the sql by the template id and the sql
+   * index in this template
+   */
+  public void execute(int templateId, int sqlIdx, StatementParams params, ResultWriter results)
+          throws SQLException {
+    TemplateSQL templateSQL = null;
+    if (templateId >= 0 && templateId < templatesById.length && templatesById[templateId] != null) {
+      templateSQL = templatesById[templateId].getSQLTemplateByIndex(sqlIdx);
+    }
+    if (templateSQL == null) {
+      throw new SQLException("Unknown template sql: " + templateId + "#" + sqlIdx);
+    }
+    execute(templateSQL, params, results);
+  }
+
+  private void execute(TemplateSQL templateSQL, StatementParams params, ResultWriter results)
+          throws SQLException {
+    if (!inTransaction) {
+      // publish the transaction before looking for a switch the adapter acknowledged for us
+      inTransaction = true;
+      switchConnectionIsolationMode();
+      // an abort requested before the connection took the applied isolation level is void
+      switchFence.set(FENCE_OPEN);
+      try {
+        acquireConnection();
+      } catch (SQLException ex) {
+        inTransaction = false;
+        throw ex;
+      }
+    } else if (switchFence.get() == FENCE_ABORTED) {
+      throw switchAbortException();
+    }
     // record the sql that need validate
     if (templateSQL.isNeedRewriteUnderRC() || templateSQL.isNeedRewriteUnderSI() || shouldSample) {
       ValidationMeta meta =
@@ -128,15 +205,8 @@ public class OnlineWorker {
                       ? validationMetaUnderSI[validationMetaIdxUnderSI]
                       : sampleMeta;
       meta.setTemplateSQL(templateSQL);
-      if (templateSQL.getUniqueKeyNumber() <= args.length - offset) {
-        meta.addRuntimeArgs(List.of(args), offset);
-        // System.out.println(
-        //         this.toString()
-        //                 + templateSQL.getSQL()
-        //                 + ", "
-        //                 + Arrays.asList(args).subList(offset, args.length)
-        //                 + ", Id for validation: "
-        //                 + meta.getIdForValidation());
+      if (templateSQL.getUniqueKeyNumber() <= params.size()) {
+        meta.addRuntimeArgs(params);
 
         if (shouldSample) {
           addSampleMeta(
@@ -151,33 +221,36 @@ public class OnlineWorker {
           }
         }
       } else {
-        System.out.println("The number of real time args is not enough.");
         throw new SQLException("Not enough arguments!");
       }
     }
 
     String executeSQL = templateSQL.getSQL();
+    List<Column> columnList = templateSQL.getColumnList();
+    int resultColumns = 0;
+    for (Column col : columnList) {
+      if (!col.getColumnName().equalsIgnoreCase("vid")) {
+        resultColumns++;
+      }
+    }
     // execute the sql
-    try (PreparedStatement stmtc =
-                 this.getPreparedStatement(conn, new SQLStmt(executeSQL), args, offset, templateSQL)) {
-      stmtc.setQueryTimeout(1);
+    PreparedStatement stmtc =
+            this.getPreparedStatement(new SQLStmt(executeSQL), params, templateSQL);
+    try {
       try (ResultSet rs = stmtc.executeQuery()) {
         int v = -1;
-        List<List<String>> rows = new ArrayList<>(2);
+        // parse and wrap the results row by row
         while (rs.next()) {
-          List<String> row = new ArrayList<>();
-          for (Column col : templateSQL.getColumnList()) {
+          results.beginRow(resultColumns);
+          for (Column col : columnList) {
             String columnName = col.getColumnName();
             if (columnName.equalsIgnoreCase("vid")) {
               v = rs.getInt(columnName);
             } else {
-              row.add(rs.getString(columnName));
+              results.addColumn(rs.getString(columnName));
             }
           }
-          rows.add(row);
         }
-        // parse and wrap the results
-        results.append(wrapResults(rows));
         // record the version if it needs, support scan-based
         if (templateSQL.isNeedRewriteUnderRC()) {
           validationMetaUnderRC[validationMetaIdxUnderRC - 1].setOldVersions(v);
@@ -185,15 +258,14 @@ public class OnlineWorker {
             validationMetaUnderSI[validationMetaIdxUnderSI - 1].setOldVersions(v);
           }
         }
-        // System.out.println(this.toString() + " execute finished");
       } catch (SQLException ex) {
         // check if the error can retry automatically, in the future
-        System.out.println(this.toString() + "Error execute sql: " + executeSQL);
+        Log.debug("execute failed", "worker", id, "sql", executeSQL, ex);
         throw ex;
       }
+    } finally {
+      statementCache.release(stmtc);
     }
-
-    return results.toString();
   }
 
   public void commit() throws SQLException {
@@ -202,45 +274,45 @@ public class OnlineWorker {
       // System.out.println(this.toString() + " is validating");
       validate();
       // System.out.println(this.toString() + " has validated, is committing");
-      conn.commit();
+      if (conn != null) {
+        conn.commit();
+      }
       // System.out.println(this.toString() + " has committed");
       releaseValidationLocks(true);
       if (shouldSample) sampleTransaction(true);
     } catch (SQLException ex) {
       releaseValidationLocks(false);
-      rollback();
+      // before the rollback, which clears the accesses and decides on the next sample
       if (shouldSample) sampleTransaction(false);
+      rollback();
       throw ex;
     }
 
     clearPreviousTransactionInfo();
     /* sample transaction if txnSails needs and choose whether sample next transaction */
-    shouldSample = random.nextDouble() < SAMPLE_PROBABILITY;
+    shouldSample = TransactionCollector.getInstance().isSample();
     this.transactionId =
             (int) (((System.nanoTime() << 10) | (Thread.currentThread().getId() & 0x3ff)) & mask);
     // switch the isolation mode
-    if (Adapter.getInstance().isInSwitchPhase()) {
-      // System.out.println(this.toString() + " enters switch phase");
-      switchConnectionIsolationMode();
-    }
+    finishSwitchPhase();
     // System.out.println(this.toString() + " return commit()");
   }
 
   public void rollback() throws SQLException {
     try {
       // System.out.println(this.toString() + " is rollbacking");
-      conn.rollback();
+      if (conn != null) {
+        conn.rollback();
+      }
       // System.out.println(this.toString() + " has been rollbacked");
     } finally {
       clearPreviousTransactionInfo();
       /* sample transaction if txnSails needs and choose whether sample next transaction */
-      shouldSample = random.nextDouble() < SAMPLE_PROBABILITY;
+      shouldSample = TransactionCollector.getInstance().isSample();
       this.transactionId =
               (int) (((System.nanoTime() << 10) | (Thread.currentThread().getId() & 0x3ff)) & mask);
       // switch the isolation
-      if (Adapter.getInstance().isInSwitchPhase()) {
-        switchConnectionIsolationMode();
-      }
+      finishSwitchPhase();
     }
   }
 
@@ -249,20 +321,11 @@ public class OnlineWorker {
      * 1. acquire validation lock (transition: acquire the lock according the stricter isolation level)
      * 2. check the version
      */
-    while (Adapter.getInstance().isInSwitchPhase()
-            && !Adapter.getInstance().isAllWorkersReadyForSwitch()) {
-      // set current thread ready, block for all thread to ready
-      if (!this.switchPhaseReady) {
-        this.switchPhaseReady = true;
-        // System.out.println(this.toString() + " is ready for switch");
-      } else {
-        try {
-          Thread.sleep(5);
-          // break;
-        } catch (InterruptedException e) {
-        }
-      }
+    if (!switchFence.compareAndSet(FENCE_OPEN, FENCE_COMMITTING)) {
+      throw switchAbortException();
     }
+    // set current thread ready, block for all thread to ready
+    Adapter.getInstance().awaitSwitchReady(this);
     if (Adapter.getInstance().isInSwitchPhase() && this.ccType == CCType.SER) {
       // cases: SER -> SI/RC, SI/RC -> SER
       this.ccType = CCType.SER_TRANSITION;
@@ -307,87 +370,123 @@ public class OnlineWorker {
 
     // validation row versions
     if (ccType == CCType.SI_TAILOR || ccType == CCType.SER_TRANSITION) {
-      for (int i = 0; i < validationMetaIdxUnderSI; i++) {
-        validateSingleMeta(validationMetaUnderSI[i]);
-      }
+      validateVersions(validationMetaUnderSI, validationMetaIdxUnderSI);
     } else if (ccType == CCType.RC_TAILOR) {
-      for (int i = 0; i < validationMetaIdxUnderRC; i++) {
-        validateSingleMeta(validationMetaUnderRC[i]);
-      }
+      validateVersions(validationMetaUnderRC, validationMetaIdxUnderRC);
     }
   }
 
-  /*
-    Find the templateSQL by the sql, use regex expression to match the sql.
-    Implement it by ast tree in the future.
-    If the templateName is not empty, then find the templateSQL by the templateName
+  /**
+   * Find the template sql a raw sql is an instance of, its literals become the parameters in
+   * rawParams. A sql several templates share is taken from the template of the transaction, at
+   * the next index if it is there, and otherwise from a template that has it at the next index.
    */
   private TemplateSQL findTemplateSQL(String sql) throws SQLException {
-    if (Objects.equals(templateName, "")) {
-      TemplateSQL templateSQL = this.templates.get(templateName).getSQLTemplateByIndex(queryIdx++);
-      if (templateSQL.getSQL().equalsIgnoreCase(sql)) {
-        return templateSQL;
-      } else {
-        throw new SQLException("SQL query does not match template: " + sql);
+    List<TemplateFingerprintIndex.Match> matches =
+            MetaWorker.getINSTANCE().getFingerprintIndex().find(sql);
+    TemplateFingerprintIndex.Match chosen = null;
+    for (TemplateFingerprintIndex.Match match : matches) {
+      if (match.template().equals(templateName) && (chosen == null || match.index() == queryIdx)) {
+        chosen = match;
       }
-    } else {
-      assert !isInTransaction;
-      isInTransaction = true;
-      for (TransactionTemplate template : this.templates.values()) {
-        TemplateSQL templateSQL = template.getSQLTemplateByIndex(0);
-        if (templateSQL.getSQL().equalsIgnoreCase(sql)) {
-          return templateSQL;
-        }
+    }
+    for (int i = 0; chosen == null && i < matches.size(); i++) {
+      if (matches.get(i).index() == queryIdx) {
+        chosen = matches.get(i);
       }
     }
-    String msg = "The SQL is not found in the templates: " + sql;
-    System.out.println(msg);
-    throw new SQLException(msg);
+    if (chosen == null && !matches.isEmpty()) {
+      chosen = matches.get(0);
+    }
+    TransactionTemplate template = chosen == null ? null : templates.get(chosen.template());
+    if (template == null) {
+      throw new SQLException("The SQL is not found in the templates: " + sql);
+    }
+    this.templateName = chosen.template();
+    this.queryIdx = chosen.index() + 1;
+    this.rawParams = chosen.params();
+    return template.getSQLTemplateByIndex(chosen.index());
   }
 
-  private void validateSingleMeta(ValidationMeta meta) throws SQLException {
-    long v =
-            ValidationMetaTable.getInstance()
-                    .getHotspotVersion(meta.getTemplateSQL().getTable(), (long) meta.getIdForValidation());
-    if (v >= 0) {
-      if (v != meta.getOldVersions()) {
-        String msg =
-                String.format(
-                        "Validation failed for key %d, %s",
-                        meta.getIdForValidation(), meta.getTemplateSQL().getTable());
-        throw new SQLException(msg, "500", 0);
+  /*
+   * Compare the cached versions first, then fetch all uncached versions of the transaction
+   * together. Every fetch is awaited before returning: the fetched version is cached, which is
+   * only safe while the validation lock of the key is held.
+   */
+  private void validateVersions(ValidationMeta[] metas, int count) throws SQLException {
+    ValidationMetaTable metaTable = ValidationMetaTable.getInstance();
+    int misses = 0; // bitmap of the metas missing from the cache, count <= MAX_VALIDATION_META
+    for (int i = 0; i < count; i++) {
+      ValidationMeta meta = metas[i];
+      long v = metaTable.getHotspotVersion(meta.getTemplateSQL().getTable(), meta.getIdForValidation());
+      if (v < 0) {
+        misses |= 1 << i;
+      } else if (v != meta.getOldVersions()) {
+        throw validationFailure(meta);
       }
-    } else {
-      // System.out.println(this.toString() + " fetch unknown version");
-      v =
-              ValidationMetaTable.getInstance()
-                      .fetchUnknownVersionCache(
-                              meta.getTemplateSQL().getTable(), meta.getIdForValidation());
-      if (v != meta.getOldVersions()) {
-        //          releaseValidationLocks(false);
-        String msg =
-                String.format(
-                        "Validation failed for ycsb_key %d, usertable", meta.getIdForValidation());
-        throw new SQLException(msg, "500", 0);
+    }
+    if (misses == 0) {
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      if ((misses & (1 << i)) != 0) {
+        ValidationMeta meta = metas[i];
+        pendingVersions[i] =
+            metaTable.fetchUnknownVersion(
+                meta.getTemplateSQL().getTable(), meta.getIdForValidation());
+      }
+    }
+    SQLException failure = null;
+    for (int i = 0; i < count; i++) {
+      CompletableFuture<Integer> pending = pendingVersions[i];
+      if (pending == null) {
+        continue;
+      }
+      pendingVersions[i] = null;
+      ValidationMeta meta = metas[i];
+      try {
+        int v = metaTable.awaitUnknownVersion(meta.getTemplateSQL().getTable(), pending);
+        if (failure == null && v != meta.getOldVersions()) {
+          failure = validationFailure(meta);
+        }
+      } catch (SQLException ex) {
+        if (failure == null) {
+          failure = ex;
+        }
       }
-      // System.out.println(this.toString() + " fetch unknown version down");
     }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static SQLException validationFailure(ValidationMeta meta) {
+    String msg =
+        String.format(
+            "Validation failed for key %d, %s",
+            meta.getIdForValidation(), meta.getTemplateSQL().getTable());
+    return new SQLException(msg, "500", 0);
   }
 
   private void clearPreviousTransactionInfo() {
+    releaseConnection();
     this.validationMetaIdxUnderRC = 0;
     this.validationMetaIdxUnderSI = 0;
-    this.isInTransaction = false;
+    this.inTransaction = false;
     this.queryIdx = 0;
     this.templateName = "";
+    this.sampleAccessCount = 0;
   }
 
   private void addSampleMeta(int op, int relationType, int idx) {
-    if (op == 0) {
-      this.readSet.add(new RWRecord(relationType, idx));
-    } else if (op == 1) {
-      this.writeSet.add(new RWRecord(relationType, idx));
+    if ((op != 0 && op != 1) || sampleAccessCount == SampleRingBuffer.MAX_ACCESSES) {
+      return;
     }
+    int at = sampleAccessCount++ * SampleRingBuffer.ACCESS_INTS;
+    sampleAccesses[at] = relationType;
+    sampleAccesses[at + 1] = idx;
+    sampleAccesses[at + 2] = op;
   }
 
   private void releaseValidationLocks(boolean success) {
@@ -426,7 +525,7 @@ public class OnlineWorker {
 
   private void releaseSingleMeta(ValidationMeta meta, boolean success) {
     if (!meta.isLocked()) {
-      System.out.println("Lock operation is failed, but previous validation successes");
+      Log.debug("releasing a validation meta that was not locked", "worker", id);
     }
     TemplateSQL templateSQL = meta.getTemplateSQL();
     LockType lockType = templateSQL.getOp() == 0 ? LockType.SH : LockType.EX;
@@ -456,132 +555,85 @@ public class OnlineWorker {
 
   // mode: Connection.TRANSACTION_READ_COMMITTED, TRANSACTION_REPEATABLE_READ,
   // TRANSACTION_SERIALIZABLE
+  private void finishSwitchPhase() throws SQLException {
+    // a finished transaction validates the next one under the transition lock manner
+    Adapter.getInstance().acknowledgeReady(this);
+    switchConnectionIsolationMode();
+  }
+
+  // outside a transaction, apply the isolation level of the last switch that reached its apply phase
   private void switchConnectionIsolationMode() throws SQLException {
-    // block for all validate transaction completed
-    while (Adapter.getInstance().isInSwitchPhase()
-            && !Adapter.getInstance().isAllWorkersReadyForSwitch()) {
-      if (!this.switchPhaseReady) {
-        this.switchPhaseReady = true;
-        System.out.println(this.toString() + " is ready for switch");
-      } else {
-        try {
-          Thread.sleep(5);
-          // break;
-        } catch (InterruptedException ignored) {
-        }
-      }
+    Adapter.Switch applied = Adapter.getInstance().getAppliedSwitch();
+    if (applied == null || applied.epoch() == isolationEpoch) {
+      return;
+    }
+    isolationEpoch = applied.epoch();
+    this.ccType = applied.target();
+    // the next transaction acquires a warm connection of the level, nothing is reconfigured
+    if (this.ccType == CCType.SER) {
+      this.ccType = CCType.SER_TRANSITION;
     }
+    Adapter.getInstance().acknowledgeFinish(this, applied);
+    Log.debug("switch finished", "worker", id, "epoch", applied.epoch(), "target", applied.target());
+  }
 
-    if (Adapter.getInstance().isInSwitchPhase() && !switchFinish) {
-      this.ccType = Adapter.getInstance().getNextCCType();
+  /**
+   * Abort the running transaction, it holds back the isolation level switch: its next execute or
+   * commit fails and the client rolls it back.
+   *
+   * @return false if the transaction passed its validation already and commits
+   */
+  boolean abortForSwitch() {
+    return switchFence.compareAndSet(FENCE_OPEN, FENCE_ABORTED);
+  }
 
-      switch (this.ccType) {
-        case RC, RC_TAILOR -> conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-        case SI, SI_TAILOR -> conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
-        case SER, SER_TRANSITION ->
-                conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-      }
-      if (this.ccType == CCType.SER) {
-        this.ccType = CCType.SER_TRANSITION;
-      }
-      switchFinish = true;
-      conn.setAutoCommit(false);
-      System.out.println(
-              Thread.currentThread().getName()
-                      + "switch finish: "
-                      + Adapter.getInstance().getNextCCType());
-    }
+  private SQLException switchAbortException() {
+    String msg = "Transaction #" + transactionId + " aborted to finish the isolation level switch";
+    return new SQLException(msg, "500", 0);
   }
 
   private void sampleTransaction(boolean success) {
-    TransactionCollector.getInstance().addTransactionSample(1, readSet, writeSet, success ? 1 : 0);
+    TransactionCollector.getInstance()
+            .addTransactionSample(1, sampleAccesses, sampleAccessCount, success ? 1 : 0);
   }
 
   /**
    * Return a PreparedStatement for the given SQLStmt handle The underlying Procedure API will make
    * sure that the proper SQL for the target DBMS is used for this SQLStmt. This will automatically
-   * call setObject for all the parameters you pass in
+   * bind all the parameters you pass in with the precomputed binders of the template
    *
-   * @param conn
    * @param stmt
-   * @param params: just support String, maybe provide more types in the future
+   * @param params
    * @param templateSQL
    * @return
    * @throws SQLException
    */
   private final PreparedStatement getPreparedStatement(
-          Connection conn, SQLStmt stmt, String[] params, int offset, TemplateSQL templateSQL) throws SQLException {
-    PreparedStatement pStmt = conn.prepareStatement(stmt.getSQL());
-    if (params.length - offset != templateSQL.getAllPlaceholders().size()) {
-      String msg = "The length of parameters and placeholders are not matching";
-      System.out.println(
-              msg
-                      + "; params.length: "
-                      + params.length
+          SQLStmt stmt, StatementParams params, TemplateSQL templateSQL) throws SQLException {
+    if (params.size() != templateSQL.getAllPlaceholders().size()) {
+      throw new SQLException(
+              "The length of parameters and placeholders are not matching; params.length: "
+                      + params.size()
                       + " templateSQL: "
                       + templateSQL.getAllPlaceholders().size());
-      throw new SQLException(msg);
-    }
-    List<ConditionInfo> phList = templateSQL.getAllPlaceholders();
-    int idx = 1;
-    for (int i = offset; i < params.length; i++) {
-      // rewrite by the type of the params
-      ColumnType columnType =
-              schema.getColumnTypeByName(templateSQL.getTable(), phList.get(idx - 1).getColumnName());
-      switch (columnType) {
-        case INTEGER -> pStmt.setObject(idx, Integer.valueOf(params[i]));
-        case BIGINT -> pStmt.setObject(idx, Long.valueOf(params[i]));
-        case FLOAT -> pStmt.setObject(idx, Float.valueOf(params[i]));
-        case VARCHAR, TEXT -> pStmt.setObject(idx, params[i]);
-        case DOUBLE -> pStmt.setObject(idx, Double.valueOf(params[i]));
-        case BOOLEAN -> pStmt.setObject(idx, Boolean.valueOf(params[i]));
-        default -> throw new AssertionError();
-      }
-      idx ++;
     }
-    return (pStmt);
-  }
-
-  private String wrapResults(List<List<String>> rows) {
-    StringBuilder sb = new StringBuilder();
-
-    for (List<String> row : rows) {
-      sb.append(String.format("%02x", row.size())); // record the column size in this row
-      for (String col : row) {
-        // record the string length in 4 bytes
-        //        System.out.println("col.length() = " + col.length());
-        sb.append(String.format("%04x", col.length()));
-        sb.append(col); // wrap column value
+    // cached statements keep their parameters, but every placeholder is bound again below
+    PreparedStatement pStmt = statementCache.prepare(stmt.getSQL());
+    ParameterBinder[] binders = templateSQL.getBinders();
+    try {
+      for (int i = 0; i < binders.length; i++) {
+        binders[i].bind(pStmt, i + 1, params, i);
       }
-    }
-    return sb.toString();
-  }
-
-  private List<List<String>> dewrapResults(String results) {
-    List<List<String>> rows = new ArrayList<>();
-    int index = 0;
-
-    while (index < results.length()) {
-      // decode the number of columns in this row
-      int count = Integer.parseInt(results.substring(index, index + 2), 16);
-      index += 2;
-
-      List<String> row = new ArrayList<>();
-      for (int i = 0; i < count; i++) {
-        // read 4 char as the column length (2 bytes)
-        String lengthHex = results.substring(index, index + 4);
-        int length = Integer.parseInt(lengthHex, 16);
-        index += 4;
-
-        String value = results.substring(index, index + length);
-        index += length; // move to the next
-
-        row.add(value);
+    } catch (SQLException | RuntimeException ex) {
+      // the caller never sees the statement, an uncached one would stay open
+      try {
+        statementCache.release(pStmt);
+      } catch (SQLException closeEx) {
+        ex.addSuppressed(closeEx);
       }
-      rows.add(row); // add row
+      throw ex;
     }
-
-    return rows;
+    return (pStmt);
   }
 
   @Override
@@ -591,6 +643,15 @@ public class OnlineWorker {
 
   public void closeWorker() {
     Adapter.getInstance().removeOnlineWorker(id);
-    System.out.println(this.toString() + " removes from Adapter");
+    Log.debug("worker removed from adapter", "worker", id);
+    if (current != null) {
+      try {
+        conn.rollback();
+      } catch (SQLException ex) {
+        Log.warn("rollback on close failed", "worker", id, ex);
+      }
+      releaseConnection();
+    }
+    connections.close();
   }
 }
@@ -0,0 +1,229 @@
+package org.dbiir.txnsails.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.*;
+import org.dbiir.txnsails.common.StaticDependencyCycle;
+import org.dbiir.txnsails.common.StaticDependencyGraphEdge;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.common.types.DependencyType;
+import org.junit.jupiter.api.Test;
+
+/** The SCC and Johnson search reports the cycles and rotations of the DFS it replaced. */
+class ChordAbsentCycleFinderTest {
+  private static final DependencyType[] TYPES = DependencyType.values();
+
+  @Test
+  void sparseGraphsMatchDfs() {
+    Random random = new Random(21);
+    for (int round = 0; round < 300; round++) {
+      assertMatchesDfs(randomGraph(random, 3 + random.nextInt(5), 6, 2));
+    }
+  }
+
+  @Test
+  void denseGraphsMatchDfs() {
+    Random random = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      assertMatchesDfs(randomGraph(random, 4 + random.nextInt(4), 20, 3));
+    }
+  }
+
+  @Test
+  void chordsSelectTheRotation() {
+    Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph = graph(4);
+    List<TransactionTemplate> t = new ArrayList<>(graph.keySet());
+    StaticDependencyGraphEdge ab = edge(graph, t.get(0), t.get(1), "AB");
+    StaticDependencyGraphEdge bc = edge(graph, t.get(1), t.get(2), "BC");
+    StaticDependencyGraphEdge ca = edge(graph, t.get(2), t.get(0), "CA");
+    // the reverse edges of the cycle's dependencies are no chords, B -> A of another one is
+    edge(graph, t.get(1), t.get(0), "AB");
+    edge(graph, t.get(0), t.get(2), "CA");
+    edge(graph, t.get(1), t.get(0), "BA");
+    Set<StaticDependencyCycle> cycles = assertMatchesDfs(graph);
+    assertTrue(
+        cycles.contains(
+            new StaticDependencyCycle(
+                List.of(t.get(2), t.get(0), t.get(1), t.get(2)), List.of(ca, ab, bc))));
+    assertFalse(
+        cycles.contains(
+            new StaticDependencyCycle(
+                List.of(t.get(0), t.get(1), t.get(2), t.get(0)), List.of(ab, bc, ca))));
+
+    // chords from two templates, the cycle is not reported at all
+    edge(graph, t.get(2), t.get(1), "CB");
+    assertFalse(
+        assertMatchesDfs(graph).stream()
+            .anyMatch(c -> c.edges().contains(bc) && c.edges().contains(ca)));
+  }
+
+  @Test
+  void selfDependenciesAreCyclesAndChords() {
+    Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph = graph(2);
+    List<TransactionTemplate> t = new ArrayList<>(graph.keySet());
+    StaticDependencyGraphEdge aa = edge(graph, t.get(0), t.get(0), "AA");
+    edge(graph, t.get(0), t.get(1), "AB");
+    edge(graph, t.get(1), t.get(0), "AB");
+    edge(graph, t.get(1), t.get(0), "BA");
+    Set<StaticDependencyCycle> cycles = assertMatchesDfs(graph);
+    assertTrue(
+        cycles.contains(new StaticDependencyCycle(List.of(t.get(0), t.get(0)), List.of(aa))));
+  }
+
+  @Test
+  void dependencyOfTwoPairsIsRejected() {
+    Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph = graph(3);
+    List<TransactionTemplate> t = new ArrayList<>(graph.keySet());
+    edge(graph, t.get(0), t.get(1), "D");
+    edge(graph, t.get(1), t.get(2), "D");
+    assertThrows(
+        IllegalArgumentException.class, () -> new ChordAbsentCycleFinder(graph).findAllCycles());
+  }
+
+  private static Set<StaticDependencyCycle> assertMatchesDfs(
+      Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph) {
+    Set<StaticDependencyCycle> expected = new DfsReference(graph).findAllCycles();
+    assertEquals(expected, new ChordAbsentCycleFinder(graph).findAllCycles());
+    Set<StaticDependencyCycle> expectedWithReadWrite = new HashSet<>();
+    for (StaticDependencyCycle cycle : expected) {
+      if (cycle.edges().stream().anyMatch(e -> e.getType() == DependencyType.READ_WRITE)) {
+        expectedWithReadWrite.add(cycle);
+      }
+    }
+    assertEquals(
+        expectedWithReadWrite, new ChordAbsentCycleFinder(graph).findCyclesWithReadWrite());
+    return expected;
+  }
+
+  // a dependency connects one pair of templates, a template and itself included, by one or more
+  // edges in either direction; a pair may have several dependencies
+  private static Map<TransactionTemplate, List<StaticDependencyGraphEdge>> randomGraph(
+      Random random, int n, int dependencies, int maxEdges) {
+    Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph = graph(n);
+    TransactionTemplate[] templates = graph.keySet().toArray(new TransactionTemplate[0]);
+    for (int d = 0; d < dependencies; d++) {
+      int a = random.nextInt(n);
+      int b = random.nextInt(n);
+      String name = "T" + a + "-T" + b + "-" + d;
+      for (int k = 1 + random.nextInt(maxEdges); k > 0; k--) {
+        boolean forward = random.nextBoolean();
+        TransactionTemplate from = templates[forward ? a : b];
+        TransactionTemplate to = templates[forward ? b : a];
+        edge(graph, from, to, name, TYPES[random.nextInt(TYPES.length)]);
+      }
+    }
+    return graph;
+  }
+
+  private static Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph(int n) {
+    Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph = new LinkedHashMap<>();
+    for (int i = 0; i < n; i++) {
+      graph.put(new TransactionTemplate("T" + i), new ArrayList<>());
+    }
+    return graph;
+  }
+
+  private static StaticDependencyGraphEdge edge(
+      Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph,
+      TransactionTemplate from,
+      TransactionTemplate to,
+      String name) {
+    return edge(graph, from, to, name, DependencyType.READ_WRITE);
+  }
+
+  private static StaticDependencyGraphEdge edge(
+      Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph,
+      TransactionTemplate from,
+      TransactionTemplate to,
+      String name,
+      DependencyType type) {
+    StaticDependencyGraphEdge edge = new StaticDependencyGraphEdge(from, to, type);
+    edge.setEdgeName(name);
+    graph.get(from).add(edge);
+    return edge;
+  }
+
+  /** The DFS over all simple paths of every template the finder replaced. */
+  private static final class DfsReference {
+    private final Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph;
+
+    DfsReference(Map<TransactionTemplate, List<StaticDependencyGraphEdge>> graph) {
+      this.graph = graph;
+    }
+
+    Set<StaticDependencyCycle> findAllCycles() {
+      Set<StaticDependencyCycle> cycles = new HashSet<>();
+      Set<TransactionTemplate> visited = new HashSet<>();
+      Set<TransactionTemplate> stack = new HashSet<>();
+
+      for (TransactionTemplate node : graph.keySet()) {
+        dfs(node, visited, stack, new ArrayList<>(), new ArrayList<>(), cycles, new HashSet<>());
+      }
+
+      return cycles;
+    }
+
+    private void dfs(
+        TransactionTemplate node,
+        Set<TransactionTemplate> visited,
+        Set<TransactionTemplate> stack,
+        List<TransactionTemplate> path,
+        List<StaticDependencyGraphEdge> edges,
+        Set<StaticDependencyCycle> cycles,
+        Set<String> edgeNames) {
+      visited.add(node);
+      stack.add(node);
+      path.add(node);
+
+      for (StaticDependencyGraphEdge edge : graph.getOrDefault(node, Collections.emptyList())) {
+        TransactionTemplate neighbor = edge.getTo();
+        String edgeName = edge.getEdgeName();
+        edges.add(edge);
+
+        if (!visited.contains(neighbor)) {
+          edgeNames.add(edgeName);
+          dfs(neighbor, visited, stack, path, edges, cycles, edgeNames);
+          edgeNames.remove(edgeName);
+        } else if (stack.contains(neighbor) && !edgeNames.contains(edgeName)) {
+          path.add(neighbor);
+          List<TransactionTemplate> cycleNodes = new ArrayList<>(path);
+          List<StaticDependencyGraphEdge> cycleEdges = new ArrayList<>(edges);
+
+          edgeNames.add(edgeName);
+          if (isSimpleCycle(cycleNodes, edgeNames)) {
+            cycles.add(new StaticDependencyCycle(cycleNodes, cycleEdges));
+          }
+          edgeNames.remove(edgeName);
+          path.remove(path.size() - 1);
+        }
+
+        edges.remove(edges.size() - 1);
+      }
+
+      visited.remove(node);
+      stack.remove(node);
+      path.remove(path.size() - 1);
+    }
+
+    private boolean isSimpleCycle(List<TransactionTemplate> cycle, Set<String> edgeNames) {
+      TransactionTemplate head = cycle.get(0);
+      TransactionTemplate tail = cycle.get(cycle.size() - 1);
+      if (!head.getName().equals(tail.getName())) return false;
+      // check the chord
+      Set<TransactionTemplate> cycleSet = new HashSet<>(cycle);
+      if (cycleSet.size() == 2) return true;
+      for (TransactionTemplate node : cycle.subList(0, cycle.size() - 2)) {
+        for (StaticDependencyGraphEdge edge : graph.getOrDefault(node, Collections.emptyList())) {
+          String edgeName = edge.getEdgeName();
+          if (cycleSet.contains(edge.getTo()) && !edgeNames.contains(edgeName)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  }
+}
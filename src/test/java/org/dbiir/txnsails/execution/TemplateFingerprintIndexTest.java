@@ -0,0 +1,176 @@
+package org.dbiir.txnsails.execution;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.dbiir.txnsails.analysis.SchemaInfo;
+import org.dbiir.txnsails.common.TransactionTemplate;
+import org.dbiir.txnsails.worker.MetaWorker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** A raw sql and its template share the fingerprint, and the literals bind to the ? in order. */
+class TemplateFingerprintIndexTest {
+  private static final String WAREHOUSE_TAX = "SELECT w_tax FROM warehouse WHERE w_id = ?";
+  private static final String WAREHOUSE_YTD =
+      "UPDATE warehouse SET w_ytd = w_ytd + ? WHERE w_id = ?";
+  private static final String DISTRICT_NEXT =
+      "UPDATE district SET d_next_o_id = d_next_o_id + 1 WHERE d_w_id = ? AND d_id = ?";
+  private static final String CUSTOMER_1 =
+      "SELECT c_balance FROM customer WHERE c_w_id = 1 AND c_last = ?";
+  private static final String CUSTOMER_2 =
+      "SELECT c_balance FROM customer WHERE c_w_id = 2 AND c_last = ?";
+
+  private static TemplateFingerprintIndex index;
+
+  @BeforeAll
+  static void buildIndex() {
+    MetaWorker.getINSTANCE().setSchema(new SchemaInfo("config/tpcc.sql"));
+    String[][] calls = {
+      {"NewOrder", "0", "warehouse", WAREHOUSE_TAX},
+      {"NewOrder", "1", "district", DISTRICT_NEXT},
+      {"Payment", "0", "warehouse", WAREHOUSE_TAX},
+      {"Payment", "1", "warehouse", WAREHOUSE_YTD},
+      {"Payment", "0", "customer", CUSTOMER_1},
+      {"Delivery", "0", "customer", CUSTOMER_2},
+    };
+    Map<String, TransactionTemplate> templates = new LinkedHashMap<>();
+    for (String[] call : calls) {
+      TransactionTemplate template =
+          templates.computeIfAbsent(
+              call[0],
+              name -> {
+                TransactionTemplate t = new TransactionTemplate(name);
+                t.setId(templates.size());
+                return t;
+              });
+      template.addTemplateSQL(Integer.parseInt(call[1]), call[2], call[3]);
+    }
+    index = TemplateFingerprintIndex.build(templates.values());
+  }
+
+  @Test
+  void caseAndWhitespaceAreIgnored() {
+    assertSameFingerprint(WAREHOUSE_TAX, "select W_TAX\n  from WAREHOUSE where w_id=3", "3");
+  }
+
+  @Test
+  void signedNumbersAreLiterals() {
+    assertSameFingerprint(WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id = -3", "-3");
+    assertSameFingerprint(WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id=-3", "-3");
+    assertSameFingerprint(
+        WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id = -.5e-2", "-.5e-2");
+    assertSameFingerprint(
+        WAREHOUSE_YTD,
+        "UPDATE warehouse SET w_ytd = w_ytd + -12.5e2 WHERE w_id = 7",
+        "-12.5e2",
+        "7");
+  }
+
+  @Test
+  void binaryMinusIsAnOperator() {
+    List<String> literals = new ArrayList<>();
+    assertEquals(
+        "select a - ? , b - ? , ? - ? , ( ? ) - ?",
+        TemplateFingerprintIndex.fingerprint("SELECT a-1, b -2, ?-3, (-4)-5", literals));
+    assertEquals(Arrays.asList("1", "2", null, "3", "-4", "5"), literals);
+  }
+
+  @Test
+  void quotesInStringsAreUnescaped() {
+    assertSameFingerprint(
+        CUSTOMER_1,
+        "SELECT c_balance FROM customer WHERE c_w_id = 1 AND c_last = 'O''Brien'",
+        "1",
+        "O'Brien");
+    // neither a comment nor a placeholder inside a string
+    assertSameFingerprint(
+        CUSTOMER_1,
+        "SELECT c_balance FROM customer WHERE c_w_id = 1 AND c_last = '-- ? /*'",
+        "1",
+        "-- ? /*");
+  }
+
+  @Test
+  void commentsAreDropped() {
+    assertSameFingerprint(
+        WAREHOUSE_TAX, "SELECT w_tax -- the tax\nFROM warehouse WHERE w_id = 3 -- by id", "3");
+    assertSameFingerprint(
+        WAREHOUSE_TAX, "SELECT /* the tax */ w_tax FROM warehouse WHERE w_id =/**/3", "3");
+    assertSameFingerprint(
+        WAREHOUSE_TAX,
+        "SELECT w_tax FROM warehouse /* outer /* nested */ -- */ WHERE w_id = 3",
+        "3");
+    assertSameFingerprint(WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id = 3 /* open", "3");
+  }
+
+  @Test
+  void quotedIdentifiersKeepTheirCase() {
+    List<String> literals = new ArrayList<>();
+    String quoted =
+        TemplateFingerprintIndex.fingerprint(
+            "SELECT \"W_TAX?\" FROM warehouse WHERE w_id = 3", literals);
+    assertEquals("select \"W_TAX?\" from warehouse where w_id = ?", quoted);
+    assertEquals(Arrays.asList("3"), literals);
+    assertNotEquals(fingerprint(WAREHOUSE_TAX), quoted);
+  }
+
+  @Test
+  void trailingSemicolonsAreDropped() {
+    assertSameFingerprint(WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id = 3 ;", "3");
+    assertSameFingerprint(WAREHOUSE_TAX, "SELECT w_tax FROM warehouse WHERE w_id = 3;; ", "3");
+  }
+
+  @Test
+  void findBindsTheLiteralsAtThePlaceholders() {
+    assertMatches(
+        "select w_tax from warehouse where w_id = 4",
+        new TemplateFingerprintIndex.Match("NewOrder", 0, new String[] {"4"}),
+        new TemplateFingerprintIndex.Match("Payment", 0, new String[] {"4"}));
+    assertMatches(
+        "UPDATE warehouse SET w_ytd = w_ytd + 12.5 WHERE w_id = 7;",
+        new TemplateFingerprintIndex.Match("Payment", 1, new String[] {"12.5", "7"}));
+    assertMatches(
+        "update district set d_next_o_id = d_next_o_id + 1 where d_w_id = 1 and d_id = 4",
+        new TemplateFingerprintIndex.Match("NewOrder", 1, new String[] {"1", "4"}));
+  }
+
+  @Test
+  void findRequiresTheLiteralsOfTheTemplate() {
+    assertMatches(
+        "SELECT c_balance FROM customer WHERE c_w_id = 2 AND c_last = 'BAR'",
+        new TemplateFingerprintIndex.Match("Delivery", 0, new String[] {"BAR"}));
+    // d_next_o_id + 2 is no instance of d_next_o_id + 1
+    assertMatches(
+        "update district set d_next_o_id = d_next_o_id + 2 where d_w_id = 1 and d_id = 4");
+    assertMatches("SELECT c_balance FROM customer WHERE c_w_id = 3 AND c_last = 'BAR'");
+    // a ? of the raw sql has no value to bind
+    assertMatches("SELECT w_tax FROM warehouse WHERE w_id = ?");
+  }
+
+  private static String fingerprint(String sql) {
+    return TemplateFingerprintIndex.fingerprint(sql, new ArrayList<>());
+  }
+
+  private static void assertSameFingerprint(String template, String raw, String... literals) {
+    List<String> actual = new ArrayList<>();
+    assertEquals(fingerprint(template), TemplateFingerprintIndex.fingerprint(raw, actual), raw);
+    assertEquals(Arrays.asList(literals), actual, raw);
+  }
+
+  private static void assertMatches(String sql, TemplateFingerprintIndex.Match... expected) {
+    List<TemplateFingerprintIndex.Match> matches = index.find(sql);
+    assertEquals(expected.length, matches.size(), sql);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i].template(), matches.get(i).template(), sql);
+      assertEquals(expected[i].index(), matches.get(i).index(), sql);
+      assertArrayEquals(expected[i].params(), matches.get(i).params(), sql);
+    }
+  }
+}
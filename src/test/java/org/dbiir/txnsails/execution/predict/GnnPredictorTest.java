@@ -0,0 +1,76 @@
+package org.dbiir.txnsails.execution.predict;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import org.dbiir.txnsails.execution.predict.TensorFile.Tensor;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The predictor reproduces the log-probabilities exported with the model, see
+ * src/test/resources/gnn/fixture.py. The fixture graph has a node without features, a node without
+ * incoming edges, parallel edges and repeated edge features.
+ */
+class GnnPredictorTest {
+  private static final float TOLERANCE = 1e-4f;
+
+  @Test
+  void forwardMatchesReference() throws Exception {
+    GnnPredictor predictor = GnnPredictor.load(resource("fixture.gnn"));
+    Map<String, Tensor> reference = TensorFile.read(resource("fixture.gnn.ref"));
+    float[] expected = reference.get("out").data();
+    assertEquals(3, expected.length);
+    assertArrayEquals(expected, forward(predictor, reference), TOLERANCE);
+  }
+
+  @Test
+  void reusedBuffersMatchReference() throws Exception {
+    GnnPredictor predictor = GnnPredictor.load(resource("fixture.gnn"));
+    Map<String, Tensor> reference = TensorFile.read(resource("fixture.gnn.ref"));
+    float[] expected = reference.get("out").data();
+    // a larger graph first, the buffers it leaves behind must not leak into the fixture
+    Tensor x = reference.get("x");
+    Tensor index = reference.get("edge_index");
+    Tensor attr = reference.get("edge_attr");
+    int n = x.dim(0);
+    int e = index.dim(1);
+    float[] doubledIndex = new float[4 * e];
+    for (int i = 0; i < e; i++) {
+      doubledIndex[i] = index.data()[i];
+      doubledIndex[e + i] = index.data()[i] + n;
+      doubledIndex[2 * e + i] = index.data()[e + i];
+      doubledIndex[3 * e + i] = index.data()[e + i] + n;
+    }
+    predictor.forward(
+        new Tensor(new int[] {2 * n, 1}, concat(x.data(), x.data())),
+        new Tensor(new int[] {2, 2 * e}, doubledIndex),
+        new Tensor(new int[] {2 * e, 2}, concat(attr.data(), attr.data())));
+    assertArrayEquals(expected, forward(predictor, reference), TOLERANCE);
+    assertArrayEquals(expected, forward(predictor, reference), TOLERANCE);
+  }
+
+  private static float[] forward(GnnPredictor predictor, Map<String, Tensor> reference) {
+    // forward normalizes the edge features in place, hand it a copy
+    Tensor attr = reference.get("edge_attr");
+    return predictor
+        .forward(
+            reference.get("x"),
+            reference.get("edge_index"),
+            new Tensor(attr.shape(), attr.data().clone()))
+        .clone();
+  }
+
+  private static float[] concat(float[] a, float[] b) {
+    float[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  private static Path resource(String name) throws URISyntaxException {
+    return Path.of(GnnPredictorTest.class.getResource("/gnn/" + name).toURI());
+  }
+}
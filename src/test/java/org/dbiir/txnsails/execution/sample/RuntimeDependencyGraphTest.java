@@ -0,0 +1,183 @@
+package org.dbiir.txnsails.execution.sample;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** The edges of the inverted key index equal those of comparing the access lists pair by pair. */
+class RuntimeDependencyGraphTest {
+
+  @Test
+  void sparseBatchesMatchPairwise() {
+    Random random = new Random(16);
+    for (int round = 0; round < 20; round++) {
+      assertMatchesPairwise(Batch.random(random, 128, 16, 4, 10_000));
+    }
+  }
+
+  @Test
+  void denseBatchesMatchPairwise() {
+    Random random = new Random(1024);
+    for (int round = 0; round < 20; round++) {
+      assertMatchesPairwise(Batch.random(random, 128, 16, 3, 16));
+    }
+    assertMatchesPairwise(Batch.random(random, 1024, 16, 3, 1024));
+  }
+
+  @Test
+  void longTransactionsMatchPairwise() {
+    Random random = new Random(128);
+    for (int round = 0; round < 5; round++) {
+      assertMatchesPairwise(Batch.random(random, 32, SampleRingBuffer.MAX_ACCESSES / 2, 3, 256));
+    }
+  }
+
+  @Test
+  void smallBatchesMatchPairwise() {
+    Random random = new Random(2);
+    for (int size = 0; size <= 3; size++) {
+      for (int round = 0; round < 20; round++) {
+        assertMatchesPairwise(Batch.random(random, size, 4, 2, 4));
+      }
+    }
+  }
+
+  @Test
+  void reusedGraphMatchesPairwise() {
+    Random random = new Random(7);
+    RuntimeDependencyGraph graph = new RuntimeDependencyGraph();
+    // a smaller batch after a larger one must not see entries of the earlier build
+    for (int size : new int[] {256, 16, 128, 1, 64}) {
+      Batch batch = Batch.random(random, size, 16, 3, 32);
+      batch.build(graph);
+      for (int t = 0; t < size; t++) {
+        assertEquals(batch.pairwiseEdgeFeature(t), graph.getEdgeFeature(t), "transaction " + t);
+      }
+    }
+  }
+
+  private static void assertMatchesPairwise(Batch batch) {
+    RuntimeDependencyGraph graph = new RuntimeDependencyGraph();
+    batch.build(graph);
+    assertEquals(batch.size, graph.getSize());
+    for (int t = 0; t < batch.size; t++) {
+      assertEquals(batch.pairwiseEdgeFeature(t), graph.getEdgeFeature(t), "transaction " + t);
+    }
+  }
+
+  /** A sample batch in the layout TransactionCollector hands to build. */
+  private static final class Batch {
+    final int size;
+    final int[] readStart;
+    final int[] writeStart;
+    final int[] readTable;
+    final int[] readKey;
+    final int[] writeTable;
+    final int[] writeKey;
+
+    private Batch(int size, int reads, int writes) {
+      this.size = size;
+      this.readStart = new int[size + 1];
+      this.writeStart = new int[size + 1];
+      this.readTable = new int[reads];
+      this.readKey = new int[reads];
+      this.writeTable = new int[writes];
+      this.writeKey = new int[writes];
+    }
+
+    // up to accesses reads and writes per transaction, tables from 0, which the edges skip, and
+    // repeated keys within a transaction included
+    static Batch random(Random random, int size, int accesses, int tables, int keys) {
+      int[] reads = new int[size];
+      int[] writes = new int[size];
+      int totalReads = 0;
+      int totalWrites = 0;
+      for (int t = 0; t < size; t++) {
+        reads[t] = random.nextInt(accesses + 1);
+        writes[t] = random.nextInt(accesses + 1);
+        totalReads += reads[t];
+        totalWrites += writes[t];
+      }
+      Batch batch = new Batch(size, totalReads, totalWrites);
+      for (int t = 0; t < size; t++) {
+        batch.readStart[t + 1] = batch.readStart[t] + reads[t];
+        batch.writeStart[t + 1] = batch.writeStart[t] + writes[t];
+      }
+      for (int i = 0; i < totalReads; i++) {
+        batch.readTable[i] = random.nextInt(tables);
+        batch.readKey[i] = random.nextInt(keys);
+      }
+      for (int i = 0; i < totalWrites; i++) {
+        batch.writeTable[i] = random.nextInt(tables);
+        batch.writeKey[i] = random.nextInt(keys);
+      }
+      return batch;
+    }
+
+    void build(RuntimeDependencyGraph graph) {
+      graph.build(size, readStart, readTable, readKey, writeStart, writeTable, writeKey);
+    }
+
+    // the O(n^2) builder the index replaced
+    String pairwiseEdgeFeature(int idx) {
+      StringBuilder builder = new StringBuilder();
+      int table;
+      for (int i = 0; i < size; i++) {
+        if (i == idx) continue;
+        if ((table = rrDependency(idx, i)) > 0) {
+          append(builder, i, 1, table);
+        }
+        if ((table = rwDependency(idx, i)) > 0) {
+          append(builder, i, 2, table);
+        }
+        if ((table = wwDependency(idx, i)) > 0) {
+          append(builder, i, 4, table);
+        }
+      }
+      return builder.toString();
+    }
+
+    // "#%d,%d,%d" without the format parsing, which dominated dense batches
+    private static void append(StringBuilder builder, int dst, int type, int table) {
+      builder.append('#').append(dst).append(',').append(type).append(',').append(table);
+    }
+
+    private int rrDependency(int idx1, int idx2) {
+      return firstCommon(
+          readTable, readKey, readStart[idx2], readStart[idx2 + 1],
+          readTable, readKey, readStart[idx1], readStart[idx1 + 1]);
+    }
+
+    private int rwDependency(int idx1, int idx2) {
+      int table =
+          firstCommon(
+              writeTable, writeKey, writeStart[idx2], writeStart[idx2 + 1],
+              readTable, readKey, readStart[idx1], readStart[idx1 + 1]);
+      if (table != -1) {
+        return table;
+      }
+      return firstCommon(
+          writeTable, writeKey, writeStart[idx1], writeStart[idx1 + 1],
+          readTable, readKey, readStart[idx2], readStart[idx2 + 1]);
+    }
+
+    private int wwDependency(int idx1, int idx2) {
+      return firstCommon(
+          writeTable, writeKey, writeStart[idx2], writeStart[idx2 + 1],
+          writeTable, writeKey, writeStart[idx1], writeStart[idx1 + 1]);
+    }
+
+    // the table of the first access of [from1, to1) whose key is also accessed in [from2, to2)
+    private static int firstCommon(
+        int[] tables1, int[] keys1, int from1, int to1,
+        int[] tables2, int[] keys2, int from2, int to2) {
+      for (int i = from1; i < to1; i++) {
+        for (int j = from2; j < to2; j++) {
+          if (tables1[i] == tables2[j] && keys1[i] == keys2[j]) return tables1[i];
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.dbiir.txnsails.execution.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.dbiir.txnsails.common.types.CCType;
+import org.dbiir.txnsails.common.types.LockType;
+import org.junit.jupiter.api.Test;
+
+class ValidationLockTableTest {
+  private static final long KEY = 7;
+  private static final long TIMEOUT = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Test
+  void readerIsGrantedAfterWriterTimedOut() {
+    ValidationLockTable table = new ValidationLockTable(16);
+    assertEquals(1, table.lock(KEY, 10, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    // the writer waits for the reader and gives up
+    assertEquals(0, table.lock(KEY, 20, LockType.EX, CCType.RC_TAILOR, TIMEOUT));
+    assertEquals(1, table.lock(KEY, 30, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+  }
+
+  @Test
+  void readerIsGrantedAfterWriterAborted() {
+    ValidationLockTable table = new ValidationLockTable(16);
+    assertEquals(1, table.lock(KEY, 50, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    // a younger reader holds the key, the writer aborts at once
+    assertEquals(-1, table.lock(KEY, 40, LockType.EX, CCType.RC_TAILOR, TIMEOUT));
+    assertEquals(1, table.lock(KEY, 60, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+  }
+
+  @Test
+  void waitingWriterStillHoldsBackYoungerReaders() throws Exception {
+    ValidationLockTable table = new ValidationLockTable(16);
+    assertEquals(1, table.lock(KEY, 10, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    CompletableFuture<Integer> writer =
+        CompletableFuture.supplyAsync(
+            () -> table.lock(KEY, 20, LockType.EX, CCType.RC_TAILOR, TimeUnit.SECONDS.toNanos(5)));
+    Thread.sleep(50);
+    // the queued writer keeps younger readers out
+    assertEquals(-1, table.tryLock(KEY, 30, LockType.SH, CCType.RC_TAILOR));
+    table.releaseLock(KEY, LockType.SH);
+    assertEquals(1, writer.get(5, TimeUnit.SECONDS));
+    table.releaseLock(KEY, LockType.EX);
+    assertEquals(1, table.lock(KEY, 40, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+  }
+
+  @Test
+  void readerIsGrantedAfterOneOfTwoWritersTimedOut() throws Exception {
+    ValidationLockTable table = new ValidationLockTable(16);
+    assertEquals(1, table.lock(KEY, 10, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    CompletableFuture<Integer> older =
+        CompletableFuture.supplyAsync(
+            () -> table.lock(KEY, 20, LockType.EX, CCType.RC_TAILOR, TimeUnit.SECONDS.toNanos(5)));
+    Thread.sleep(50);
+    // the younger writer times out, the older one keeps waiting
+    assertEquals(0, table.lock(KEY, 25, LockType.EX, CCType.RC_TAILOR, TIMEOUT));
+    assertEquals(1, table.lock(KEY, 15, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    assertEquals(-1, table.lock(KEY, 22, LockType.SH, CCType.RC_TAILOR, TIMEOUT));
+    table.releaseLock(KEY, LockType.SH);
+    table.releaseLock(KEY, LockType.SH);
+    assertEquals(1, older.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void pinnedKeysSurviveGrowthAndRebuilds() {
+    ValidationLockTable table = new ValidationLockTable(16);
+    int initialCapacity = table.capacity();
+    for (int key = 0; key < 4 * initialCapacity; key++) {
+      table.pinVersion(key, key + 1);
+    }
+    assertTrue(table.capacity() > initialCapacity);
+    // cold keys that nobody validates again are dropped by the rebuilds they trigger
+    for (int key = 0; key < 16 * initialCapacity; key++) {
+      table.updateVersion(1_000_000 + key, 1, true);
+    }
+    assertTrue(table.size() < 20 * initialCapacity);
+    for (int key = 0; key < 4 * initialCapacity; key++) {
+      assertEquals(key + 1, table.getVersion(key));
+    }
+    // locking a pinned key keeps it pinned
+    assertEquals(1, table.lock(3, 10, LockType.EX, CCType.RC_TAILOR, TIMEOUT));
+    table.releaseLock(3, LockType.EX);
+    for (int round = 0; round < 4; round++) {
+      for (int key = 0; key < 16 * initialCapacity; key++) {
+        table.updateVersion(2_000_000 + round * 100_000 + key, 1, true);
+      }
+    }
+    assertEquals(4, table.getVersion(3));
+  }
+}
@@ -0,0 +1,84 @@
+package org.dbiir.txnsails.parse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.Trees;
+import org.junit.jupiter.api.Test;
+
+/** The reused SLL/LL parser returns the tree of a parser built for the statement alone. */
+class ReusablePostgreSQLParserTest {
+  private static final List<String> RULE_NAMES = Arrays.asList(PostgreSQLParser.ruleNames);
+
+  // template statements of the benchmarks, SLL parses most and falls back to LL for the rest
+  private static final String[] STATEMENTS = {
+    "SELECT bal FROM savings WHERE custid = ?",
+    "SELECT * FROM accounts WHERE custid = ?",
+    "SELECT custid FROM accounts WHERE name = ?",
+    "UPDATE checking SET bal = bal + ? WHERE custid = ? RETURNING bal",
+    "UPDATE savings AS s SET bal = s.bal - ? WHERE s.custid = ?",
+    "SELECT bal FROM savings WHERE custid = ANY (SELECT custid FROM accounts WHERE name = ?)",
+    "SELECT bal FROM savings WHERE custid IN (SELECT custid FROM accounts WHERE name = ?)",
+    "SELECT bal FROM savings WHERE custid >= ? AND custid < ?",
+    "SELECT bal FROM savings WHERE custid = ? ORDER BY bal LIMIT 1",
+    "SELECT bal FROM checking WHERE custid = ? AND bal > 'x?y'",
+    "INSERT INTO checking VALUES (?, ?, 0)",
+    "SELECT FIELD1 FROM usertable WHERE YCSB_KEY = ?",
+    "UPDATE usertable SET FIELD1 = ? WHERE YCSB_KEY = ?",
+    "SELECT * FROM t WHERE (a, b) = (?, ?)",
+    "SELECT c_discount, c_last, c_credit, w_tax FROM customer, warehouse"
+        + " WHERE w_id = ? AND c_w_id = w_id AND c_d_id = ? AND c_id = ?",
+    "UPDATE district SET d_next_o_id = d_next_o_id + 1 WHERE d_w_id = ? AND d_id = ?"
+        + " RETURNING d_next_o_id, d_tax",
+    "SELECT s_quantity FROM stock WHERE s_i_id = ? AND s_w_id = ? FOR UPDATE",
+  };
+
+  @Test
+  void treesMatchFreshParser() {
+    for (String sql : STATEMENTS) {
+      assertEquals(freshTree(sql), reusedTree(sql), sql);
+    }
+  }
+
+  @Test
+  void resetKeepsNoStateBetweenStatements() {
+    // every statement after every other, LL fallbacks and error recovery in between
+    String malformed = "SELEC bal FROM savings WHERE custid = ?";
+    for (String previous : STATEMENTS) {
+      for (String sql : STATEMENTS) {
+        reusedTree(previous);
+        assertEquals(freshTree(sql), reusedTree(sql), previous + " then " + sql);
+      }
+      reusedTree(malformed);
+      assertEquals(freshTree(previous), reusedTree(previous), "after a syntax error: " + previous);
+    }
+    assertEquals(freshTree(malformed), reusedTree(malformed));
+  }
+
+  @Test
+  void placeholdersAreNumberedOutsideLiterals() {
+    assertEquals(
+        "SELECT a FROM t WHERE b = $1 AND c = 'x?y' AND \"d?\" = $2 -- ?\n AND e = $3",
+        ReusablePostgreSQLParser.numberParameters(
+            "SELECT a FROM t WHERE b = ? AND c = 'x?y' AND \"d?\" = ? -- ?\n AND e = ?"));
+    assertEquals("SELECT 1", ReusablePostgreSQLParser.numberParameters("SELECT 1"));
+  }
+
+  private static String freshTree(String sql) {
+    PostgreSQLLexer lexer =
+        new PostgreSQLLexer(CharStreams.fromString(ReusablePostgreSQLParser.numberParameters(sql)));
+    PostgreSQLParser parser = new PostgreSQLParser(new CommonTokenStream(lexer));
+    lexer.removeErrorListeners();
+    parser.removeErrorListeners();
+    return Trees.toStringTree(parser.root(), RULE_NAMES);
+  }
+
+  private static String reusedTree(String sql) {
+    ParseTree tree = ReusablePostgreSQLParser.parse(sql);
+    return Trees.toStringTree(tree, RULE_NAMES);
+  }
+}
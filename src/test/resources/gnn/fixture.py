@@ -0,0 +1,134 @@
+"""Writes fixture.gnn and fixture.gnn.ref for GnnPredictorTest.
+
+The weights are random and the reference log-probabilities are computed by a direct transcription
+of GraphClassificationModel.forward with torch_geometric's NNConv(aggr='max'): the edge network
+gives a weight [in, out] per edge, messages x_j @ W(e_ij) are maxed per target (0 without any),
+and the root weight and bias are added. Nothing is shared between edges or nodes, unlike in the
+server. The files use the layout of export.write_tensors, so a model exported from torch can
+replace them as they are.
+
+    python3 src/test/resources/gnn/fixture.py
+"""
+import math
+import os
+import random
+import struct
+
+MAGIC = 0x4E475854
+VERSION = 1
+IN, EDGE_IN, HIDDEN, OUT = 1, 2, 4, 3
+
+
+def f32(value):
+    return struct.unpack('<f', struct.pack('<f', value))[0]
+
+
+def write_tensors(path, tensors):
+    with open(path, 'wb') as file:
+        file.write(struct.pack('<3i', MAGIC, VERSION, len(tensors)))
+        for name, (shape, data) in tensors.items():
+            encoded = name.encode('utf-8')
+            file.write(struct.pack('<i', len(encoded)) + encoded)
+            file.write(struct.pack('<i', len(shape)))
+            file.write(struct.pack('<%di' % len(shape), *shape))
+            file.write(struct.pack('<%df' % len(data), *data))
+
+
+def matrix(rng, rows, cols):
+    return [[f32(rng.uniform(-1, 1)) for _ in range(cols)] for _ in range(rows)]
+
+
+def linear(weight, bias, x):
+    return [sum(w * v for w, v in zip(row, x)) + b for row, b in zip(weight, bias)]
+
+
+def normalize(rows):
+    result = []
+    for row in rows:
+        norm = max(math.sqrt(sum(v * v for v in row)), 1e-12)
+        result.append([v / norm for v in row])
+    return result
+
+
+def main():
+    rng = random.Random(19)
+    convs = []
+    for c_in in (IN, HIDDEN, HIDDEN):
+        convs.append({
+            'nn.0.weight': matrix(rng, HIDDEN, EDGE_IN),
+            'nn.0.bias': matrix(rng, 1, HIDDEN)[0],
+            'nn.2.weight': matrix(rng, c_in * HIDDEN, HIDDEN),
+            'nn.2.bias': matrix(rng, 1, c_in * HIDDEN)[0],
+            'lin.weight': matrix(rng, HIDDEN, c_in),
+            'bias': matrix(rng, 1, HIDDEN)[0],
+            'in': c_in,
+        })
+    fc1 = (matrix(rng, HIDDEN, HIDDEN), matrix(rng, 1, HIDDEN)[0])
+    fc2 = (matrix(rng, OUT, HIDDEN), matrix(rng, 1, OUT)[0])
+
+    # a sample graph: a node without any feature, one without incoming edges, parallel edges,
+    # repeated (type, table) features and the placeholder edge 1 -> 2 after the edges of each node
+    nodes = [[3.0], [0.0], [5.0], [1.0], [2.0], [4.0]]
+    edges = []
+    for src, dst, edge_type, table in [
+            (0, 2, 1, 1), (0, 2, 2, 1), (0, 3, 4, 2), (1, 2, 0, 1),
+            (2, 0, 2, 3), (2, 3, 2, 3), (2, 3, 2, 3), (1, 2, 0, 1),
+            (3, 1, 1, 2), (1, 2, 0, 1),
+            (4, 0, 4, 1), (4, 2, 1, 1), (1, 2, 0, 1),
+            (1, 2, 0, 1), (1, 2, 0, 1)]:
+        edges.append((src, dst, [float(edge_type), float(table)]))
+
+    x = normalize(nodes)
+    attr = normalize([e[2] for e in edges])
+    for conv in convs:
+        c_in = conv['in']
+        nxt = []
+        for v in range(len(x)):
+            agg = None
+            for (src, dst, _), a in zip(edges, attr):
+                if dst != v:
+                    continue
+                hidden = [max(h, 0.0) for h in linear(conv['nn.0.weight'], conv['nn.0.bias'], a)]
+                weight = linear(conv['nn.2.weight'], conv['nn.2.bias'], hidden)
+                message = [sum(x[src][i] * weight[i * HIDDEN + o] for i in range(c_in))
+                           for o in range(HIDDEN)]
+                agg = message if agg is None else [max(p, q) for p, q in zip(agg, message)]
+            agg = agg or [0.0] * HIDDEN
+            root = linear(conv['lin.weight'], [0.0] * HIDDEN, x[v])
+            nxt.append([max(p + q + b, 0.0) for p, q, b in zip(agg, root, conv['bias'])])
+        x = nxt
+    pooled = [sum(row[c] for row in x) / len(x) for c in range(HIDDEN)]
+    hidden = [max(h, 0.0) for h in linear(fc1[0], fc1[1], pooled)]
+    logits = linear(fc2[0], fc2[1], hidden)
+    top = max(logits)
+    log_sum = top + math.log(sum(math.exp(v - top) for v in logits))
+    out = [v - log_sum for v in logits]
+
+    flat = lambda rows: [v for row in rows for v in row]
+    tensors = {}
+    for k, conv in enumerate(convs, 1):
+        c_in = conv['in']
+        tensors['conv%d.bias' % k] = ([HIDDEN], conv['bias'])
+        tensors['conv%d.nn.0.weight' % k] = ([HIDDEN, EDGE_IN], flat(conv['nn.0.weight']))
+        tensors['conv%d.nn.0.bias' % k] = ([HIDDEN], conv['nn.0.bias'])
+        tensors['conv%d.nn.2.weight' % k] = ([c_in * HIDDEN, HIDDEN], flat(conv['nn.2.weight']))
+        tensors['conv%d.nn.2.bias' % k] = ([c_in * HIDDEN], conv['nn.2.bias'])
+        tensors['conv%d.lin.weight' % k] = ([HIDDEN, c_in], flat(conv['lin.weight']))
+    tensors['fc1.weight'] = ([HIDDEN, HIDDEN], flat(fc1[0]))
+    tensors['fc1.bias'] = ([HIDDEN], fc1[1])
+    tensors['fc2.weight'] = ([OUT, HIDDEN], flat(fc2[0]))
+    tensors['fc2.bias'] = ([OUT], fc2[1])
+
+    here = os.path.dirname(os.path.abspath(__file__))
+    write_tensors(os.path.join(here, 'fixture.gnn'), tensors)
+    write_tensors(os.path.join(here, 'fixture.gnn.ref'), {
+        'x': ([len(nodes), IN], flat(nodes)),
+        'edge_index': ([2, len(edges)], [float(e[0]) for e in edges] + [float(e[1]) for e in edges]),
+        'edge_attr': ([len(edges), EDGE_IN], flat([e[2] for e in edges])),
+        'out': ([1, OUT], out),
+    })
+    print(out)
+
+
+if __name__ == '__main__':
+    main()